@@ -0,0 +1,185 @@
+package org.iesvdm.appointment;
+
+import org.iesvdm.appointment.codec.AppointmentView;
+import org.iesvdm.appointment.codec.EntityCodec;
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.entity.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * count citas de 100 clientes: escribirlas y leerlas con EntityCodec, con
+ * Java serialization, y recorrerlas con AppointmentView sin crear objetos.
+ * Al preparar imprime los bytes que ocupa cada formato.
+ *
+ * Las entidades no son Serializable: Java serialization escribe unos records
+ * con los mismos campos que el codec, y cada cliente una sola vez.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    private record CustomerData(Integer id, String userName) implements Serializable {
+    }
+
+    private record AppointmentData(Integer id, LocalDateTime start, LocalDateTime end, LocalDateTime canceledAt,
+                                   Integer cancelerId, AppointmentStatus status, CustomerData customer,
+                                   Integer exchangeRequestId) implements Serializable {
+    }
+
+    @Param({"1000"})
+    public int count;
+
+    private List<Appointment> appointments;
+    private List<Customer> customers;
+    private ArrayList<AppointmentData> data;
+    private ByteBuffer encoded;
+    private byte[] serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        customers = new ArrayList<>();
+        for (int id = 0; id < 100; id++) {
+            customers.add(new Customer(id, "customer" + id, "password" + id, new ArrayList<>()));
+        }
+        appointments = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 8, 0);
+        for (int id = 0; id < count; id++) {
+            Customer customer = customers.get(id % customers.size());
+            Appointment appointment = new Appointment(start.plusMinutes(30L * id), start.plusMinutes(30L * id + 30),
+                    null, null, AppointmentStatus.SCHEDULED, customer, null);
+            appointment.setId(id);
+            customer.getAppointments().add(appointment);
+            appointments.add(appointment);
+        }
+        CustomerData[] customerData = new CustomerData[customers.size()];
+        for (Customer customer : customers) {
+            customerData[customer.getId()] = new CustomerData(customer.getId(), customer.getUserName());
+        }
+        data = new ArrayList<>(count);
+        for (Appointment appointment : appointments) {
+            data.add(new AppointmentData(appointment.getId(), appointment.getStart(), appointment.getEnd(),
+                    appointment.getCanceledAt(), null, appointment.getStatus(),
+                    customerData[appointment.getCustomer().getId()], null));
+        }
+        encoded = codecWrite();
+        serialized = javaWrite();
+        System.out.printf("%ncodec=%d bytes java=%d bytes%n", encoded.limit(), serialized.length);
+    }
+
+    @Benchmark
+    public ByteBuffer codecWrite() {
+        int size = count * EntityCodec.APPOINTMENT_BYTES;
+        for (Customer customer : customers) {
+            size += EntityCodec.userBytes(customer);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (Customer customer : customers) {
+            EntityCodec.writeUser(buffer, customer);
+        }
+        for (Appointment appointment : appointments) {
+            EntityCodec.writeAppointment(buffer, appointment);
+        }
+        return buffer.flip();
+    }
+
+    @Benchmark
+    public List<Appointment> codecRead() {
+        ByteBuffer buffer = encoded.duplicate();
+        Customer[] byId = new Customer[customers.size()];
+        for (int i = 0; i < byId.length; i++) {
+            Customer customer = (Customer) EntityCodec.readUser(buffer);
+            byId[customer.getId()] = customer;
+        }
+        EntityCodec.References references = new EntityCodec.References() {
+            @Override
+            public User user(int id) {
+                return byId[id];
+            }
+
+            @Override
+            public Customer customer(int id) {
+                return byId[id];
+            }
+
+            @Override
+            public Appointment appointment(int id) {
+                return null;
+            }
+
+            @Override
+            public ExchangeRequest exchangeRequest(int id) {
+                return null;
+            }
+        };
+        List<Appointment> result = new ArrayList<>(count);
+        while (buffer.hasRemaining()) {
+            result.add(EntityCodec.readAppointment(buffer, references));
+        }
+        return result;
+    }
+
+    /**
+     * Citas programadas de un cliente, leyendo solo los campos necesarios.
+     */
+    @Benchmark
+    public int viewScan() {
+        ByteBuffer buffer = encoded.duplicate();
+        for (int i = 0; i < customers.size(); i++) {
+            EntityCodec.readUser(buffer);
+        }
+        AppointmentView view = new AppointmentView(buffer.slice());
+        int matches = 0;
+        for (int i = 0; i < view.count(); i++) {
+            view.at(i);
+            if (view.getCustomerId() == 7 && view.getStatus() == AppointmentStatus.SCHEDULED) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public byte[] javaWrite() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Object javaRead() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+}
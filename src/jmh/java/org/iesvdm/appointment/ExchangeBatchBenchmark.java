@@ -0,0 +1,132 @@
+package org.iesvdm.appointment;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.repository.AppointmentRepository;
+import org.iesvdm.appointment.repository.impl.AppointmentRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.ExchangeRequestRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.IndexedAppointmentRepositoryImpl;
+import org.iesvdm.appointment.service.ExchangeOutcome;
+import org.iesvdm.appointment.service.ExchangeService;
+import org.iesvdm.appointment.service.NotificationService;
+import org.iesvdm.appointment.service.impl.ExchangeServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Una ráfaga de batchSize peticiones de intercambio, una a una con
+ * requestExchange o juntas con requestExchanges.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ExchangeBatchBenchmark {
+
+    @Param({"scan", "indexed"})
+    public String repository;
+
+    @Param({"10000"})
+    public int appointments;
+
+    @Param({"64"})
+    public int batchSize;
+
+    private AppointmentRepository appointmentRepository;
+    private ExchangeService exchangeService;
+    private List<Appointment> all;
+    private List<ExchangeService.Request> requests;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        appointmentRepository = repository.equals("scan")
+                ? new AppointmentRepositoryImpl(new HashSet<>())
+                : new IndexedAppointmentRepositoryImpl();
+        all = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.now().plusDays(7);
+        for (int id = 0; id < appointments; id++) {
+            Customer customer = new Customer(id, "customer" + id, "", new ArrayList<>());
+            Appointment appointment = new Appointment(start.plusMinutes(30L * id), start.plusMinutes(30L * id + 30),
+                    null, null, AppointmentStatus.SCHEDULED, customer, null);
+            appointment.setId(id);
+            appointmentRepository.save(appointment);
+            all.add(appointment);
+        }
+        Random random = new Random(42);
+        requests = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            int oldId = random.nextInt(appointments);
+            int newId = (oldId + 1 + random.nextInt(appointments - 1)) % appointments;
+            requests.add(new ExchangeService.Request(oldId, newId, oldId));
+        }
+    }
+
+    /**
+     * Deja las citas de la ráfaga como estaban, y las peticiones vacías, para
+     * que cada invocación haga el mismo trabajo.
+     */
+    @Setup(Level.Invocation)
+    public void reset() {
+        exchangeService = new ExchangeServiceImpl(appointmentRepository, new SilentNotificationService(),
+                new ExchangeRequestRepositoryImpl());
+        for (ExchangeService.Request request : requests) {
+            Appointment appointment = all.get(request.oldAppointmentId());
+            if (appointment.getStatus() != AppointmentStatus.SCHEDULED) {
+                appointment.setStatus(AppointmentStatus.SCHEDULED);
+                appointmentRepository.save(appointment);
+            }
+        }
+    }
+
+    @Benchmark
+    public int oneByOne() {
+        int done = 0;
+        for (ExchangeService.Request request : requests) {
+            if (exchangeService.requestExchange(request.oldAppointmentId(), request.newAppointmentId(), request.userId())) {
+                done++;
+            }
+        }
+        return done;
+    }
+
+    @Benchmark
+    public List<ExchangeOutcome> batched() {
+        return exchangeService.requestExchanges(requests);
+    }
+
+    private static class SilentNotificationService implements NotificationService {
+
+        @Override
+        public void newExchangeRequestedNotification(Appointment oldAppointment, Appointment newAppointment, boolean sendEmail) {
+        }
+
+        @Override
+        public void newExchangeAcceptedNotification(ExchangeRequest exchangeRequest, boolean sendEmail) {
+        }
+
+        @Override
+        public void newExchangeRejectedNotification(ExchangeRequest exchangeRequest, boolean sendEmail) {
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.iesvdm.appointment;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.repository.AppointmentCursor;
+import org.iesvdm.appointment.repository.AppointmentRepository;
+import org.iesvdm.appointment.repository.impl.ConcurrentAppointmentRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.IndexedAppointmentRepositoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Candidatas a intercambio entre appointments citas (la mitad programadas):
+ * la lista completa frente a la primera página y a una página del medio.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ExchangeCandidatesBenchmark {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2025, 1, 1, 8, 0);
+    private static final int PAGE = 20;
+
+    @Param({"indexed", "concurrent"})
+    public String repository;
+
+    @Param({"1000000"})
+    public int appointments;
+
+    private AppointmentRepository appointmentRepository;
+    private AppointmentCursor middle;
+
+    @Setup
+    public void setup() {
+        appointmentRepository = repository.equals("indexed")
+                ? new IndexedAppointmentRepositoryImpl() : new ConcurrentAppointmentRepositoryImpl();
+        List<Customer> customers = new ArrayList<>();
+        for (int id = 0; id < 1000; id++) {
+            customers.add(new Customer(id, "customer" + id, "", new ArrayList<>()));
+        }
+        Random random = new Random(42);
+        for (int id = 0; id < appointments; id++) {
+            LocalDateTime start = BASE.plusMinutes(random.nextInt(appointments));
+            Appointment appointment = new Appointment(start, start.plusMinutes(30), null, null,
+                    random.nextBoolean() ? AppointmentStatus.SCHEDULED : AppointmentStatus.FINISHED,
+                    customers.get(random.nextInt(customers.size())), null);
+            appointment.setId(id);
+            appointmentRepository.save(appointment);
+        }
+        middle = new AppointmentCursor(BASE.plusMinutes(appointments / 2), 0);
+    }
+
+    @Benchmark
+    public List<Appointment> all() {
+        return appointmentRepository.getEligibleAppointmentsForExchange(BASE, 0);
+    }
+
+    @Benchmark
+    public List<Appointment> firstPage() {
+        return appointmentRepository.getEligibleAppointmentsForExchange(BASE, 0, null, PAGE);
+    }
+
+    @Benchmark
+    public List<Appointment> middlePage() {
+        return appointmentRepository.getEligibleAppointmentsForExchange(BASE, 0, middle, PAGE);
+    }
+}
@@ -0,0 +1,149 @@
+package org.iesvdm.appointment;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.repository.impl.ConcurrentAppointmentRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.ExchangeRequestRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.TimelineAppointmentRepository;
+import org.iesvdm.appointment.service.NotificationService;
+import org.iesvdm.appointment.service.impl.ExchangeServiceExecutor;
+import org.iesvdm.appointment.service.impl.ExchangeServiceImpl;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Carga contra ExchangeServiceExecutor con los repositorios en memoria:
+ * java -cp ... org.iesvdm.appointment.ExchangeLoadGenerator [operaciones] [concurrentes] [clientes]
+ *
+ * Mantiene hasta "concurrentes" operaciones en marcha, la mitad
+ * requestExchange, y el resto acceptExchange y rejectExchange de peticiones
+ * ya hechas. La latencia va desde que se envía la operación hasta que termina,
+ * con la espera en la cola de su usuario, y se dan p50, p99 y p999. Las
+ * operaciones que lanzan excepción (una cita que ya no es del usuario) cuentan
+ * como fallidas.
+ */
+public class ExchangeLoadGenerator {
+
+    static final int APPOINTMENTS_PER_CUSTOMER = 20;
+
+    private static final NotificationService NO_NOTIFICATIONS = new NotificationService() {
+        @Override
+        public void newExchangeRequestedNotification(Appointment oldAppointment, Appointment newAppointment, boolean sendEmail) {
+        }
+
+        @Override
+        public void newExchangeAcceptedNotification(ExchangeRequest exchangeRequest, boolean sendEmail) {
+        }
+
+        @Override
+        public void newExchangeRejectedNotification(ExchangeRequest exchangeRequest, boolean sendEmail) {
+        }
+    };
+
+    public static void main(String[] args) throws InterruptedException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+        int customers = args.length > 2 ? Integer.parseInt(args[2]) : 2_000;
+
+        TimelineAppointmentRepository appointmentRepository = new TimelineAppointmentRepository(new ConcurrentAppointmentRepositoryImpl());
+        ExchangeServiceImpl exchangeService = new ExchangeServiceImpl(appointmentRepository, NO_NOTIFICATIONS,
+                new ExchangeRequestRepositoryImpl());
+        List<Customer> owners = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.now().plusDays(7);
+        int appointments = customers * APPOINTMENTS_PER_CUSTOMER;
+        for (int id = 0; id < appointments; id++) {
+            Customer customer = id < customers ? new Customer(id, "customer" + id, "", new ArrayList<>()) : owners.get(id % customers);
+            if (id < customers) {
+                owners.add(customer);
+            }
+            LocalDateTime from = start.plusMinutes(30L * id);
+            Appointment appointment = new Appointment(from, from.plusMinutes(30), null, null,
+                    AppointmentStatus.SCHEDULED, customer, null);
+            appointment.setId(id);
+            appointmentRepository.save(appointment);
+        }
+
+        Queue<ExchangeRequest> pending = new ConcurrentLinkedQueue<>();
+        long[] latencies = new long[operations];
+        LongAdder succeeded = new LongAdder();
+        LongAdder refused = new LongAdder();
+        Semaphore window = new Semaphore(concurrency);
+        long begin = System.nanoTime();
+        try (ExchangeServiceExecutor executor = new ExchangeServiceExecutor(exchangeService)) {
+            for (int n = 0; n < operations; n++) {
+                window.acquire();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int slot = n;
+                long sent = System.nanoTime();
+                CompletableFuture<Boolean> future = submit(executor, appointmentRepository, pending, owners, random);
+                future.whenComplete((ok, e) -> {
+                    latencies[slot] = System.nanoTime() - sent;
+                    if (e == null) {
+                        (ok ? succeeded : refused).increment();
+                    }
+                    window.release();
+                });
+            }
+            window.acquire(concurrency);
+            long elapsed = System.nanoTime() - begin;
+
+            Arrays.sort(latencies);
+            System.out.printf("operations=%d concurrency=%d customers=%d appointments=%d%n",
+                    operations, concurrency, customers, appointments);
+            System.out.printf("throughput=%.0f ops/s elapsed=%.1f ms%n", operations * 1e9 / elapsed, elapsed / 1e6);
+            System.out.printf("latency p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus%n",
+                    percentile(latencies, 0.50) / 1e3, percentile(latencies, 0.99) / 1e3,
+                    percentile(latencies, 0.999) / 1e3, latencies[operations - 1] / 1e3);
+            System.out.printf("succeeded=%d refused=%d%n", succeeded.sum(), refused.sum());
+            System.out.println("executor: " + executor);
+            System.out.println("service: staleExchanges=" + exchangeService.getStaleExchanges());
+        }
+    }
+
+    /**
+     * La mitad de las veces pide un intercambio de una cita del usuario por
+     * otra de un cliente cualquiera; si no, acepta o rechaza una petición
+     * pendiente como su destinatario.
+     */
+    private static CompletableFuture<Boolean> submit(ExchangeServiceExecutor executor,
+                                                     TimelineAppointmentRepository appointmentRepository,
+                                                     Queue<ExchangeRequest> pending, List<Customer> owners,
+                                                     ThreadLocalRandom random) {
+        ExchangeRequest exchangeRequest = random.nextBoolean() ? null : pending.poll();
+        if (exchangeRequest == null) {
+            Customer customer = owners.get(random.nextInt(owners.size()));
+            List<Appointment> timeline = customer.getTimeline().toList();
+            if (timeline.isEmpty()) {
+                return CompletableFuture.completedFuture(false);
+            }
+            Appointment oldAppointment = timeline.get(random.nextInt(timeline.size()));
+            int newAppointmentId = random.nextInt(owners.size() * APPOINTMENTS_PER_CUSTOMER);
+            return executor.requestExchange(oldAppointment.getId(), newAppointmentId, customer.getId())
+                    .whenComplete((ok, e) -> {
+                        ExchangeRequest requested = appointmentRepository.getOne(oldAppointment.getId()).getExchangeRequest();
+                        if (ok != null && ok && requested != null) {
+                            pending.add(requested);
+                        }
+                    });
+        }
+        int userId = exchangeRequest.getRequested().getCustomer().getId();
+        return random.nextInt(3) < 2
+                ? executor.acceptExchange(exchangeRequest.getId(), userId)
+                : executor.rejectExchange(exchangeRequest.getId(), userId);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+}
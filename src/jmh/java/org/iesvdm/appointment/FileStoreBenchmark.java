@@ -0,0 +1,158 @@
+package org.iesvdm.appointment;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.repository.impl.FileAppointmentStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * FileAppointmentStore: saves por segundo con uno y con ocho hilos (con
+ * ocho, el group commit junta los force), y tiempo de abrir un directorio
+ * con records citas solo en el log o en una instantánea más un 10% de log.
+ * Para 10M: -p records=10000000 y un heap grande (-jvmArgs -Xmx8g).
+ */
+@Fork(1)
+public class FileStoreBenchmark {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2025, 1, 1, 8, 0);
+    private static final int IDS = 1_000_000;
+
+    private static Appointment appointment(int id, Customer customer) {
+        LocalDateTime start = BASE.plusMinutes(30L * id);
+        Appointment appointment = new Appointment(start, start.plusMinutes(30), null, null, AppointmentStatus.SCHEDULED, customer, null);
+        appointment.setId(id);
+        return appointment;
+    }
+
+    private static void delete(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class WriteState {
+
+        @Param({"false", "true"})
+        public boolean fsync;
+
+        FileAppointmentStore store;
+        Path directory;
+        Customer customer = new Customer(1, "customer", "", new ArrayList<>());
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            directory = Files.createTempDirectory("store-write");
+            store = FileAppointmentStore.open(directory, fsync, FileAppointmentStore.DEFAULT_COMPACT_BYTES);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            System.out.printf("%ncommits=%d forces=%d generation=%d%n", store.getCommits(), store.getForces(), store.getGeneration());
+            store.close();
+            delete(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RecoveryState {
+
+        @Param({"1000000"})
+        public int records;
+
+        @Param({"log", "snapshot"})
+        public String layout;
+
+        Path directory;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            directory = Files.createTempDirectory("store-recovery");
+            Customer customer = new Customer(1, "customer", "", new ArrayList<>());
+            try (FileAppointmentStore store = FileAppointmentStore.open(directory, false, 0)) {
+                int logged = layout.equals("snapshot") ? records - records / 10 : records;
+                write(store, 0, logged, customer);
+                if (layout.equals("snapshot")) {
+                    store.snapshot();
+                    write(store, logged, records, customer);
+                }
+            }
+        }
+
+        private static void write(FileAppointmentStore store, int from, int to, Customer customer) {
+            List<Appointment> batch = new ArrayList<>();
+            for (int id = from; id < to; id++) {
+                batch.add(appointment(id, customer));
+                if (batch.size() == 10_000) {
+                    store.getAppointmentRepository().saveAll(batch);
+                    batch.clear();
+                }
+            }
+            store.getAppointmentRepository().saveAll(batch);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            delete(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 3, time = 2)
+    @Threads(1)
+    public void save(WriteState state) {
+        state.store.getAppointmentRepository().save(appointment(ThreadLocalRandom.current().nextInt(IDS), state.customer));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 3, time = 2)
+    @Threads(8)
+    public void saveConcurrent(WriteState state) {
+        state.store.getAppointmentRepository().save(appointment(ThreadLocalRandom.current().nextInt(IDS), state.customer));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public int recover(RecoveryState state) {
+        try (FileAppointmentStore store = FileAppointmentStore.open(state.directory, false, 0)) {
+            return store.size();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.iesvdm.appointment;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.repository.AppointmentRepository;
+import org.iesvdm.appointment.repository.impl.AppointmentRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.ColumnarAppointmentRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.IndexedAppointmentRepositoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Las búsquedas de un informe sobre appointments citas con estados al azar:
+ * las programadas que terminan antes de una fecha (selectivity de ellas) y
+ * las solicitadas para intercambio, que son pocas. Con stream, las primeras
+ * 100 programadas y cuántas son sin copiarlas a una lista.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ReportingScanBenchmark {
+
+    @Param({"scan", "indexed", "columnar"})
+    public String repository;
+
+    @Param({"1000000"})
+    public int appointments;
+
+    @Param({"0.01", "0.5"})
+    public double selectivity;
+
+    private AppointmentRepository appointmentRepository;
+    private LocalDateTime before;
+
+    @Setup
+    public void setup() {
+        appointmentRepository = switch (repository) {
+            case "scan" -> new AppointmentRepositoryImpl(new HashSet<>());
+            case "indexed" -> new IndexedAppointmentRepositoryImpl();
+            default -> new ColumnarAppointmentRepositoryImpl();
+        };
+        List<Customer> customers = new ArrayList<>();
+        for (int id = 0; id < 1000; id++) {
+            customers.add(new Customer(id, "customer" + id, "", new ArrayList<>()));
+        }
+        AppointmentStatus[] statuses = AppointmentStatus.values();
+        Random random = new Random(42);
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 8, 0);
+        for (int id = 0; id < appointments; id++) {
+            Appointment appointment = new Appointment(start.plusMinutes(id), start.plusMinutes(id + 30L), null, null,
+                    statuses[random.nextInt(statuses.length)], customers.get(random.nextInt(customers.size())), null);
+            appointment.setId(id);
+            appointmentRepository.save(appointment);
+        }
+        before = start.plusMinutes((long) (appointments * selectivity));
+    }
+
+    @Benchmark
+    public List<Appointment> scheduledWithEndBefore() {
+        return appointmentRepository.findScheduledWithEndBeforeDate(before);
+    }
+
+    @Benchmark
+    public List<Appointment> exchangeRequestedWithStartBefore() {
+        return appointmentRepository.findExchangeRequestedWithStartBefore(before);
+    }
+
+    @Benchmark
+    public List<Appointment> scheduledWithEndBeforeFirstPage() {
+        return appointmentRepository.streamScheduledWithEndBeforeDate(before, null).limit(100).toList();
+    }
+
+    @Benchmark
+    public long scheduledWithEndBeforeCount() {
+        return appointmentRepository.streamScheduledWithEndBeforeDate(before, null).count();
+    }
+}
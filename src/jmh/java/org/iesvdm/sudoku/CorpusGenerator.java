@@ -0,0 +1,66 @@
+package org.iesvdm.sudoku;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Regenera el corpus de benchmarks con semillas fijas:
+ * java -cp ... org.iesvdm.sudoku.CorpusGenerator src/test/resources/sudoku
+ *
+ * - easy: 45 pistas, medium: 32 pistas, hard: mínimos (sin pistas redundantes).
+ * - adversarial: tableros mínimos con las cifras renombradas para que la
+ *   primera fila de la solución sea 9..1, el peor orden para el backtracking
+ *   que prueba 1..9 fila a fila, más puzzles conocidos por ser difíciles.
+ */
+public class CorpusGenerator {
+
+    static final int PUZZLES_PER_SET = 200;
+
+    private static final String[] KNOWN_HARD = {
+            "800000000003600000070090200050007000000045700000100030001000068008500010090000400",
+            "000000000000003085001020000000507000004000100090000000500000073002010000000040009",
+    };
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Path.of(args.length > 0 ? args[0] : "src/test/resources/sudoku");
+        Files.createDirectories(dir);
+        write(dir.resolve("easy.txt"), generate(1, 45, false));
+        write(dir.resolve("medium.txt"), generate(2, 32, false));
+        write(dir.resolve("hard.txt"), generate(3, 0, false));
+        List<String> adversarial = new ArrayList<>(List.of(KNOWN_HARD));
+        adversarial.addAll(generate(4, 0, true).subList(0, PUZZLES_PER_SET - KNOWN_HARD.length));
+        write(dir.resolve("adversarial.txt"), adversarial);
+    }
+
+    private static List<String> generate(long seed, int numClues, boolean antiBacktracking) {
+        SudokuWorkspace workspace = new SudokuWorkspace(9, seed);
+        int[][] board = new int[9][9];
+        int[][] solution = new int[9][9];
+        List<String> puzzles = new ArrayList<>();
+        for (int i = 0; i < PUZZLES_PER_SET; i++) {
+            workspace.generate(board, numClues);
+            if (antiBacktracking) {
+                PuzzleCorpus.copy(board, solution);
+                workspace.solve(solution);
+                int[] relabel = new int[10];
+                for (int column = 0; column < 9; column++) {
+                    relabel[solution[0][column]] = 9 - column;
+                }
+                for (int[] row : board) {
+                    for (int column = 0; column < 9; column++) {
+                        row[column] = relabel[row[column]];
+                    }
+                }
+            }
+            puzzles.add(PuzzleCorpus.format(board));
+        }
+        return puzzles;
+    }
+
+    private static void write(Path file, List<String> puzzles) throws IOException {
+        Files.write(file, puzzles);
+    }
+}
@@ -0,0 +1,65 @@
+package org.iesvdm.sudoku;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GenerateBenchmark {
+
+    @Param({"63", "40", "30"})
+    public int numClues;
+
+    private Sudoku sudoku;
+
+    @Setup
+    public void setup() {
+        sudoku = new Sudoku();
+        sudoku.setNumClues(numClues);
+    }
+
+    @Benchmark
+    public int[][] fillBoardRandomly() {
+        sudoku.fillBoardRandomly();
+        return sudoku.getBoard();
+    }
+
+    @Benchmark
+    public int[][] fillBoardBasedInCluesRandomly() {
+        sudoku.fillBoardBasedInCluesRandomly();
+        return sudoku.getBoard();
+    }
+
+    @Benchmark
+    public int[][] fillBoardBasedInCluesRandomlySolvable() {
+        sudoku.fillBoardBasedInCluesRandomlySolvable();
+        return sudoku.getBoard();
+    }
+
+    @Benchmark
+    public int[][] fillBoardSolvable() {
+        sudoku.fillBoardSolvable();
+        return sudoku.getBoard();
+    }
+
+    @Benchmark
+    public int[][] fillBoardUnsolvable() {
+        sudoku.fillBoardUnsolvable();
+        return sudoku.getBoard();
+    }
+}
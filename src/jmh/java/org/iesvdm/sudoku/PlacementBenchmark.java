@@ -0,0 +1,46 @@
+package org.iesvdm.sudoku;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmark de isValidPlacement: recorre todas las casillas y cifras
+ * de un tablero medio del corpus.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlacementBenchmark {
+
+    private Sudoku sudoku;
+    private int cell;
+    private int number = 1;
+
+    @Setup
+    public void setup() {
+        sudoku = new Sudoku();
+        sudoku.setBoard(PuzzleCorpus.load("medium").get(0));
+    }
+
+    @Benchmark
+    public boolean isValidPlacement() {
+        if (++number > 9) {
+            number = 1;
+            cell = (cell + 1) % 81;
+        }
+        return sudoku.isValidPlacement(number, cell / 9, cell % 9);
+    }
+}
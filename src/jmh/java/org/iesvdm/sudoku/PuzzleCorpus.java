@@ -0,0 +1,66 @@
+package org.iesvdm.sudoku;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tableros de referencia de src/test/resources/sudoku, en el formato de
+ * BatchSolver. Se regeneran con CorpusGenerator usando semillas fijas.
+ */
+public final class PuzzleCorpus {
+
+    private PuzzleCorpus() {
+    }
+
+    public static List<int[][]> load(String name) {
+        String resource = "/sudoku/" + name + ".txt";
+        try (InputStream in = PuzzleCorpus.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Unknown corpus: " + name);
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+            List<int[][]> boards = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    boards.add(parse(line.trim()));
+                }
+            }
+            return boards;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static int[][] parse(String line) {
+        int gridSize = (int) Math.round(Math.sqrt(line.length()));
+        int[][] board = new int[gridSize][gridSize];
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            board[i / gridSize][i % gridSize] = (c == '.') ? 0 : Character.digit(c, 36);
+        }
+        return board;
+    }
+
+    public static String format(int[][] board) {
+        StringBuilder line = new StringBuilder();
+        for (int[] row : board) {
+            for (int number : row) {
+                line.append(Character.forDigit(number, 36));
+            }
+        }
+        return line.toString();
+    }
+
+    public static void copy(int[][] source, int[][] target) {
+        for (int i = 0; i < source.length; i++) {
+            System.arraycopy(source[i], 0, target[i], 0, source[i].length);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.iesvdm.sudoku;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sudoku.solveBoard() sobre el corpus fijo. Cada invocación resuelve el
+ * siguiente tablero del conjunto, así que el resultado es la media del corpus.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SolveBenchmark {
+
+    @Param({"easy", "medium", "hard", "adversarial"})
+    public String corpus;
+
+    @Param({"BITMASK", "DANCING_LINKS"})
+    public SolverMode solverMode;
+
+    @Param({"false", "true"})
+    public boolean statistics;
+
+    private List<int[][]> puzzles;
+    private Sudoku sudoku;
+    private int next;
+
+    @Setup
+    public void setup() {
+        puzzles = PuzzleCorpus.load(corpus);
+        sudoku = new Sudoku();
+        sudoku.setSolverMode(solverMode);
+        sudoku.setStatisticsEnabled(statistics);
+        sudoku.setBoard(new int[9][9]);
+    }
+
+    @Benchmark
+    public boolean solveBoard() {
+        PuzzleCorpus.copy(puzzles.get(next), sudoku.getBoard());
+        next = (next + 1) % puzzles.size();
+        return sudoku.solveBoard();
+    }
+}
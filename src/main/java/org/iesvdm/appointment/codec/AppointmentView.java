@@ -0,0 +1,100 @@
+package org.iesvdm.appointment.codec;
+
+import org.iesvdm.appointment.entity.AppointmentStatus;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+
+/**
+ * Lectura de una cita escrita con EntityCodec directamente del buffer, sin
+ * copiarla ni crear la entidad. Se puede mover de una cita a otra con at()
+ * para recorrer un buffer con muchas sin crear objetos.
+ */
+public final class AppointmentView {
+
+    private static final int START = 4;
+    private static final int END = START + 8;
+    private static final int CANCELED_AT = END + 8;
+    private static final int CANCELER = CANCELED_AT + 8;
+    private static final int CUSTOMER = CANCELER + 4;
+    private static final int EXCHANGE_REQUEST = CUSTOMER + 4;
+    private static final int STATUS = EXCHANGE_REQUEST + 4;
+
+    private final ByteBuffer buffer;
+    private int offset;
+
+    public AppointmentView(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Apunta a la cita index-ésima de un buffer que solo tiene citas desde
+     * la posición 0.
+     */
+    public AppointmentView at(int index) {
+        return atOffset(index * EntityCodec.APPOINTMENT_BYTES);
+    }
+
+    public AppointmentView atOffset(int offset) {
+        if (offset < 0 || offset + EntityCodec.APPOINTMENT_BYTES > buffer.limit()) {
+            throw new IndexOutOfBoundsException("No appointment at offset " + offset);
+        }
+        this.offset = offset;
+        return this;
+    }
+
+    public int count() {
+        return buffer.limit() / EntityCodec.APPOINTMENT_BYTES;
+    }
+
+    public int getId() {
+        return buffer.getInt(offset);
+    }
+
+    /**
+     * Segundos desde 1970 en UTC, o Long.MIN_VALUE si no hay fecha.
+     */
+    public long getStartEpochSecond() {
+        return buffer.getLong(offset + START);
+    }
+
+    public long getEndEpochSecond() {
+        return buffer.getLong(offset + END);
+    }
+
+    public long getCanceledAtEpochSecond() {
+        return buffer.getLong(offset + CANCELED_AT);
+    }
+
+    public LocalDateTime getStart() {
+        return EntityCodec.time(getStartEpochSecond());
+    }
+
+    public LocalDateTime getEnd() {
+        return EntityCodec.time(getEndEpochSecond());
+    }
+
+    public LocalDateTime getCanceledAt() {
+        return EntityCodec.time(getCanceledAtEpochSecond());
+    }
+
+    /**
+     * Ids de las entidades relacionadas, o -1 si no hay.
+     */
+    public int getCancelerId() {
+        return buffer.getInt(offset + CANCELER);
+    }
+
+    public int getCustomerId() {
+        return buffer.getInt(offset + CUSTOMER);
+    }
+
+    public int getExchangeRequestId() {
+        return buffer.getInt(offset + EXCHANGE_REQUEST);
+    }
+
+    public AppointmentStatus getStatus() {
+        byte status = buffer.get(offset + STATUS);
+        return status == EntityCodec.NO_STATUS ? null : EntityCodec.APPOINTMENT_STATUSES[status];
+    }
+}
@@ -0,0 +1,190 @@
+package org.iesvdm.appointment.codec;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.BaseEntity;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.entity.ExchangeStatus;
+import org.iesvdm.appointment.entity.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+
+/**
+ * Formato binario compacto de las entidades.
+ *
+ * Las citas y las peticiones ocupan un tamaño fijo (APPOINTMENT_BYTES,
+ * EXCHANGE_REQUEST_BYTES), así que en un buffer con muchas la i-ésima está
+ * en i * tamaño y se puede leer sin crear objetos con AppointmentView y
+ * ExchangeRequestView. Las fechas van en segundos desde 1970 en UTC (se
+ * pierden las fracciones de segundo), los estados por su ordinal y las
+ * entidades relacionadas por su id: al leer se resuelven con References.
+ * De los usuarios se guarda el id, el tipo y el nombre; ni la contraseña
+ * ni las citas del cliente, que se sacan de las citas.
+ *
+ * Todo se lee y escribe en la posición actual del buffer, en el orden de
+ * bytes del buffer.
+ */
+public final class EntityCodec {
+
+    public static final int APPOINTMENT_BYTES = 4 + 3 * 8 + 3 * 4 + 1;
+    public static final int EXCHANGE_REQUEST_BYTES = 3 * 4 + 1;
+
+    static final int NONE = -1;
+    static final long NO_TIME = Long.MIN_VALUE;
+    static final byte NO_STATUS = -1;
+
+    private static final byte USER = 0;
+    private static final byte CUSTOMER = 1;
+
+    static final AppointmentStatus[] APPOINTMENT_STATUSES = AppointmentStatus.values();
+    static final ExchangeStatus[] EXCHANGE_STATUSES = ExchangeStatus.values();
+
+    private EntityCodec() {
+    }
+
+    /**
+     * Cómo convertir un id leído en la entidad a la que apunta.
+     */
+    public interface References {
+
+        User user(int id);
+
+        Customer customer(int id);
+
+        Appointment appointment(int id);
+
+        ExchangeRequest exchangeRequest(int id);
+
+        /**
+         * Entidades nuevas con solo el id.
+         */
+        static References stubs() {
+            return new References() {
+                @Override
+                public User user(int id) {
+                    return new User(id, null, null);
+                }
+
+                @Override
+                public Customer customer(int id) {
+                    return new Customer(id, null, null, new ArrayList<>());
+                }
+
+                @Override
+                public Appointment appointment(int id) {
+                    return Appointment.detached(id, null, null, null, null, null, null, null);
+                }
+
+                @Override
+                public ExchangeRequest exchangeRequest(int id) {
+                    ExchangeRequest exchangeRequest = new ExchangeRequest();
+                    exchangeRequest.setId(id);
+                    return exchangeRequest;
+                }
+            };
+        }
+    }
+
+    public static void writeAppointment(ByteBuffer buffer, Appointment appointment) {
+        buffer.putInt(requireId(appointment));
+        buffer.putLong(epochSecond(appointment.getStart()));
+        buffer.putLong(epochSecond(appointment.getEnd()));
+        buffer.putLong(epochSecond(appointment.getCanceledAt()));
+        buffer.putInt(idOf(appointment.getCanceler()));
+        buffer.putInt(idOf(appointment.getCustomer()));
+        buffer.putInt(idOf(appointment.getExchangeRequest()));
+        buffer.put(appointment.getStatus() == null ? NO_STATUS : (byte) appointment.getStatus().ordinal());
+    }
+
+    public static Appointment readAppointment(ByteBuffer buffer, References references) {
+        int id = buffer.getInt();
+        LocalDateTime start = time(buffer.getLong());
+        LocalDateTime end = time(buffer.getLong());
+        LocalDateTime canceledAt = time(buffer.getLong());
+        int canceler = buffer.getInt();
+        int customer = buffer.getInt();
+        int exchangeRequest = buffer.getInt();
+        byte status = buffer.get();
+        return Appointment.detached(id, start, end, canceledAt,
+                canceler == NONE ? null : references.user(canceler),
+                status == NO_STATUS ? null : APPOINTMENT_STATUSES[status],
+                customer == NONE ? null : references.customer(customer),
+                exchangeRequest == NONE ? null : references.exchangeRequest(exchangeRequest));
+    }
+
+    public static void writeExchangeRequest(ByteBuffer buffer, ExchangeRequest exchangeRequest) {
+        buffer.putInt(requireId(exchangeRequest));
+        buffer.putInt(idOf(exchangeRequest.getRequestor()));
+        buffer.putInt(idOf(exchangeRequest.getRequested()));
+        buffer.put(exchangeRequest.getStatus() == null ? NO_STATUS : (byte) exchangeRequest.getStatus().ordinal());
+    }
+
+    public static ExchangeRequest readExchangeRequest(ByteBuffer buffer, References references) {
+        ExchangeRequest exchangeRequest = new ExchangeRequest();
+        exchangeRequest.setId(buffer.getInt());
+        int requestor = buffer.getInt();
+        int requested = buffer.getInt();
+        byte status = buffer.get();
+        exchangeRequest.setRequestor(requestor == NONE ? null : references.appointment(requestor));
+        exchangeRequest.setRequested(requested == NONE ? null : references.appointment(requested));
+        exchangeRequest.setStatus(status == NO_STATUS ? null : EXCHANGE_STATUSES[status]);
+        return exchangeRequest;
+    }
+
+    public static int userBytes(User user) {
+        return 4 + 1 + 4 + (user.getUserName() == null ? 0 : user.getUserName().getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    /**
+     * Sirve también para Customer; al leerlo vuelve a ser un Customer, con la
+     * lista de citas vacía.
+     */
+    public static void writeUser(ByteBuffer buffer, User user) {
+        buffer.putInt(requireId(user));
+        buffer.put(user instanceof Customer ? CUSTOMER : USER);
+        if (user.getUserName() == null) {
+            buffer.putInt(NONE);
+        } else {
+            byte[] userName = user.getUserName().getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(userName.length);
+            buffer.put(userName);
+        }
+    }
+
+    public static User readUser(ByteBuffer buffer) {
+        int id = buffer.getInt();
+        byte kind = buffer.get();
+        int length = buffer.getInt();
+        String userName = null;
+        if (length != NONE) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            userName = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return kind == CUSTOMER ? new Customer(id, userName, null, new ArrayList<>()) : new User(id, userName, null);
+    }
+
+    private static int requireId(BaseEntity entity) {
+        if (entity.getId() == null) {
+            throw new IllegalArgumentException(entity.getClass().getSimpleName() + " id is required");
+        }
+        return entity.getId();
+    }
+
+    private static int idOf(BaseEntity entity) {
+        return entity == null || entity.getId() == null ? NONE : entity.getId();
+    }
+
+    static long epochSecond(LocalDateTime time) {
+        return time == null ? NO_TIME : time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    static LocalDateTime time(long epochSecond) {
+        return epochSecond == NO_TIME ? null : LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+}
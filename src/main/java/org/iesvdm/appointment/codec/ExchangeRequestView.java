@@ -0,0 +1,55 @@
+package org.iesvdm.appointment.codec;
+
+import org.iesvdm.appointment.entity.ExchangeStatus;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Como AppointmentView, para peticiones de intercambio.
+ */
+public final class ExchangeRequestView {
+
+    private static final int REQUESTOR = 4;
+    private static final int REQUESTED = REQUESTOR + 4;
+    private static final int STATUS = REQUESTED + 4;
+
+    private final ByteBuffer buffer;
+    private int offset;
+
+    public ExchangeRequestView(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public ExchangeRequestView at(int index) {
+        return atOffset(index * EntityCodec.EXCHANGE_REQUEST_BYTES);
+    }
+
+    public ExchangeRequestView atOffset(int offset) {
+        if (offset < 0 || offset + EntityCodec.EXCHANGE_REQUEST_BYTES > buffer.limit()) {
+            throw new IndexOutOfBoundsException("No exchange request at offset " + offset);
+        }
+        this.offset = offset;
+        return this;
+    }
+
+    public int count() {
+        return buffer.limit() / EntityCodec.EXCHANGE_REQUEST_BYTES;
+    }
+
+    public int getId() {
+        return buffer.getInt(offset);
+    }
+
+    public int getRequestorId() {
+        return buffer.getInt(offset + REQUESTOR);
+    }
+
+    public int getRequestedId() {
+        return buffer.getInt(offset + REQUESTED);
+    }
+
+    public ExchangeStatus getStatus() {
+        byte status = buffer.get(offset + STATUS);
+        return status == EntityCodec.NO_STATUS ? null : EntityCodec.EXCHANGE_STATUSES[status];
+    }
+}
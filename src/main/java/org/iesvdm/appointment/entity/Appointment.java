@@ -39,6 +39,27 @@ public class Appointment extends BaseEntity implements Comparable<Appointment> {
         this.exchangeRequest = exchangeRequest;
     }
 
+    private Appointment(Integer id, LocalDateTime start, LocalDateTime end, LocalDateTime canceledAt, User canceler,
+                        AppointmentStatus status, Customer customer, ExchangeRequest exchangeRequest) {
+        super(id);
+        this.start = start;
+        this.end = end;
+        this.canceledAt = canceledAt;
+        this.canceler = canceler;
+        this.status = status;
+        this.customer = customer;
+        this.exchangeRequest = exchangeRequest;
+    }
+
+    /**
+     * Cita con todos sus campos, id incluido. Es para las copias de usar y
+     * tirar, como las que salen de decodificar.
+     */
+    public static Appointment detached(Integer id, LocalDateTime start, LocalDateTime end, LocalDateTime canceledAt, User canceler,
+                                       AppointmentStatus status, Customer customer, ExchangeRequest exchangeRequest) {
+        return new Appointment(id, start, end, canceledAt, canceler, status, customer, exchangeRequest);
+    }
+
     @Override
     public int compareTo(Appointment o) {
         return this.getStart().compareTo(o.getStart());
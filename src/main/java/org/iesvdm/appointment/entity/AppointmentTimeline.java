@@ -0,0 +1,149 @@
+package org.iesvdm.appointment.entity;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Citas de un cliente ordenadas por start (a igual start, por orden de
+ * llegada), sin dos con el mismo id: si llega otra cita con un id que ya
+ * está, sustituye a la anterior. Las citas sin start no están. Las entidades
+ * no la tocan: la mantiene TimelineAppointmentRepository al guardar, que
+ * pasa la cita de una línea de tiempo a otra cuando cambia de cliente (por
+ * ejemplo, al aceptar un intercambio) y la recoloca si cambia su start.
+ *
+ * next, previous y between cuestan O(log n) más lo que devuelven, y get por
+ * id O(1). Guarda como mucho capacity citas: al pasarse se olvidan las de
+ * start más antiguo, que siguen en el repositorio. Es segura para varios
+ * hilos.
+ */
+public class AppointmentTimeline {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private record Key(LocalDateTime start, long sequence) implements Comparable<Key> {
+
+        @Override
+        public int compareTo(Key other) {
+            int cmp = start.compareTo(other.start);
+            return cmp != 0 ? cmp : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * Posición de una cita y el id con el que entró, por si luego cambia.
+     */
+    private record Entry(Key key, Integer id) {
+    }
+
+    private final NavigableMap<Key, Appointment> byStart = new TreeMap<>();
+    private final Map<Appointment, Entry> entries = new IdentityHashMap<>();
+    private final Map<Integer, Appointment> byId = new HashMap<>();
+    private long sequence;
+    private int capacity = DEFAULT_CAPACITY;
+
+    /**
+     * Añade la cita o la recoloca si ya estaba.
+     */
+    public synchronized void add(Appointment appointment) {
+        remove(appointment);
+        if (appointment.getStart() == null) {
+            return;
+        }
+        Integer id = appointment.getId();
+        if (id != null) {
+            Appointment previous = byId.get(id);
+            if (previous != null) {
+                remove(previous);
+            }
+            byId.put(id, appointment);
+        }
+        Key key = new Key(appointment.getStart(), sequence++);
+        byStart.put(key, appointment);
+        entries.put(appointment, new Entry(key, id));
+        evict();
+    }
+
+    /**
+     * Quita la cita, o la que esté con su id si es otra copia de ella.
+     */
+    public synchronized void remove(Appointment appointment) {
+        Entry entry = entries.remove(appointment);
+        if (entry == null) {
+            Appointment copy = appointment.getId() == null ? null : byId.get(appointment.getId());
+            if (copy != null) {
+                remove(copy);
+            }
+            return;
+        }
+        byStart.remove(entry.key());
+        if (entry.id() != null && byId.get(entry.id()) == appointment) {
+            byId.remove(entry.id());
+        }
+    }
+
+    private void evict() {
+        while (byStart.size() > capacity) {
+            remove(byStart.firstEntry().getValue());
+        }
+    }
+
+    public synchronized Appointment get(int appointmentId) {
+        return byId.get(appointmentId);
+    }
+
+    public synchronized boolean contains(Appointment appointment) {
+        return entries.containsKey(appointment);
+    }
+
+    /**
+     * Primera cita que empieza en instant o después, o null.
+     */
+    public synchronized Appointment next(LocalDateTime instant) {
+        Map.Entry<Key, Appointment> entry = byStart.ceilingEntry(new Key(instant, Long.MIN_VALUE));
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * Última cita que empieza antes de instant, o null.
+     */
+    public synchronized Appointment previous(LocalDateTime instant) {
+        Map.Entry<Key, Appointment> entry = byStart.lowerEntry(new Key(instant, Long.MIN_VALUE));
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * Citas que empiezan en [from, to), por orden de start.
+     */
+    public synchronized List<Appointment> between(LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(byStart.subMap(new Key(from, Long.MIN_VALUE), true, new Key(to, Long.MIN_VALUE), false).values());
+    }
+
+    public synchronized List<Appointment> toList() {
+        return new ArrayList<>(byStart.values());
+    }
+
+    public synchronized int size() {
+        return byStart.size();
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+        evict();
+    }
+}
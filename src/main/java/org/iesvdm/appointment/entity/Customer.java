@@ -8,6 +8,12 @@ public class Customer extends User {
 
     private List<Appointment> appointments;
 
+    /**
+     * Las citas que tiene ahora, ordenadas; la mantiene, como appointments,
+     * TimelineAppointmentRepository.
+     */
+    private final AppointmentTimeline timeline = new AppointmentTimeline();
+
     public Customer() {
         super();
     }
@@ -24,4 +30,8 @@ public class Customer extends User {
     public void setAppointments(List<Appointment> appointments) {
         this.appointments = appointments;
     }
+
+    public AppointmentTimeline getTimeline() {
+        return timeline;
+    }
 }
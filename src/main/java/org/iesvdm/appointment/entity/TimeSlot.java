@@ -0,0 +1,19 @@
+package org.iesvdm.appointment.entity;
+
+import java.time.LocalDateTime;
+
+/**
+ * Intervalo semiabierto [start, end).
+ */
+public record TimeSlot(LocalDateTime start, LocalDateTime end) {
+
+    public TimeSlot {
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("Slot start must be before its end: " + start + " - " + end);
+        }
+    }
+
+    public boolean overlaps(LocalDateTime from, LocalDateTime to) {
+        return start.isBefore(to) && end.isAfter(from);
+    }
+}
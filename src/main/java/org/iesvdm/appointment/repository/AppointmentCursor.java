@@ -0,0 +1,49 @@
+package org.iesvdm.appointment.repository;
+
+import org.iesvdm.appointment.entity.Appointment;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Posición en un listado de citas ordenado por una fecha (start o end, según
+ * la búsqueda) y, a igual fecha, por id. La página siguiente empieza justo
+ * detrás de la última cita devuelta, así que no se salta ni repite las citas
+ * que no cambian aunque se guarden otras entre página y página.
+ */
+public record AppointmentCursor(LocalDateTime time, int id) implements Comparable<AppointmentCursor> {
+
+    public AppointmentCursor {
+        if (time == null) {
+            throw new IllegalArgumentException("Cursor time is required");
+        }
+    }
+
+    /**
+     * Cursor justo detrás de la cita dada en un listado por start.
+     */
+    public static AppointmentCursor of(Appointment appointment) {
+        return new AppointmentCursor(appointment.getStart(), appointment.getId());
+    }
+
+    /**
+     * Cursor justo detrás de la cita dada en un listado por end.
+     */
+    public static AppointmentCursor ofEnd(Appointment appointment) {
+        return new AppointmentCursor(appointment.getEnd(), appointment.getId());
+    }
+
+    /**
+     * Cursor justo detrás de la última cita de una página por start, o null
+     * si está vacía.
+     */
+    public static AppointmentCursor after(List<Appointment> page) {
+        return page.isEmpty() ? null : of(page.get(page.size() - 1));
+    }
+
+    @Override
+    public int compareTo(AppointmentCursor other) {
+        int cmp = time.compareTo(other.time);
+        return cmp != 0 ? cmp : Integer.compare(id, other.id);
+    }
+}
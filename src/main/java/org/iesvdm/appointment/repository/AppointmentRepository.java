@@ -3,9 +3,18 @@ package org.iesvdm.appointment.repository;
 
 import org.iesvdm.appointment.entity.Appointment;
 import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.entity.TimeSlot;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public interface AppointmentRepository {
 
@@ -13,6 +22,24 @@ public interface AppointmentRepository {
 
     public void save(Appointment appointment);
 
+    /**
+     * Citas con los ids dados, indexadas por id; los que no existen no aparecen.
+     */
+    public default Map<Integer, Appointment> findAllById(Collection<Integer> appointmentIds) {
+        Map<Integer, Appointment> appointments = new HashMap<>();
+        for (Integer id : appointmentIds) {
+            Appointment appointment = getOne(id);
+            if (appointment != null) {
+                appointments.put(id, appointment);
+            }
+        }
+        return appointments;
+    }
+
+    public default void saveAll(Collection<Appointment> appointments) {
+        appointments.forEach(this::save);
+    }
+
     public List<Appointment> findCanceledByUser(int userId);
 
     public List<Appointment> findByCustomerIdWithStartInPeroid( int customerId, LocalDateTime startPeroid, LocalDateTime endPeroid);
@@ -21,6 +48,72 @@ public interface AppointmentRepository {
 
     public List<Appointment> getEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId);
 
+    /**
+     * Una página de getEligibleAppointmentsForExchange: como mucho limit citas,
+     * ordenadas por start y id, detrás del cursor after (null para la
+     * primera).
+     */
+    public default List<Appointment> getEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId,
+                                                                        AppointmentCursor after, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1: " + limit);
+        }
+        return streamEligibleAppointmentsForExchange(start, customerId, after).limit(limit)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
     public List<Appointment> findExchangeRequestedWithStartBefore(LocalDateTime date);
 
+    /**
+     * Como findScheduledWithEndBeforeDate, pero perezosa: las citas salen por
+     * end e id, detrás del cursor after (null para empezar por el principio),
+     * y sólo se lee lo que se consume, así que con limit, skip o findFirst la
+     * memoria queda acotada. Por defecto ordena la lista completa; los
+     * repositorios indexados recorren sus índices.
+     */
+    public default Stream<Appointment> streamScheduledWithEndBeforeDate(LocalDateTime now, AppointmentCursor after) {
+        return sortedAfter(findScheduledWithEndBeforeDate(now), AppointmentCursor::ofEnd, after);
+    }
+
+    /**
+     * Como streamScheduledWithEndBeforeDate, para
+     * findExchangeRequestedWithStartBefore y por start e id.
+     */
+    public default Stream<Appointment> streamExchangeRequestedWithStartBefore(LocalDateTime date, AppointmentCursor after) {
+        return sortedAfter(findExchangeRequestedWithStartBefore(date), AppointmentCursor::of, after);
+    }
+
+    /**
+     * Como streamScheduledWithEndBeforeDate, para
+     * getEligibleAppointmentsForExchange y por start e id.
+     */
+    public default Stream<Appointment> streamEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId,
+                                                                             AppointmentCursor after) {
+        return sortedAfter(getEligibleAppointmentsForExchange(start, customerId), AppointmentCursor::of, after);
+    }
+
+    private static Stream<Appointment> sortedAfter(List<Appointment> appointments, Function<Appointment, AppointmentCursor> key,
+                                                   AppointmentCursor after) {
+        return appointments.stream()
+                .filter(appointment -> after == null || key.apply(appointment).compareTo(after) > 0)
+                .sorted(Comparator.comparing(key));
+    }
+
+    /**
+     * Citas no canceladas cuyo intervalo [start, end) solapa [from, to), por orden de start.
+     */
+    public List<Appointment> findOverlapping(LocalDateTime from, LocalDateTime to);
+
+    public List<Appointment> findByCustomerIdOverlapping(int customerId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Citas no canceladas en curso en el instante dado.
+     */
+    public List<Appointment> findAt(LocalDateTime instant);
+
+    /**
+     * Huecos de [from, to) sin ninguna cita no cancelada.
+     */
+    public List<TimeSlot> findFreeSlots(LocalDateTime from, LocalDateTime to);
+
 }
@@ -3,10 +3,32 @@ package org.iesvdm.appointment.repository;
 
 import org.iesvdm.appointment.entity.ExchangeRequest;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 public interface ExchangeRequestRepository {
 
     public ExchangeRequest getOne(int exchangeRequestId);
 
     public void save(ExchangeRequest exchangeRequest);
 
+    /**
+     * Peticiones con los ids dados, indexadas por id; los que no existen no aparecen.
+     */
+    public default Map<Integer, ExchangeRequest> findAllById(Collection<Integer> exchangeRequestIds) {
+        Map<Integer, ExchangeRequest> exchangeRequests = new HashMap<>();
+        for (Integer id : exchangeRequestIds) {
+            ExchangeRequest exchangeRequest = getOne(id);
+            if (exchangeRequest != null) {
+                exchangeRequests.put(id, exchangeRequest);
+            }
+        }
+        return exchangeRequests;
+    }
+
+    public default void saveAll(Collection<ExchangeRequest> exchangeRequests) {
+        exchangeRequests.forEach(this::save);
+    }
+
 }
@@ -2,11 +2,16 @@ package org.iesvdm.appointment.repository.impl;
 
 import org.iesvdm.appointment.entity.Appointment;
 import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.TimeSlot;
 import org.iesvdm.appointment.repository.AppointmentRepository;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class AppointmentRepositoryImpl implements AppointmentRepository {
@@ -29,6 +34,26 @@ public class AppointmentRepositoryImpl implements AppointmentRepository {
         appointments.add(appointment);
     }
 
+    /**
+     * Una sola pasada por todas las citas, en lugar de un getOne por id.
+     */
+    @Override
+    public Map<Integer, Appointment> findAllById(Collection<Integer> appointmentIds) {
+        Set<Integer> ids = new HashSet<>(appointmentIds);
+        Map<Integer, Appointment> result = new HashMap<>();
+        for (Appointment appointment : appointments) {
+            if (ids.contains(appointment.getId())) {
+                result.put(appointment.getId(), appointment);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void saveAll(Collection<Appointment> appointments) {
+        this.appointments.addAll(appointments);
+    }
+
     @Override
     public List<Appointment> findCanceledByUser(int userId) {
         return appointments.stream().filter(appointment -> appointment.getStatus().equals(AppointmentStatus.CANCELED)
@@ -68,4 +93,53 @@ public class AppointmentRepositoryImpl implements AppointmentRepository {
                                                             && appointment.getStart().isBefore(date))
                                     .toList();
     }
+
+    @Override
+    public List<Appointment> findOverlapping(LocalDateTime from, LocalDateTime to) {
+        return appointments.stream().filter(appointment -> occupies(appointment)
+                                                            && appointment.getStart().isBefore(to)
+                                                            && appointment.getEnd().isAfter(from))
+                                    .sorted()
+                                    .toList();
+    }
+
+    @Override
+    public List<Appointment> findByCustomerIdOverlapping(int customerId, LocalDateTime from, LocalDateTime to) {
+        return appointments.stream().filter(appointment -> appointment.getCustomer() != null
+                                                            && appointment.getCustomer().getId() == customerId
+                                                            && occupies(appointment)
+                                                            && appointment.getStart().isBefore(to)
+                                                            && appointment.getEnd().isAfter(from))
+                                    .sorted()
+                                    .toList();
+    }
+
+    @Override
+    public List<Appointment> findAt(LocalDateTime instant) {
+        return findOverlapping(instant, instant.plusNanos(1));
+    }
+
+    @Override
+    public List<TimeSlot> findFreeSlots(LocalDateTime from, LocalDateTime to) {
+        List<TimeSlot> slots = new ArrayList<>();
+        LocalDateTime cursor = from;
+        for (Appointment appointment : findOverlapping(from, to)) {
+            if (appointment.getStart().isAfter(cursor)) {
+                slots.add(new TimeSlot(cursor, appointment.getStart()));
+            }
+            if (appointment.getEnd().isAfter(cursor)) {
+                cursor = appointment.getEnd();
+            }
+        }
+        if (cursor.isBefore(to)) {
+            slots.add(new TimeSlot(cursor, to));
+        }
+        return slots;
+    }
+
+    private static boolean occupies(Appointment appointment) {
+        return appointment.getStatus() != AppointmentStatus.CANCELED
+                && appointment.getStart() != null
+                && appointment.getEnd() != null;
+    }
 }
@@ -0,0 +1,184 @@
+package org.iesvdm.appointment.repository.impl;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.TimeSlot;
+import org.iesvdm.appointment.repository.AppointmentCursor;
+import org.iesvdm.appointment.repository.AppointmentRepository;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * AppointmentRepository que guarda en una RepositoryCache las citas leídas
+ * por id (getOne y findAllById), también las que no existen. Al guardar se
+ * escribe en el repositorio y luego se invalida la entrada, de modo que la
+ * siguiente lectura trae lo último que se haya guardado aunque haya varios
+ * save a la vez. Las búsquedas van siempre al repositorio.
+ *
+ * Si algo escribe en el repositorio sin pasar por aquí, hay que llamar a
+ * invalidate, o esperar a que caduque la entrada.
+ */
+public class CachingAppointmentRepository implements AppointmentRepository {
+
+    private final AppointmentRepository delegate;
+    private final RepositoryCache<Appointment> cache;
+
+    public CachingAppointmentRepository(AppointmentRepository delegate) {
+        this(delegate, RepositoryCache.DEFAULT_CAPACITY, null, Clock.systemUTC());
+    }
+
+    public CachingAppointmentRepository(AppointmentRepository delegate, int capacity, Duration ttl, Clock clock) {
+        this.delegate = delegate;
+        this.cache = new RepositoryCache<>(capacity, ttl, clock);
+    }
+
+    @Override
+    public Appointment getOne(int appointmentId) {
+        RepositoryCache.Cached<Appointment> cached = cache.lookup(appointmentId);
+        if (cached != null) {
+            return cached.value();
+        }
+        long stamp = cache.stamp();
+        Appointment appointment = delegate.getOne(appointmentId);
+        cache.fill(appointmentId, appointment, stamp);
+        return appointment;
+    }
+
+    @Override
+    public void save(Appointment appointment) {
+        delegate.save(appointment);
+        if (appointment.getId() != null) {
+            cache.invalidate(appointment.getId());
+        }
+    }
+
+    /**
+     * Pide al repositorio, de una vez, sólo los ids que no están en la caché.
+     */
+    @Override
+    public Map<Integer, Appointment> findAllById(Collection<Integer> appointmentIds) {
+        Map<Integer, Appointment> appointments = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : appointmentIds) {
+            RepositoryCache.Cached<Appointment> cached = cache.lookup(id);
+            if (cached == null) {
+                missing.add(id);
+            } else if (cached.value() != null) {
+                appointments.put(id, cached.value());
+            }
+        }
+        if (!missing.isEmpty()) {
+            long stamp = cache.stamp();
+            Map<Integer, Appointment> found = delegate.findAllById(missing);
+            for (Integer id : missing) {
+                Appointment appointment = found.get(id);
+                cache.fill(id, appointment, stamp);
+                if (appointment != null) {
+                    appointments.put(id, appointment);
+                }
+            }
+        }
+        return appointments;
+    }
+
+    @Override
+    public void saveAll(Collection<Appointment> appointments) {
+        delegate.saveAll(appointments);
+        for (Appointment appointment : appointments) {
+            if (appointment.getId() != null) {
+                cache.invalidate(appointment.getId());
+            }
+        }
+    }
+
+    public void invalidate(int appointmentId) {
+        cache.invalidate(appointmentId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public RepositoryCache<Appointment> getCache() {
+        return cache;
+    }
+
+    @Override
+    public List<Appointment> findCanceledByUser(int userId) {
+        return delegate.findCanceledByUser(userId);
+    }
+
+    @Override
+    public List<Appointment> findByCustomerIdWithStartInPeroid(int customerId, LocalDateTime startPeroid, LocalDateTime endPeroid) {
+        return delegate.findByCustomerIdWithStartInPeroid(customerId, startPeroid, endPeroid);
+    }
+
+    @Override
+    public List<Appointment> findScheduledWithEndBeforeDate(LocalDateTime now) {
+        return delegate.findScheduledWithEndBeforeDate(now);
+    }
+
+    @Override
+    public List<Appointment> getEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId) {
+        return delegate.getEligibleAppointmentsForExchange(start, customerId);
+    }
+
+    @Override
+    public List<Appointment> getEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId,
+                                                                AppointmentCursor after, int limit) {
+        return delegate.getEligibleAppointmentsForExchange(start, customerId, after, limit);
+    }
+
+    @Override
+    public List<Appointment> findExchangeRequestedWithStartBefore(LocalDateTime date) {
+        return delegate.findExchangeRequestedWithStartBefore(date);
+    }
+
+    @Override
+    public Stream<Appointment> streamScheduledWithEndBeforeDate(LocalDateTime now, AppointmentCursor after) {
+        return delegate.streamScheduledWithEndBeforeDate(now, after);
+    }
+
+    @Override
+    public Stream<Appointment> streamExchangeRequestedWithStartBefore(LocalDateTime date, AppointmentCursor after) {
+        return delegate.streamExchangeRequestedWithStartBefore(date, after);
+    }
+
+    @Override
+    public Stream<Appointment> streamEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId,
+                                                                     AppointmentCursor after) {
+        return delegate.streamEligibleAppointmentsForExchange(start, customerId, after);
+    }
+
+    @Override
+    public List<Appointment> findOverlapping(LocalDateTime from, LocalDateTime to) {
+        return delegate.findOverlapping(from, to);
+    }
+
+    @Override
+    public List<Appointment> findByCustomerIdOverlapping(int customerId, LocalDateTime from, LocalDateTime to) {
+        return delegate.findByCustomerIdOverlapping(customerId, from, to);
+    }
+
+    @Override
+    public List<Appointment> findAt(LocalDateTime instant) {
+        return delegate.findAt(instant);
+    }
+
+    @Override
+    public List<TimeSlot> findFreeSlots(LocalDateTime from, LocalDateTime to) {
+        return delegate.findFreeSlots(from, to);
+    }
+
+    @Override
+    public String toString() {
+        return cache.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package org.iesvdm.appointment.repository.impl;
+
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.repository.ExchangeRequestRepository;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ExchangeRequestRepository con caché, como CachingAppointmentRepository.
+ * Al guardar una petición nueva se invalida el id que le acaba de asignar el
+ * repositorio, por si estaba guardado que no existía.
+ */
+public class CachingExchangeRequestRepository implements ExchangeRequestRepository {
+
+    private final ExchangeRequestRepository delegate;
+    private final RepositoryCache<ExchangeRequest> cache;
+
+    public CachingExchangeRequestRepository(ExchangeRequestRepository delegate) {
+        this(delegate, RepositoryCache.DEFAULT_CAPACITY, null, Clock.systemUTC());
+    }
+
+    public CachingExchangeRequestRepository(ExchangeRequestRepository delegate, int capacity, Duration ttl, Clock clock) {
+        this.delegate = delegate;
+        this.cache = new RepositoryCache<>(capacity, ttl, clock);
+    }
+
+    @Override
+    public ExchangeRequest getOne(int exchangeRequestId) {
+        RepositoryCache.Cached<ExchangeRequest> cached = cache.lookup(exchangeRequestId);
+        if (cached != null) {
+            return cached.value();
+        }
+        long stamp = cache.stamp();
+        ExchangeRequest exchangeRequest = delegate.getOne(exchangeRequestId);
+        cache.fill(exchangeRequestId, exchangeRequest, stamp);
+        return exchangeRequest;
+    }
+
+    @Override
+    public void save(ExchangeRequest exchangeRequest) {
+        delegate.save(exchangeRequest);
+        if (exchangeRequest.getId() != null) {
+            cache.invalidate(exchangeRequest.getId());
+        }
+    }
+
+    @Override
+    public Map<Integer, ExchangeRequest> findAllById(Collection<Integer> exchangeRequestIds) {
+        Map<Integer, ExchangeRequest> exchangeRequests = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : exchangeRequestIds) {
+            RepositoryCache.Cached<ExchangeRequest> cached = cache.lookup(id);
+            if (cached == null) {
+                missing.add(id);
+            } else if (cached.value() != null) {
+                exchangeRequests.put(id, cached.value());
+            }
+        }
+        if (!missing.isEmpty()) {
+            long stamp = cache.stamp();
+            Map<Integer, ExchangeRequest> found = delegate.findAllById(missing);
+            for (Integer id : missing) {
+                ExchangeRequest exchangeRequest = found.get(id);
+                cache.fill(id, exchangeRequest, stamp);
+                if (exchangeRequest != null) {
+                    exchangeRequests.put(id, exchangeRequest);
+                }
+            }
+        }
+        return exchangeRequests;
+    }
+
+    @Override
+    public void saveAll(Collection<ExchangeRequest> exchangeRequests) {
+        delegate.saveAll(exchangeRequests);
+        for (ExchangeRequest exchangeRequest : exchangeRequests) {
+            if (exchangeRequest.getId() != null) {
+                cache.invalidate(exchangeRequest.getId());
+            }
+        }
+    }
+
+    public void invalidate(int exchangeRequestId) {
+        cache.invalidate(exchangeRequestId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public RepositoryCache<ExchangeRequest> getCache() {
+        return cache;
+    }
+
+    @Override
+    public String toString() {
+        return cache.toString();
+    }
+}
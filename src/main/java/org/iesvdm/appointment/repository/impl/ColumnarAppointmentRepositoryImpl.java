@@ -0,0 +1,384 @@
+package org.iesvdm.appointment.repository.impl;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.TimeSlot;
+import org.iesvdm.appointment.entity.User;
+import org.iesvdm.appointment.repository.AppointmentRepository;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repositorio en memoria por columnas: cada cita es una fila de arrays
+ * paralelos de tipos primitivos (id, cliente, cancelador, start, end y
+ * estado), más la cita guardada. Las búsquedas son bucles sobre los arrays
+ * y solo tocan las citas de las filas que cumplen la condición.
+ *
+ * getOne y las búsquedas devuelven las mismas citas que se guardaron. Las
+ * columnas se ponen al día al guardar, así que un cambio en una cita no
+ * cuenta en las búsquedas hasta que se vuelve a guardar.
+ *
+ * Las fechas se guardan en segundos desde 1970 en UTC: en las búsquedas no
+ * cuentan las fracciones de segundo. Se asume start <= end. No es seguro
+ * para varios hilos.
+ */
+public final class ColumnarAppointmentRepositoryImpl implements AppointmentRepository {
+
+    private static final int NONE = -1;
+    private static final byte NO_STATUS = -1;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private int size;
+    private int[] ids = new int[16];
+    private int[] customerIds = new int[16];
+    private int[] cancelerIds = new int[16];
+    private long[] starts = new long[16];
+    private long[] ends = new long[16];
+    private byte[] statuses = new byte[16];
+    private Appointment[] appointments = new Appointment[16];
+
+    private final RowIndex rows = new RowIndex();
+
+    public ColumnarAppointmentRepositoryImpl() {
+    }
+
+    public ColumnarAppointmentRepositoryImpl(Collection<Appointment> appointments) {
+        saveAll(appointments);
+    }
+
+    @Override
+    public Appointment getOne(int appointmentId) {
+        int row = rows.get(appointmentId);
+        return row == NONE ? null : appointments[row];
+    }
+
+    @Override
+    public Map<Integer, Appointment> findAllById(Collection<Integer> appointmentIds) {
+        Map<Integer, Appointment> result = new HashMap<>();
+        for (Integer id : appointmentIds) {
+            int row = rows.get(id);
+            if (row != NONE) {
+                result.put(id, appointments[row]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void save(Appointment appointment) {
+        Integer id = appointment.getId();
+        if (id == null) {
+            throw new IllegalArgumentException("Appointment id is required");
+        }
+        int row = rows.get(id);
+        if (row == NONE) {
+            if (size == ids.length) {
+                grow();
+            }
+            row = size++;
+            rows.put(id, row);
+        }
+        ids[row] = id;
+        starts[row] = floor(appointment.getStart());
+        ends[row] = floor(appointment.getEnd());
+        statuses[row] = appointment.getStatus() == null ? NO_STATUS : (byte) appointment.getStatus().ordinal();
+        customerIds[row] = idOf(appointment.getCustomer());
+        cancelerIds[row] = idOf(appointment.getCanceler());
+        appointments[row] = appointment;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        customerIds = Arrays.copyOf(customerIds, capacity);
+        cancelerIds = Arrays.copyOf(cancelerIds, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        appointments = Arrays.copyOf(appointments, capacity);
+    }
+
+    private List<Appointment> stored(int[] matches, int count) {
+        List<Appointment> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(appointments[matches[i]]);
+        }
+        return result;
+    }
+
+    private static int idOf(User user) {
+        return user == null || user.getId() == null ? NONE : user.getId();
+    }
+
+    /**
+     * Segundo en el que cae time. Con floor y ceil se pasa a segundos una
+     * condición sobre fechas sin cambiar su resultado para las columnas:
+     * t > x es t > floor(x) y t < x es t < ceil(x).
+     */
+    private static long floor(LocalDateTime time) {
+        return time == null ? NO_TIME : time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static long ceil(LocalDateTime time) {
+        long seconds = time.toEpochSecond(ZoneOffset.UTC);
+        return time.getNano() == 0 ? seconds : seconds + 1;
+    }
+
+    private static LocalDateTime time(long seconds) {
+        return LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+    }
+
+    @Override
+    public List<Appointment> findCanceledByUser(int userId) {
+        byte canceled = (byte) AppointmentStatus.CANCELED.ordinal();
+        int[] matches = new int[16];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (cancelerIds[row] == userId & statuses[row] == canceled) {
+                matches = add(matches, count++, row);
+            }
+        }
+        return stored(matches, count);
+    }
+
+    @Override
+    public List<Appointment> findByCustomerIdWithStartInPeroid(int customerId, LocalDateTime startPeroid, LocalDateTime endPeroid) {
+        long from = floor(startPeroid);
+        long to = ceil(endPeroid);
+        int[] matches = new int[16];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (customerIds[row] == customerId & starts[row] > from & ends[row] < to & ends[row] != NO_TIME) {
+                matches = add(matches, count++, row);
+            }
+        }
+        return stored(matches, count);
+    }
+
+    @Override
+    public List<Appointment> findScheduledWithEndBeforeDate(LocalDateTime now) {
+        return findByStatusAndEndBefore(AppointmentStatus.SCHEDULED, now);
+    }
+
+    private List<Appointment> findByStatusAndEndBefore(AppointmentStatus status, LocalDateTime date) {
+        byte wanted = (byte) status.ordinal();
+        long before = ceil(date);
+        int[] matches = new int[16];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (statuses[row] == wanted & ends[row] < before & ends[row] != NO_TIME) {
+                matches = add(matches, count++, row);
+            }
+        }
+        return stored(matches, count);
+    }
+
+    @Override
+    public List<Appointment> getEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId) {
+        byte scheduled = (byte) AppointmentStatus.SCHEDULED.ordinal();
+        long after = floor(start);
+        int excluded = customerId == null ? NONE : customerId;
+        int[] matches = new int[16];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (statuses[row] == scheduled & starts[row] > after & customerIds[row] != excluded) {
+                matches = add(matches, count++, row);
+            }
+        }
+        return stored(matches, count);
+    }
+
+    @Override
+    public List<Appointment> findExchangeRequestedWithStartBefore(LocalDateTime date) {
+        byte requested = (byte) AppointmentStatus.EXCHANGE_REQUESTED.ordinal();
+        long before = ceil(date);
+        int[] matches = new int[16];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (statuses[row] == requested & starts[row] < before & starts[row] != NO_TIME) {
+                matches = add(matches, count++, row);
+            }
+        }
+        return stored(matches, count);
+    }
+
+    @Override
+    public List<Appointment> findOverlapping(LocalDateTime from, LocalDateTime to) {
+        return findOverlapping(NONE, false, from, to);
+    }
+
+    @Override
+    public List<Appointment> findByCustomerIdOverlapping(int customerId, LocalDateTime from, LocalDateTime to) {
+        return findOverlapping(customerId, true, from, to);
+    }
+
+    private List<Appointment> findOverlapping(int customerId, boolean byCustomer, LocalDateTime from, LocalDateTime to) {
+        int[] matches = overlapping(customerId, byCustomer, floor(from), ceil(to));
+        List<Appointment> result = stored(matches, matches.length);
+        result.sort(null);
+        return result;
+    }
+
+    /**
+     * Filas no canceladas, con start y end, que solapan [from, to).
+     */
+    private int[] overlapping(int customerId, boolean byCustomer, long from, long to) {
+        byte canceled = (byte) AppointmentStatus.CANCELED.ordinal();
+        int[] matches = new int[16];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (statuses[row] != canceled & starts[row] != NO_TIME & ends[row] != NO_TIME
+                    & starts[row] < to & ends[row] > from & (!byCustomer | customerIds[row] == customerId)) {
+                matches = add(matches, count++, row);
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    @Override
+    public List<Appointment> findAt(LocalDateTime instant) {
+        return findOverlapping(instant, instant.plusNanos(1));
+    }
+
+    /**
+     * Recorre los inicios y los finales de las citas que solapan, ordenados
+     * por separado: hay hueco cuando no queda ninguna cita abierta. Las citas
+     * de duración cero no ocupan nada.
+     */
+    @Override
+    public List<TimeSlot> findFreeSlots(LocalDateTime from, LocalDateTime to) {
+        long lower = floor(from);
+        long upper = ceil(to);
+        int[] matches = overlapping(NONE, false, lower, upper);
+        long[] opens = new long[matches.length];
+        long[] closes = new long[matches.length];
+        int n = 0;
+        for (int row : matches) {
+            if (starts[row] < ends[row]) {
+                opens[n] = Math.max(starts[row], lower);
+                closes[n] = Math.min(ends[row], upper);
+                n++;
+            }
+        }
+        Arrays.sort(opens, 0, n);
+        Arrays.sort(closes, 0, n);
+
+        List<TimeSlot> slots = new ArrayList<>();
+        long gapStart = lower;
+        int open = 0;
+        int i = 0;
+        int j = 0;
+        while (i < n) {
+            if (closes[j] <= opens[i]) {
+                if (--open == 0) {
+                    gapStart = closes[j];
+                }
+                j++;
+            } else {
+                if (open == 0 && opens[i] > gapStart) {
+                    slots.add(new TimeSlot(gapStart == lower ? from : time(gapStart), time(opens[i])));
+                }
+                open++;
+                i++;
+            }
+        }
+        if (n > 0) {
+            gapStart = closes[n - 1];
+        }
+        if (gapStart < upper) {
+            slots.add(new TimeSlot(gapStart == lower ? from : time(gapStart), to));
+        }
+        return slots;
+    }
+
+    /**
+     * Citas con el estado dado y start en [from, to), sin crear ninguna.
+     */
+    public int count(AppointmentStatus status, LocalDateTime from, LocalDateTime to) {
+        byte wanted = (byte) status.ordinal();
+        long lower = ceil(from);
+        long upper = ceil(to);
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            count += (statuses[row] == wanted & starts[row] >= lower & starts[row] < upper) ? 1 : 0;
+        }
+        return count;
+    }
+
+    private static int[] add(int[] matches, int count, int row) {
+        if (count == matches.length) {
+            matches = Arrays.copyOf(matches, count * 2);
+        }
+        matches[count] = row;
+        return matches;
+    }
+
+    /**
+     * Tabla hash de id a fila con direccionamiento abierto, sin Integer.
+     */
+    private static final class RowIndex {
+
+        private int[] keys = new int[32];
+        private int[] values = new int[32];
+        private boolean[] used = new boolean[32];
+        private int size;
+
+        int get(int key) {
+            int mask = keys.length - 1;
+            for (int slot = mix(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return NONE;
+        }
+
+        void put(int key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] = value;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldUsed[slot]) {
+                    put(oldKeys[slot], oldValues[slot]);
+                }
+            }
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
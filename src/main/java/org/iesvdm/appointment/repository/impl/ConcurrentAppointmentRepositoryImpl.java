@@ -0,0 +1,417 @@
+package org.iesvdm.appointment.repository.impl;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.TimeSlot;
+import org.iesvdm.appointment.repository.AppointmentCursor;
+import org.iesvdm.appointment.repository.AppointmentRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Versión para varios hilos del repositorio indexado. Los índices son
+ * ConcurrentHashMap y ConcurrentSkipListMap, así que las lecturas no
+ * bloquean; los save de una misma cita se serializan con un cerrojo de su
+ * franja (id módulo el número de franjas) y los de citas distintas van en
+ * paralelo.
+ *
+ * Cada entrada de un índice apunta a la foto de la cita que la creó, y una
+ * búsqueda sólo devuelve la cita si esa foto sigue siendo la vigente; si
+ * algún save se ha solapado con la búsqueda, además se quitan las citas
+ * repetidas. Así una búsqueda concurrente nunca devuelve una cita duplicada ni con
+ * valores mezclados de antes y después, aunque puede no devolver la cita que
+ * se está guardando en ese momento (como los iteradores de las colecciones
+ * concurrentes). Las citas que no cambian aparecen siempre. Como en
+ * IndexedAppointmentRepositoryImpl, lo que cuenta son los valores de la cita
+ * en su último save.
+ *
+ * Los solapamientos se buscan en el índice por start desde from menos la
+ * duración máxima de las citas que ocupan su franja, en lugar de con un
+ * árbol de intervalos, que no admite lecturas sin cerrojo. Las duraciones se
+ * cuentan en un histograma que baja al cambiar o cancelar citas, así que una
+ * cita larga deja de alargar las búsquedas cuando ya no está.
+ */
+public final class ConcurrentAppointmentRepositoryImpl implements AppointmentRepository {
+
+    public static final int DEFAULT_STRIPES = 64;
+
+    private final ReentrantLock[] stripes;
+    private final ConcurrentMap<Integer, Snapshot> byId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, ConcurrentSkipListMap<TimeKey, Snapshot>> byCustomer = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, ConcurrentMap<Integer, Snapshot>> byCanceler = new ConcurrentHashMap<>();
+    private final Map<AppointmentStatus, ConcurrentSkipListMap<TimeKey, Snapshot>> byStatusAndStart =
+            new EnumMap<>(AppointmentStatus.class);
+    private final Map<AppointmentStatus, ConcurrentSkipListMap<TimeKey, Snapshot>> byStatusAndEnd =
+            new EnumMap<>(AppointmentStatus.class);
+    private final ConcurrentSkipListMap<TimeKey, Snapshot> occupied = new ConcurrentSkipListMap<>();
+    /**
+     * Cuántas citas que ocupan su franja hay con cada duración, en
+     * nanosegundos.
+     */
+    private final ConcurrentSkipListMap<Long, Integer> durations = new ConcurrentSkipListMap<>();
+    private final AtomicLong startedSaves = new AtomicLong();
+    private final AtomicLong finishedSaves = new AtomicLong();
+
+    public ConcurrentAppointmentRepositoryImpl() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public ConcurrentAppointmentRepositoryImpl(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Stripes must be at least 1: " + stripes);
+        }
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        for (AppointmentStatus status : AppointmentStatus.values()) {
+            byStatusAndStart.put(status, new ConcurrentSkipListMap<>());
+            byStatusAndEnd.put(status, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    public ConcurrentAppointmentRepositoryImpl(Collection<Appointment> appointments) {
+        this();
+        appointments.forEach(this::save);
+    }
+
+    @Override
+    public Appointment getOne(int appointmentId) {
+        Snapshot snapshot = byId.get(appointmentId);
+        return snapshot == null ? null : snapshot.appointment();
+    }
+
+    @Override
+    public void save(Appointment appointment) {
+        Integer id = appointment.getId();
+        if (id == null) {
+            throw new IllegalArgumentException("Appointment id is required");
+        }
+        ReentrantLock lock = stripeOf(id);
+        lock.lock();
+        startedSaves.incrementAndGet();
+        try {
+            Snapshot snapshot = Snapshot.of(appointment);
+            index(snapshot);
+            Snapshot previous = byId.put(id, snapshot);
+            if (previous != null) {
+                unindex(previous);
+            }
+        } finally {
+            finishedSaves.incrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    ReentrantLock stripeOf(int appointmentId) {
+        return stripes[Math.floorMod(appointmentId, stripes.length)];
+    }
+
+    @Override
+    public List<Appointment> findCanceledByUser(int userId) {
+        ConcurrentMap<Integer, Snapshot> canceled = byCanceler.get(userId);
+        if (canceled == null) {
+            return new ArrayList<>();
+        }
+        return appointments(current(canceled.values(), snapshot -> snapshot.status() == AppointmentStatus.CANCELED));
+    }
+
+    @Override
+    public List<Appointment> findByCustomerIdWithStartInPeroid(int customerId, LocalDateTime startPeroid, LocalDateTime endPeroid) {
+        ConcurrentSkipListMap<TimeKey, Snapshot> byStart = byCustomer.get(customerId);
+        if (byStart == null || !startPeroid.isBefore(endPeroid)) {
+            return new ArrayList<>();
+        }
+        return appointments(current(byStart.subMap(TimeKey.after(startPeroid), false, TimeKey.before(endPeroid), false).values(),
+                snapshot -> snapshot.end() != null && snapshot.end().isBefore(endPeroid)));
+    }
+
+    @Override
+    public List<Appointment> findScheduledWithEndBeforeDate(LocalDateTime now) {
+        return appointments(current(byStatusAndEnd.get(AppointmentStatus.SCHEDULED).headMap(TimeKey.before(now), false).values(),
+                snapshot -> true));
+    }
+
+    @Override
+    public List<Appointment> getEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId) {
+        return appointments(current(byStatusAndStart.get(AppointmentStatus.SCHEDULED).tailMap(TimeKey.after(start), false).values(),
+                snapshot -> !Objects.equals(snapshot.customerId(), customerId)));
+    }
+
+    /**
+     * Como el stream, pero sin repetidas: la página es pequeña y se
+     * recuerdan sus ids.
+     */
+    @Override
+    public List<Appointment> getEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId,
+                                                                AppointmentCursor after, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1: " + limit);
+        }
+        Set<Integer> seen = new HashSet<>();
+        return streamEligibleAppointmentsForExchange(start, customerId, after)
+                .filter(appointment -> seen.add(appointment.getId()))
+                .limit(limit)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    @Override
+    public Stream<Appointment> streamEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId,
+                                                                     AppointmentCursor after) {
+        return stream(byStatusAndStart.get(AppointmentStatus.SCHEDULED), TimeKey.max(TimeKey.after(start), TimeKey.of(after)), null)
+                .filter(snapshot -> !Objects.equals(snapshot.customerId(), customerId))
+                .map(Snapshot::appointment);
+    }
+
+    @Override
+    public Stream<Appointment> streamScheduledWithEndBeforeDate(LocalDateTime now, AppointmentCursor after) {
+        return stream(byStatusAndEnd.get(AppointmentStatus.SCHEDULED), TimeKey.of(after), TimeKey.before(now))
+                .map(Snapshot::appointment);
+    }
+
+    @Override
+    public Stream<Appointment> streamExchangeRequestedWithStartBefore(LocalDateTime date, AppointmentCursor after) {
+        return stream(byStatusAndStart.get(AppointmentStatus.EXCHANGE_REQUESTED), TimeKey.of(after), TimeKey.before(date))
+                .map(Snapshot::appointment);
+    }
+
+    /**
+     * Fotos vigentes del índice entre from y to (excluidos; null es sin
+     * límite), leídas según se consumen. A diferencia de las listas no se
+     * quitan repetidas, porque habría que recordar todas las vistas: una cita
+     * que se vuelve a guardar con una fecha posterior mientras se recorre
+     * puede salir dos veces.
+     */
+    private Stream<Snapshot> stream(ConcurrentSkipListMap<TimeKey, Snapshot> index, TimeKey from, TimeKey to) {
+        NavigableMap<TimeKey, Snapshot> range;
+        if (from == null) {
+            range = to == null ? index : index.headMap(to, false);
+        } else if (to == null) {
+            range = index.tailMap(from, false);
+        } else if (from.compareTo(to) >= 0) {
+            return Stream.empty();
+        } else {
+            range = index.subMap(from, false, to, false);
+        }
+        return range.values().stream().filter(this::isCurrent);
+    }
+
+    @Override
+    public List<Appointment> findExchangeRequestedWithStartBefore(LocalDateTime date) {
+        return appointments(current(byStatusAndStart.get(AppointmentStatus.EXCHANGE_REQUESTED).headMap(TimeKey.before(date), false).values(),
+                snapshot -> true));
+    }
+
+    @Override
+    public List<Appointment> findOverlapping(LocalDateTime from, LocalDateTime to) {
+        return appointments(overlapping(occupied, from, to));
+    }
+
+    @Override
+    public List<Appointment> findByCustomerIdOverlapping(int customerId, LocalDateTime from, LocalDateTime to) {
+        ConcurrentSkipListMap<TimeKey, Snapshot> byStart = byCustomer.get(customerId);
+        return byStart == null ? new ArrayList<>() : appointments(overlapping(byStart, from, to));
+    }
+
+    @Override
+    public List<Appointment> findAt(LocalDateTime instant) {
+        return findOverlapping(instant, instant.plusNanos(1));
+    }
+
+    @Override
+    public List<TimeSlot> findFreeSlots(LocalDateTime from, LocalDateTime to) {
+        List<TimeSlot> slots = new ArrayList<>();
+        LocalDateTime cursor = from;
+        for (Snapshot snapshot : overlapping(occupied, from, to)) {
+            if (snapshot.start().isAfter(cursor)) {
+                slots.add(new TimeSlot(cursor, snapshot.start()));
+            }
+            if (snapshot.end().isAfter(cursor)) {
+                cursor = snapshot.end();
+            }
+        }
+        if (cursor.isBefore(to)) {
+            slots.add(new TimeSlot(cursor, to));
+        }
+        return slots;
+    }
+
+    /**
+     * Fotos vigentes que solapan [from, to), por orden de start.
+     */
+    private List<Snapshot> overlapping(ConcurrentSkipListMap<TimeKey, Snapshot> byStart, LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            return new ArrayList<>();
+        }
+        Map.Entry<Long, Integer> longest = durations.lastEntry();
+        LocalDateTime earliest = from.minus(Duration.ofNanos(longest == null ? 0 : longest.getKey()));
+        return current(byStart.subMap(TimeKey.before(earliest), true, TimeKey.before(to), false).values(),
+                snapshot -> snapshot.occupies() && snapshot.end().isAfter(from));
+    }
+
+    /**
+     * Fotos vigentes que cumplen el filtro. Si algún save se ha solapado con
+     * el recorrido, una cita puede haberse visto con su foto vieja y con la
+     * nueva, y se deja sólo la primera.
+     */
+    private List<Snapshot> current(Iterable<Snapshot> snapshots, Predicate<Snapshot> filter) {
+        long finished = finishedSaves.get();
+        long started = startedSaves.get();
+        List<Snapshot> result = new ArrayList<>();
+        for (Snapshot snapshot : snapshots) {
+            if (isCurrent(snapshot) && filter.test(snapshot)) {
+                result.add(snapshot);
+            }
+        }
+        if (finished != started || startedSaves.get() != started) {
+            Set<Integer> seen = new HashSet<>();
+            result.removeIf(snapshot -> !seen.add(snapshot.id()));
+        }
+        return result;
+    }
+
+    private static List<Appointment> appointments(List<Snapshot> snapshots) {
+        List<Appointment> result = new ArrayList<>(snapshots.size());
+        for (Snapshot snapshot : snapshots) {
+            result.add(snapshot.appointment());
+        }
+        return result;
+    }
+
+    private boolean isCurrent(Snapshot snapshot) {
+        return byId.get(snapshot.id()) == snapshot;
+    }
+
+    private void index(Snapshot snapshot) {
+        int id = snapshot.id();
+        if (snapshot.customerId() != null && snapshot.start() != null) {
+            byCustomer.computeIfAbsent(snapshot.customerId(), c -> new ConcurrentSkipListMap<>())
+                    .put(new TimeKey(snapshot.start(), id), snapshot);
+        }
+        if (snapshot.cancelerId() != null) {
+            byCanceler.computeIfAbsent(snapshot.cancelerId(), c -> new ConcurrentHashMap<>()).put(id, snapshot);
+        }
+        if (snapshot.status() != null) {
+            if (snapshot.start() != null) {
+                byStatusAndStart.get(snapshot.status()).put(new TimeKey(snapshot.start(), id), snapshot);
+            }
+            if (snapshot.end() != null) {
+                byStatusAndEnd.get(snapshot.status()).put(new TimeKey(snapshot.end(), id), snapshot);
+            }
+        }
+        if (snapshot.occupies()) {
+            durations.merge(snapshot.durationNanos(), 1, Integer::sum);
+            occupied.put(new TimeKey(snapshot.start(), id), snapshot);
+        }
+    }
+
+    /**
+     * Quita las entradas de la foto anterior, salvo las que la nueva ya ha
+     * sustituido con la misma clave.
+     */
+    private void unindex(Snapshot snapshot) {
+        int id = snapshot.id();
+        if (snapshot.customerId() != null && snapshot.start() != null) {
+            ConcurrentSkipListMap<TimeKey, Snapshot> byStart = byCustomer.get(snapshot.customerId());
+            byStart.remove(new TimeKey(snapshot.start(), id), snapshot);
+        }
+        if (snapshot.cancelerId() != null) {
+            byCanceler.get(snapshot.cancelerId()).remove(id, snapshot);
+        }
+        if (snapshot.status() != null) {
+            if (snapshot.start() != null) {
+                byStatusAndStart.get(snapshot.status()).remove(new TimeKey(snapshot.start(), id), snapshot);
+            }
+            if (snapshot.end() != null) {
+                byStatusAndEnd.get(snapshot.status()).remove(new TimeKey(snapshot.end(), id), snapshot);
+            }
+        }
+        if (snapshot.occupies()) {
+            occupied.remove(new TimeKey(snapshot.start(), id), snapshot);
+            durations.computeIfPresent(snapshot.durationNanos(), (duration, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    /**
+     * Clave de los índices ordenados: el instante y el id para desempatar.
+     */
+    private record TimeKey(LocalDateTime time, int id) implements Comparable<TimeKey> {
+
+        static TimeKey before(LocalDateTime time) {
+            return new TimeKey(time, Integer.MIN_VALUE);
+        }
+
+        static TimeKey after(LocalDateTime time) {
+            return new TimeKey(time, Integer.MAX_VALUE);
+        }
+
+        static TimeKey of(AppointmentCursor cursor) {
+            return cursor == null ? null : new TimeKey(cursor.time(), cursor.id());
+        }
+
+        static TimeKey max(TimeKey a, TimeKey b) {
+            return b == null || a.compareTo(b) >= 0 ? a : b;
+        }
+
+        @Override
+        public int compareTo(TimeKey other) {
+            int cmp = time.compareTo(other.time);
+            return cmp != 0 ? cmp : Integer.compare(id, other.id);
+        }
+    }
+
+    private record Snapshot(Appointment appointment, int id, Integer customerId, Integer cancelerId,
+                            AppointmentStatus status, LocalDateTime start, LocalDateTime end) {
+
+        static Snapshot of(Appointment appointment) {
+            return new Snapshot(appointment, appointment.getId(),
+                    appointment.getCustomer() == null ? null : appointment.getCustomer().getId(),
+                    appointment.getCanceler() == null ? null : appointment.getCanceler().getId(),
+                    appointment.getStatus(), appointment.getStart(), appointment.getEnd());
+        }
+
+        boolean occupies() {
+            return status != AppointmentStatus.CANCELED && start != null && end != null;
+        }
+
+        long durationNanos() {
+            return Duration.between(start, end).toNanos();
+        }
+
+        /**
+         * Identidad, no igualdad: el record compararía por valores y dos save
+         * seguidos con los mismos datos no se distinguirían.
+         */
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+}
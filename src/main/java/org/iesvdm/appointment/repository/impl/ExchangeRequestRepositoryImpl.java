@@ -0,0 +1,37 @@
+package org.iesvdm.appointment.repository.impl;
+
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.repository.ExchangeRequestRepository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Repositorio en memoria de peticiones de intercambio, seguro para varios
+ * hilos. Las peticiones sin id reciben uno nuevo al guardarse.
+ */
+public class ExchangeRequestRepositoryImpl implements ExchangeRequestRepository {
+
+    private final Map<Integer, ExchangeRequest> exchangeRequests = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+
+    @Override
+    public ExchangeRequest getOne(int exchangeRequestId) {
+        return exchangeRequests.get(exchangeRequestId);
+    }
+
+    @Override
+    public void save(ExchangeRequest exchangeRequest) {
+        if (exchangeRequest.getId() == null) {
+            exchangeRequest.setId(nextId.getAndIncrement());
+        } else {
+            nextId.accumulateAndGet(exchangeRequest.getId() + 1, Math::max);
+        }
+        exchangeRequests.put(exchangeRequest.getId(), exchangeRequest);
+    }
+
+    public int size() {
+        return exchangeRequests.size();
+    }
+}
@@ -0,0 +1,659 @@
+package org.iesvdm.appointment.repository.impl;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.entity.TimeSlot;
+import org.iesvdm.appointment.entity.User;
+import org.iesvdm.appointment.repository.AppointmentCursor;
+import org.iesvdm.appointment.repository.AppointmentRepository;
+import org.iesvdm.appointment.repository.ExchangeRequestRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Citas y peticiones de intercambio guardadas en un directorio, con un log
+ * de solo añadir (wal-N.log) e instantáneas (snapshot-N.bin).
+ *
+ * Cada save escribe el estado completo de la entidad al final del log (una
+ * cita va detrás de los registros de su cliente y su cancelador, sin
+ * contraseña), la
+ * aplica a los índices en memoria (ConcurrentAppointmentRepositoryImpl) en
+ * el mismo orden que en el log, y vuelve cuando el log está en disco. Los
+ * saves que llegan mientras otro hace force esperan y se escriben juntos con
+ * un solo force (group commit).
+ *
+ * Cuando el log pasa de compactBytes se empieza uno nuevo (N+1) y se escribe
+ * snapshot-(N+1) con todo lo que hay en memoria, sin parar las escrituras: lo
+ * que cambie mientras tanto también está en wal-(N+1) y, como cada registro
+ * es el estado completo, volver a aplicarlo deja el mismo resultado. Después
+ * se borran los ficheros anteriores.
+ *
+ * Al abrir se lee la última instantánea y los logs desde ella; un registro a
+ * medio escribir al final del último log (una caída durante un write) se
+ * descarta y se trunca.
+ *
+ * Si falla un write o un force del log, la memoria ya tiene cambios que
+ * quizá no están en disco: el almacén queda roto, y ese save y todos los
+ * siguientes lanzan excepción. Al volver a abrirlo se recupera lo que sí
+ * llegó al log.
+ */
+public class FileAppointmentStore implements AutoCloseable {
+
+    public static final long DEFAULT_COMPACT_BYTES = 64L << 20;
+
+    private static final Pattern WAL = Pattern.compile("wal-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d+)\\.bin");
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+
+    private final Path directory;
+    private final boolean fsync;
+    private final long compactBytes;
+
+    private final ConcurrentAppointmentRepositoryImpl index;
+    private final Map<Integer, Appointment> appointments = new ConcurrentHashMap<>();
+    private final Map<Integer, ExchangeRequest> exchangeRequests = new ConcurrentHashMap<>();
+    private final AtomicInteger nextExchangeRequestId = new AtomicInteger(1);
+    private final AppointmentRepository appointmentRepository = new Appointments();
+    private final ExchangeRequestRepository exchangeRequestRepository = new ExchangeRequests();
+
+    /**
+     * Protege el buffer pendiente y el orden log/memoria.
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+    /**
+     * Solo un hilo escribe en el canal a la vez; se coge antes que appendLock.
+     */
+    private final Object flushLock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(64 << 10);
+    private ByteBuffer writing = ByteBuffer.allocate(64 << 10);
+    private long appended;
+    private volatile long durable;
+    private FileChannel log;
+    private long generation;
+    private volatile long logBytes;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder forces = new LongAdder();
+    private long recoveredRecords;
+    private long recoveryNanos;
+
+    private FileAppointmentStore(Path directory, boolean fsync, long compactBytes) {
+        this.directory = directory;
+        this.fsync = fsync;
+        this.compactBytes = compactBytes;
+        this.index = new ConcurrentAppointmentRepositoryImpl();
+    }
+
+    public static FileAppointmentStore open(Path directory) {
+        return open(directory, true, DEFAULT_COMPACT_BYTES);
+    }
+
+    /**
+     * @param fsync        si cada commit espera a que el log llegue al disco
+     *                     (FileChannel.force); sin él, una caída del sistema
+     *                     puede perder los últimos registros.
+     * @param compactBytes tamaño del log a partir del cual se hace una
+     *                     instantánea; 0 para no hacerlas solas.
+     */
+    public static FileAppointmentStore open(Path directory, boolean fsync, long compactBytes) {
+        FileAppointmentStore store = new FileAppointmentStore(directory, fsync, compactBytes);
+        try {
+            Files.createDirectories(directory);
+            store.recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open store at " + directory, e);
+        }
+        return store;
+    }
+
+    public AppointmentRepository getAppointmentRepository() {
+        return appointmentRepository;
+    }
+
+    public ExchangeRequestRepository getExchangeRequestRepository() {
+        return exchangeRequestRepository;
+    }
+
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        TreeMap<Long, Path> wals = list(WAL);
+        TreeMap<Long, Path> snapshots = list(SNAPSHOT);
+
+        WalCodec.State state = new WalCodec.State();
+        long from = 0;
+        for (Map.Entry<Long, Path> snapshot : snapshots.descendingMap().entrySet()) {
+            WalCodec.State candidate = new WalCodec.State();
+            if (readSnapshot(snapshot.getValue(), candidate)) {
+                state = candidate;
+                from = snapshot.getKey();
+                break;
+            }
+        }
+        long last = from;
+        for (Map.Entry<Long, Path> wal : wals.tailMap(from, true).entrySet()) {
+            try (FileChannel channel = FileChannel.open(wal.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long valid = read(channel, state, false);
+                if (valid < channel.size()) {
+                    channel.truncate(valid);
+                }
+            }
+            last = wal.getKey();
+        }
+        state.link();
+
+        state.appointments.values().forEach(index::save);
+        appointments.putAll(state.appointments);
+        exchangeRequests.putAll(state.exchangeRequests);
+        for (Integer id : state.exchangeRequests.keySet()) {
+            nextExchangeRequestId.accumulateAndGet(id + 1, Math::max);
+        }
+        recoveredRecords = state.records;
+
+        generation = Math.max(last, 1);
+        Path path = directory.resolve(walName(generation));
+        log = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        logBytes = log.size();
+        recoveryNanos = System.nanoTime() - start;
+    }
+
+    private TreeMap<Long, Path> list(Pattern pattern) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (var stream = Files.list(directory)) {
+            stream.forEach(path -> {
+                Matcher matcher = pattern.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    files.put(Long.parseLong(matcher.group(1)), path);
+                }
+            });
+        }
+        return files;
+    }
+
+    /**
+     * Clientes y canceladores de las citas, una vez cada uno. Se escriben
+     * antes que las citas, que sólo guardan su id.
+     */
+    private static Map<Integer, User> usersOf(Collection<Appointment> appointments) {
+        Map<Integer, User> users = new LinkedHashMap<>();
+        for (Appointment appointment : appointments) {
+            for (User user : new User[]{appointment.getCustomer(), appointment.getCanceler()}) {
+                if (user != null && user.getId() != null) {
+                    users.put(user.getId(), user);
+                }
+            }
+        }
+        return users;
+    }
+
+    private static String walName(long generation) {
+        return "wal-" + generation + ".log";
+    }
+
+    private static String snapshotName(long generation) {
+        return "snapshot-" + generation + ".bin";
+    }
+
+    private static boolean readSnapshot(Path path, WalCodec.State state) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel, state, true) >= 0;
+        }
+    }
+
+    /**
+     * Lee registros desde el principio hasta el final o hasta el primero
+     * roto.
+     *
+     * @return dónde acaba el último registro bueno; en una instantánea, -1
+     * si no termina en un registro de fin con la cuenta correcta.
+     */
+    private static long read(FileChannel channel, WalCodec.State state, boolean snapshot) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        long valid = 0;
+        long records = 0;
+        boolean eof = false;
+        while (!eof) {
+            eof = channel.read(buffer) < 0;
+            buffer.flip();
+            while (buffer.remaining() >= WalCodec.HEADER_BYTES) {
+                int length = buffer.getInt(buffer.position());
+                int crc = buffer.getInt(buffer.position() + 4);
+                if (length <= 0 || length > WalCodec.MAX_RECORD_BYTES) {
+                    return snapshot ? -1 : valid;
+                }
+                if (buffer.remaining() < WalCodec.HEADER_BYTES + length) {
+                    if (WalCodec.HEADER_BYTES + length > buffer.capacity()) {
+                        buffer = ByteBuffer.allocate(WalCodec.HEADER_BYTES + length).put(buffer).flip();
+                    }
+                    break;
+                }
+                ByteBuffer payload = buffer.slice(buffer.position() + WalCodec.HEADER_BYTES, length);
+                if (!WalCodec.verify(payload, crc)) {
+                    return snapshot ? -1 : valid;
+                }
+                long end = state.apply(payload);
+                if (end >= 0) {
+                    return snapshot && end == records ? valid : -1;
+                }
+                records++;
+                buffer.position(buffer.position() + WalCodec.HEADER_BYTES + length);
+                valid += WalCodec.HEADER_BYTES + length;
+            }
+            buffer.compact();
+        }
+        return snapshot ? -1 : valid;
+    }
+
+    private void write(List<byte[]> records, Runnable apply) {
+        long sequence;
+        appendLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Store is closed");
+            }
+            checkFailure();
+            for (byte[] record : records) {
+                if (pending.remaining() < record.length) {
+                    pending = grow(pending, record.length);
+                }
+                pending.put(record);
+            }
+            apply.run();
+            sequence = ++appended;
+        } finally {
+            appendLock.unlock();
+        }
+        commit(sequence);
+        if (compactBytes > 0 && logBytes > compactBytes && snapshotting.compareAndSet(false, true)) {
+            try {
+                writeSnapshot();
+            } finally {
+                snapshotting.set(false);
+            }
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        return bigger.put(buffer.flip());
+    }
+
+    /**
+     * Espera a que el registro sequence esté en el log. El primero que llega
+     * escribe todo lo pendiente, también lo de los que llegan detrás.
+     */
+    private void commit(long sequence) {
+        if (durable >= sequence) {
+            return;
+        }
+        synchronized (flushLock) {
+            if (durable >= sequence) {
+                return;
+            }
+            flush();
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("Store failed writing log " + walName(generation), failure);
+        }
+    }
+
+    /**
+     * Con flushLock cogido. Si falla, lo que había pendiente no se sabe si
+     * llegó al disco y el almacén queda roto (failure).
+     */
+    private void flush() {
+        checkFailure();
+        long upTo;
+        appendLock.lock();
+        try {
+            ByteBuffer full = pending;
+            pending = writing.clear();
+            writing = full;
+            upTo = appended;
+        } finally {
+            appendLock.unlock();
+        }
+        try {
+            writing.flip();
+            while (writing.hasRemaining()) {
+                logBytes += log.write(writing);
+            }
+            if (fsync) {
+                log.force(false);
+                forces.increment();
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException("Cannot write log " + walName(generation), e);
+        }
+        commits.increment();
+        durable = upTo;
+    }
+
+    /**
+     * Empieza un log nuevo y escribe una instantánea de todo lo que hay en
+     * memoria; luego borra los ficheros que ya no hacen falta.
+     */
+    public void snapshot() {
+        while (!snapshotting.compareAndSet(false, true)) {
+            Thread.onSpinWait();
+        }
+        try {
+            writeSnapshot();
+        } finally {
+            snapshotting.set(false);
+        }
+    }
+
+    private void writeSnapshot() {
+        long snapshotGeneration;
+        synchronized (flushLock) {
+            flush();
+            appendLock.lock();
+            try {
+                log.close();
+                generation++;
+                log = FileChannel.open(directory.resolve(walName(generation)), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                logBytes = 0;
+                snapshotGeneration = generation;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot start log " + walName(generation), e);
+            } finally {
+                appendLock.unlock();
+            }
+        }
+
+        Path target = directory.resolve(snapshotName(snapshotGeneration));
+        Path temporary = directory.resolve(snapshotName(snapshotGeneration) + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            long records = 0;
+            for (User user : usersOf(appointments.values()).values()) {
+                buffer = put(channel, buffer, WalCodec.encode(user));
+                records++;
+            }
+            for (Appointment appointment : appointments.values()) {
+                buffer = put(channel, buffer, WalCodec.encode(appointment));
+                records++;
+            }
+            for (ExchangeRequest exchangeRequest : exchangeRequests.values()) {
+                buffer = put(channel, buffer, WalCodec.encode(exchangeRequest));
+                records++;
+            }
+            buffer = put(channel, buffer, WalCodec.encodeEnd(records));
+            drain(channel, buffer);
+            channel.force(true);
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory();
+            for (Path old : list(WAL).headMap(snapshotGeneration).values()) {
+                Files.deleteIfExists(old);
+            }
+            for (Path old : list(SNAPSHOT).headMap(snapshotGeneration).values()) {
+                Files.deleteIfExists(old);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write snapshot " + target, e);
+        }
+    }
+
+    /**
+     * Lleva al disco las entradas del directorio (el log nuevo y la
+     * instantánea ya renombrada) antes de borrar los ficheros viejos; si no,
+     * una caída podría dejar el directorio sin ninguno de los dos. Donde no se
+     * puede abrir un directorio (Windows) no se hace.
+     */
+    private void syncDirectory() throws IOException {
+        if (!fsync) {
+            return;
+        }
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    private static ByteBuffer put(FileChannel channel, ByteBuffer buffer, byte[] record) throws IOException {
+        if (buffer.remaining() < record.length) {
+            drain(channel, buffer);
+            if (buffer.capacity() < record.length) {
+                buffer = ByteBuffer.allocate(record.length);
+            }
+        }
+        return buffer.put(record);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() {
+        synchronized (flushLock) {
+            if (closed) {
+                return;
+            }
+            if (failure == null) {
+                flush();
+            }
+            appendLock.lock();
+            try {
+                closed = true;
+                log.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot close log " + walName(generation), e);
+            } finally {
+                appendLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Veces que se ha escrito en el log; con varios hilos, cada una puede
+     * llevar los registros de muchos saves.
+     */
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    public long getForces() {
+        return forces.sum();
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Registros leídos al abrir, de la instantánea y de los logs.
+     */
+    public long getRecoveredRecords() {
+        return recoveredRecords;
+    }
+
+    public long getRecoveryNanos() {
+        return recoveryNanos;
+    }
+
+    public int size() {
+        return appointments.size();
+    }
+
+    private class Appointments implements AppointmentRepository {
+
+        @Override
+        public Appointment getOne(int appointmentId) {
+            return index.getOne(appointmentId);
+        }
+
+        @Override
+        public void save(Appointment appointment) {
+            saveAll(List.of(appointment));
+        }
+
+        @Override
+        public Map<Integer, Appointment> findAllById(Collection<Integer> appointmentIds) {
+            return index.findAllById(appointmentIds);
+        }
+
+        @Override
+        public void saveAll(Collection<Appointment> toSave) {
+            List<byte[]> records = new ArrayList<>(toSave.size());
+            for (Appointment appointment : toSave) {
+                if (appointment.getId() == null) {
+                    throw new IllegalArgumentException("Appointment id is required");
+                }
+            }
+            for (User user : usersOf(toSave).values()) {
+                records.add(WalCodec.encode(user));
+            }
+            for (Appointment appointment : toSave) {
+                records.add(WalCodec.encode(appointment));
+            }
+            write(records, () -> {
+                for (Appointment appointment : toSave) {
+                    index.save(appointment);
+                    appointments.put(appointment.getId(), appointment);
+                }
+            });
+        }
+
+        @Override
+        public List<Appointment> findCanceledByUser(int userId) {
+            return index.findCanceledByUser(userId);
+        }
+
+        @Override
+        public List<Appointment> findByCustomerIdWithStartInPeroid(int customerId, LocalDateTime startPeroid, LocalDateTime endPeroid) {
+            return index.findByCustomerIdWithStartInPeroid(customerId, startPeroid, endPeroid);
+        }
+
+        @Override
+        public List<Appointment> findScheduledWithEndBeforeDate(LocalDateTime now) {
+            return index.findScheduledWithEndBeforeDate(now);
+        }
+
+        @Override
+        public List<Appointment> getEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId) {
+            return index.getEligibleAppointmentsForExchange(start, customerId);
+        }
+
+        @Override
+        public List<Appointment> getEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId,
+                                                                    AppointmentCursor after, int limit) {
+            return index.getEligibleAppointmentsForExchange(start, customerId, after, limit);
+        }
+
+        @Override
+        public Stream<Appointment> streamEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId,
+                                                                         AppointmentCursor after) {
+            return index.streamEligibleAppointmentsForExchange(start, customerId, after);
+        }
+
+        @Override
+        public Stream<Appointment> streamScheduledWithEndBeforeDate(LocalDateTime now, AppointmentCursor after) {
+            return index.streamScheduledWithEndBeforeDate(now, after);
+        }
+
+        @Override
+        public Stream<Appointment> streamExchangeRequestedWithStartBefore(LocalDateTime date, AppointmentCursor after) {
+            return index.streamExchangeRequestedWithStartBefore(date, after);
+        }
+
+        @Override
+        public List<Appointment> findExchangeRequestedWithStartBefore(LocalDateTime date) {
+            return index.findExchangeRequestedWithStartBefore(date);
+        }
+
+        @Override
+        public List<Appointment> findOverlapping(LocalDateTime from, LocalDateTime to) {
+            return index.findOverlapping(from, to);
+        }
+
+        @Override
+        public List<Appointment> findByCustomerIdOverlapping(int customerId, LocalDateTime from, LocalDateTime to) {
+            return index.findByCustomerIdOverlapping(customerId, from, to);
+        }
+
+        @Override
+        public List<Appointment> findAt(LocalDateTime instant) {
+            return index.findAt(instant);
+        }
+
+        @Override
+        public List<TimeSlot> findFreeSlots(LocalDateTime from, LocalDateTime to) {
+            return index.findFreeSlots(from, to);
+        }
+    }
+
+    private class ExchangeRequests implements ExchangeRequestRepository {
+
+        @Override
+        public ExchangeRequest getOne(int exchangeRequestId) {
+            return exchangeRequests.get(exchangeRequestId);
+        }
+
+        @Override
+        public void save(ExchangeRequest exchangeRequest) {
+            saveAll(List.of(exchangeRequest));
+        }
+
+        /**
+         * Las peticiones sin id reciben uno nuevo antes de escribirse.
+         */
+        @Override
+        public void saveAll(Collection<ExchangeRequest> toSave) {
+            List<byte[]> records = new ArrayList<>(toSave.size());
+            for (ExchangeRequest exchangeRequest : toSave) {
+                if (exchangeRequest.getId() == null) {
+                    exchangeRequest.setId(nextExchangeRequestId.getAndIncrement());
+                } else {
+                    nextExchangeRequestId.accumulateAndGet(exchangeRequest.getId() + 1, Math::max);
+                }
+                records.add(WalCodec.encode(exchangeRequest));
+            }
+            write(records, () -> {
+                for (ExchangeRequest exchangeRequest : toSave) {
+                    exchangeRequests.put(exchangeRequest.getId(), exchangeRequest);
+                }
+            });
+        }
+    }
+}
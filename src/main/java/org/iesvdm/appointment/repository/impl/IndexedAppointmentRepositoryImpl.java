@@ -0,0 +1,312 @@
+package org.iesvdm.appointment.repository.impl;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.TimeSlot;
+import org.iesvdm.appointment.repository.AppointmentCursor;
+import org.iesvdm.appointment.repository.AppointmentRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Repositorio en memoria con índices: por id, por cliente (ordenado por
+ * start), por cancelador y por estado (ordenado por start y por end), de modo
+ * que las búsquedas por periodo o por fecha son consultas de rango en lugar
+ * de recorrer todas las citas; a igual fecha, por id, para poder seguir un
+ * recorrido desde un AppointmentCursor. Las citas no canceladas están además en
+ * árboles de intervalos (uno global y uno por cliente) para las consultas de
+ * solapamiento y huecos libres. Las citas programadas están también
+ * ordenadas por (start, id) para sacar por páginas las candidatas a un
+ * intercambio.
+ *
+ * Las citas se guardan por referencia y se modifican fuera del repositorio,
+ * así que cada save reindexa la cita con los valores que tenga en ese momento:
+ * los cambios hechos sin llamar a save no se ven en las búsquedas. Se asume
+ * start <= end. No es seguro para varios hilos.
+ */
+public final class IndexedAppointmentRepositoryImpl implements AppointmentRepository {
+
+    private final Map<Integer, IndexedAppointment> byId = new HashMap<>();
+    private final Map<Integer, NavigableMap<LocalDateTime, NavigableMap<Integer, Appointment>>> byCustomer = new HashMap<>();
+    private final Map<Integer, Map<Integer, Appointment>> byCanceler = new HashMap<>();
+    private final Map<AppointmentStatus, NavigableMap<LocalDateTime, NavigableMap<Integer, Appointment>>> byStatusAndStart =
+            new EnumMap<>(AppointmentStatus.class);
+    private final Map<AppointmentStatus, NavigableMap<LocalDateTime, NavigableMap<Integer, Appointment>>> byStatusAndEnd =
+            new EnumMap<>(AppointmentStatus.class);
+    private final NavigableMap<AppointmentCursor, Appointment> exchangeable = new TreeMap<>();
+    private final IntervalTree<Appointment> occupied = new IntervalTree<>();
+    private final Map<Integer, IntervalTree<Appointment>> occupiedByCustomer = new HashMap<>();
+
+    public IndexedAppointmentRepositoryImpl() {
+    }
+
+    public IndexedAppointmentRepositoryImpl(Collection<Appointment> appointments) {
+        appointments.forEach(this::save);
+    }
+
+    @Override
+    public Appointment getOne(int appointmentId) {
+        IndexedAppointment indexed = byId.get(appointmentId);
+        return indexed == null ? null : indexed.appointment();
+    }
+
+    @Override
+    public void save(Appointment appointment) {
+        Integer id = appointment.getId();
+        if (id == null) {
+            throw new IllegalArgumentException("Appointment id is required");
+        }
+        IndexedAppointment previous = byId.get(id);
+        if (previous != null) {
+            unindex(previous);
+        }
+        IndexedAppointment indexed = IndexedAppointment.of(appointment);
+        byId.put(id, indexed);
+        index(indexed);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    @Override
+    public List<Appointment> findCanceledByUser(int userId) {
+        List<Appointment> result = new ArrayList<>();
+        for (Appointment appointment : byCanceler.getOrDefault(userId, Map.of()).values()) {
+            if (byId.get(appointment.getId()).status() == AppointmentStatus.CANCELED) {
+                result.add(appointment);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Appointment> findByCustomerIdWithStartInPeroid(int customerId, LocalDateTime startPeroid, LocalDateTime endPeroid) {
+        NavigableMap<LocalDateTime, NavigableMap<Integer, Appointment>> byStart = byCustomer.get(customerId);
+        List<Appointment> result = new ArrayList<>();
+        if (byStart == null || !startPeroid.isBefore(endPeroid)) {
+            return result;
+        }
+        for (Map<Integer, Appointment> appointments : byStart.subMap(startPeroid, false, endPeroid, false).values()) {
+            for (Appointment appointment : appointments.values()) {
+                LocalDateTime end = byId.get(appointment.getId()).end();
+                if (end != null && end.isBefore(endPeroid)) {
+                    result.add(appointment);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Appointment> findScheduledWithEndBeforeDate(LocalDateTime now) {
+        return flatten(range(byStatusAndEnd, AppointmentStatus.SCHEDULED).headMap(now, false));
+    }
+
+    @Override
+    public List<Appointment> getEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId) {
+        List<Appointment> result = new ArrayList<>();
+        for (Map<Integer, Appointment> appointments : range(byStatusAndStart, AppointmentStatus.SCHEDULED).tailMap(start, false).values()) {
+            for (Appointment appointment : appointments.values()) {
+                if (!Objects.equals(byId.get(appointment.getId()).customerId(), customerId)) {
+                    result.add(appointment);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Recorre las programadas desde el cursor: una página cuesta O(log n) más
+     * su tamaño y las citas del propio cliente que se salta por el camino.
+     */
+    @Override
+    public Stream<Appointment> streamEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId,
+                                                                     AppointmentCursor after) {
+        AppointmentCursor from = new AppointmentCursor(start, Integer.MAX_VALUE);
+        if (after != null && after.compareTo(from) > 0) {
+            from = after;
+        }
+        return lazy(exchangeable.tailMap(from, false).values())
+                .filter(appointment -> !Objects.equals(byId.get(appointment.getId()).customerId(), customerId));
+    }
+
+    @Override
+    public Stream<Appointment> streamScheduledWithEndBeforeDate(LocalDateTime now, AppointmentCursor after) {
+        return stream(range(byStatusAndEnd, AppointmentStatus.SCHEDULED).headMap(now, false), after);
+    }
+
+    @Override
+    public Stream<Appointment> streamExchangeRequestedWithStartBefore(LocalDateTime date, AppointmentCursor after) {
+        return stream(range(byStatusAndStart, AppointmentStatus.EXCHANGE_REQUESTED).headMap(date, false), after);
+    }
+
+    @Override
+    public List<Appointment> findExchangeRequestedWithStartBefore(LocalDateTime date) {
+        return flatten(range(byStatusAndStart, AppointmentStatus.EXCHANGE_REQUESTED).headMap(date, false));
+    }
+
+    @Override
+    public List<Appointment> findOverlapping(LocalDateTime from, LocalDateTime to) {
+        return occupied.overlapping(from, to);
+    }
+
+    @Override
+    public List<Appointment> findByCustomerIdOverlapping(int customerId, LocalDateTime from, LocalDateTime to) {
+        IntervalTree<Appointment> tree = occupiedByCustomer.get(customerId);
+        return tree == null ? new ArrayList<>() : tree.overlapping(from, to);
+    }
+
+    @Override
+    public List<Appointment> findAt(LocalDateTime instant) {
+        return occupied.containing(instant);
+    }
+
+    @Override
+    public List<TimeSlot> findFreeSlots(LocalDateTime from, LocalDateTime to) {
+        return occupied.gaps(from, to);
+    }
+
+    private static NavigableMap<LocalDateTime, NavigableMap<Integer, Appointment>> range(
+            Map<AppointmentStatus, NavigableMap<LocalDateTime, NavigableMap<Integer, Appointment>>> index, AppointmentStatus status) {
+        return index.getOrDefault(status, new TreeMap<>());
+    }
+
+    /**
+     * Citas del rango por fecha e id detrás del cursor, sin copiarlas. Como
+     * el resto del repositorio, no admite save mientras se recorre.
+     */
+    private static Stream<Appointment> stream(NavigableMap<LocalDateTime, NavigableMap<Integer, Appointment>> range,
+                                              AppointmentCursor after) {
+        if (after == null) {
+            return lazy(range.values()).flatMap(appointments -> appointments.values().stream());
+        }
+        return lazy(range.tailMap(after.time(), true).entrySet())
+                .flatMap(entry -> (entry.getKey().equals(after.time())
+                        ? entry.getValue().tailMap(after.id(), false) : entry.getValue()).values().stream());
+    }
+
+    /**
+     * El stream por defecto de una vista de TreeMap pide antes su tamaño, que
+     * cuesta recorrerla entera.
+     */
+    private static <T> Stream<T> lazy(Collection<T> values) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(values.iterator(), Spliterator.ORDERED), false);
+    }
+
+    private static List<Appointment> flatten(NavigableMap<LocalDateTime, NavigableMap<Integer, Appointment>> range) {
+        List<Appointment> result = new ArrayList<>();
+        for (Map<Integer, Appointment> appointments : range.values()) {
+            result.addAll(appointments.values());
+        }
+        return result;
+    }
+
+    private void index(IndexedAppointment indexed) {
+        Appointment appointment = indexed.appointment();
+        if (indexed.customerId() != null && indexed.start() != null) {
+            add(byCustomer.computeIfAbsent(indexed.customerId(), id -> new TreeMap<>()), indexed.start(), appointment);
+        }
+        if (indexed.cancelerId() != null) {
+            byCanceler.computeIfAbsent(indexed.cancelerId(), id -> new LinkedHashMap<>()).put(appointment.getId(), appointment);
+        }
+        if (indexed.status() != null) {
+            if (indexed.start() != null) {
+                add(byStatusAndStart.computeIfAbsent(indexed.status(), s -> new TreeMap<>()), indexed.start(), appointment);
+                if (indexed.status() == AppointmentStatus.SCHEDULED) {
+                    exchangeable.put(new AppointmentCursor(indexed.start(), appointment.getId()), appointment);
+                }
+            }
+            if (indexed.end() != null) {
+                add(byStatusAndEnd.computeIfAbsent(indexed.status(), s -> new TreeMap<>()), indexed.end(), appointment);
+            }
+        }
+        if (indexed.occupies()) {
+            occupied.add(indexed.start(), indexed.end(), appointment.getId(), appointment);
+            if (indexed.customerId() != null) {
+                occupiedByCustomer.computeIfAbsent(indexed.customerId(), id -> new IntervalTree<>())
+                        .add(indexed.start(), indexed.end(), appointment.getId(), appointment);
+            }
+        }
+    }
+
+    private void unindex(IndexedAppointment indexed) {
+        Integer id = indexed.appointment().getId();
+        if (indexed.customerId() != null && indexed.start() != null) {
+            remove(byCustomer.get(indexed.customerId()), indexed.start(), id);
+        }
+        if (indexed.cancelerId() != null) {
+            Map<Integer, Appointment> canceled = byCanceler.get(indexed.cancelerId());
+            canceled.remove(id);
+            if (canceled.isEmpty()) {
+                byCanceler.remove(indexed.cancelerId());
+            }
+        }
+        if (indexed.status() != null) {
+            if (indexed.start() != null) {
+                remove(byStatusAndStart.get(indexed.status()), indexed.start(), id);
+                if (indexed.status() == AppointmentStatus.SCHEDULED) {
+                    exchangeable.remove(new AppointmentCursor(indexed.start(), id));
+                }
+            }
+            if (indexed.end() != null) {
+                remove(byStatusAndEnd.get(indexed.status()), indexed.end(), id);
+            }
+        }
+        if (indexed.occupies()) {
+            occupied.remove(indexed.start(), indexed.end(), id);
+            if (indexed.customerId() != null) {
+                IntervalTree<Appointment> tree = occupiedByCustomer.get(indexed.customerId());
+                tree.remove(indexed.start(), indexed.end(), id);
+                if (tree.isEmpty()) {
+                    occupiedByCustomer.remove(indexed.customerId());
+                }
+            }
+        }
+    }
+
+    private static void add(NavigableMap<LocalDateTime, NavigableMap<Integer, Appointment>> index, LocalDateTime key, Appointment appointment) {
+        index.computeIfAbsent(key, k -> new TreeMap<>()).put(appointment.getId(), appointment);
+    }
+
+    private static void remove(NavigableMap<LocalDateTime, NavigableMap<Integer, Appointment>> index, LocalDateTime key, Integer id) {
+        Map<Integer, Appointment> appointments = index.get(key);
+        appointments.remove(id);
+        if (appointments.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Valores indexados de la cita en el último save, para poder quitarla de
+     * los índices aunque se haya modificado después.
+     */
+    private record IndexedAppointment(Appointment appointment, Integer customerId, Integer cancelerId,
+                                      AppointmentStatus status, LocalDateTime start, LocalDateTime end) {
+
+        static IndexedAppointment of(Appointment appointment) {
+            return new IndexedAppointment(appointment,
+                    appointment.getCustomer() == null ? null : appointment.getCustomer().getId(),
+                    appointment.getCanceler() == null ? null : appointment.getCanceler().getId(),
+                    appointment.getStatus(), appointment.getStart(), appointment.getEnd());
+        }
+
+        boolean occupies() {
+            return status != AppointmentStatus.CANCELED && start != null && end != null;
+        }
+    }
+}
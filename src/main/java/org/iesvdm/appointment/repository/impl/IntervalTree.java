@@ -0,0 +1,241 @@
+package org.iesvdm.appointment.repository.impl;
+
+import org.iesvdm.appointment.entity.TimeSlot;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Árbol de intervalos semiabiertos [start, end): un AVL ordenado por start
+ * (y por id para desempatar) en el que cada nodo guarda el mayor end de su
+ * subárbol. Las consultas de solapamiento descartan los subárboles que
+ * terminan antes de la ventana o empiezan después, así que cuestan
+ * O(log n + k) y devuelven los intervalos ordenados por start.
+ */
+class IntervalTree<T> {
+
+    private Node<T> root;
+    private int size;
+
+    /**
+     * Intervalos vacíos (start == end) no se guardan: no solapan con nada.
+     */
+    void add(LocalDateTime start, LocalDateTime end, int id, T value) {
+        if (start.isBefore(end)) {
+            root = insert(root, new Node<>(start, end, id, value));
+            size++;
+        }
+    }
+
+    boolean remove(LocalDateTime start, LocalDateTime end, int id) {
+        if (!start.isBefore(end)) {
+            return false;
+        }
+        int before = size;
+        root = delete(root, start, id);
+        return size < before;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Valores cuyo intervalo solapa [from, to).
+     */
+    List<T> overlapping(LocalDateTime from, LocalDateTime to) {
+        List<Node<T>> nodes = new ArrayList<>();
+        collect(root, from, to, nodes);
+        List<T> result = new ArrayList<>(nodes.size());
+        for (Node<T> node : nodes) {
+            result.add(node.value);
+        }
+        return result;
+    }
+
+    boolean overlaps(LocalDateTime from, LocalDateTime to) {
+        return any(root, from, to);
+    }
+
+    /**
+     * Valores cuyo intervalo contiene el instante.
+     */
+    List<T> containing(LocalDateTime instant) {
+        return overlapping(instant, instant.plusNanos(1));
+    }
+
+    /**
+     * Huecos de [from, to) que no cubre ningún intervalo, en orden.
+     */
+    List<TimeSlot> gaps(LocalDateTime from, LocalDateTime to) {
+        List<TimeSlot> gaps = new ArrayList<>();
+        LocalDateTime cursor = from;
+        List<Node<T>> nodes = new ArrayList<>();
+        collect(root, from, to, nodes);
+        for (Node<T> node : nodes) {
+            if (node.start.isAfter(cursor)) {
+                gaps.add(new TimeSlot(cursor, node.start));
+            }
+            if (node.end.isAfter(cursor)) {
+                cursor = node.end;
+            }
+        }
+        if (cursor.isBefore(to)) {
+            gaps.add(new TimeSlot(cursor, to));
+        }
+        return gaps;
+    }
+
+    private static <T> void collect(Node<T> node, LocalDateTime from, LocalDateTime to, List<Node<T>> result) {
+        if (node == null || !node.maxEnd.isAfter(from)) {
+            return;
+        }
+        collect(node.left, from, to, result);
+        if (node.start.isBefore(to)) {
+            if (node.end.isAfter(from)) {
+                result.add(node);
+            }
+            collect(node.right, from, to, result);
+        }
+    }
+
+    private static <T> boolean any(Node<T> node, LocalDateTime from, LocalDateTime to) {
+        if (node == null || !node.maxEnd.isAfter(from)) {
+            return false;
+        }
+        if (any(node.left, from, to)) {
+            return true;
+        }
+        return node.start.isBefore(to) && (node.end.isAfter(from) || any(node.right, from, to));
+    }
+
+    private static int compare(LocalDateTime start, int id, Node<?> node) {
+        int cmp = start.compareTo(node.start);
+        return cmp != 0 ? cmp : Integer.compare(id, node.id);
+    }
+
+    private static <T> Node<T> insert(Node<T> node, Node<T> added) {
+        if (node == null) {
+            return added;
+        }
+        if (compare(added.start, added.id, node) < 0) {
+            node.left = insert(node.left, added);
+        } else {
+            node.right = insert(node.right, added);
+        }
+        return balance(node);
+    }
+
+    private Node<T> delete(Node<T> node, LocalDateTime start, int id) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(start, id, node);
+        if (cmp < 0) {
+            node.left = delete(node.left, start, id);
+        } else if (cmp > 0) {
+            node.right = delete(node.right, start, id);
+        } else {
+            size--;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            Node<T> successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = deleteMin(node.right);
+            successor.left = node.left;
+            node = successor;
+        }
+        return balance(node);
+    }
+
+    private static <T> Node<T> deleteMin(Node<T> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = deleteMin(node.left);
+        return balance(node);
+    }
+
+    private static <T> Node<T> balance(Node<T> node) {
+        update(node);
+        int factor = height(node.left) - height(node.right);
+        if (factor > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (factor < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static <T> Node<T> rotateRight(Node<T> node) {
+        Node<T> left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private static <T> Node<T> rotateLeft(Node<T> node) {
+        Node<T> right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static <T> void update(Node<T> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        LocalDateTime maxEnd = node.end;
+        if (node.left != null && node.left.maxEnd.isAfter(maxEnd)) {
+            maxEnd = node.left.maxEnd;
+        }
+        if (node.right != null && node.right.maxEnd.isAfter(maxEnd)) {
+            maxEnd = node.right.maxEnd;
+        }
+        node.maxEnd = maxEnd;
+    }
+
+    private static final class Node<T> {
+
+        final LocalDateTime start;
+        final LocalDateTime end;
+        final int id;
+        final T value;
+        LocalDateTime maxEnd;
+        int height = 1;
+        Node<T> left;
+        Node<T> right;
+
+        Node(LocalDateTime start, LocalDateTime end, int id, T value) {
+            this.start = start;
+            this.end = end;
+            this.id = id;
+            this.value = value;
+            this.maxEnd = end;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.iesvdm.appointment.repository.impl;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caché de entidades por id de los repositorios con caché: LRU de como mucho
+ * capacity entradas, que además caducan ttl después de guardarse. También
+ * guarda que un id no existe (un null), para no volver a preguntarlo.
+ *
+ * Todo va con un único cerrojo, porque cada operación son unas pocas
+ * consultas a un LinkedHashMap. Los repositorios con caché no meten lo que
+ * guardan: después de escribir en el repositorio llaman a invalidate, y la
+ * siguiente lectura lo trae. Lo que se lee del repositorio sólo se guarda si
+ * no hay entrada y no ha habido ningún invalidate desde que se empezó a leer,
+ * así que una lectura que se cruza con una escritura no deja en la caché el
+ * valor de antes.
+ */
+public class RepositoryCache<V> {
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    record Cached<V>(V value, long expiresAt) {
+    }
+
+    private final LinkedHashMap<Integer, Cached<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int capacity;
+    private final long ttlMillis;
+    private final Clock clock;
+    private long invalidations;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param ttl cuánto vale una entrada, o null para que sólo salga por LRU.
+     */
+    public RepositoryCache(int capacity, Duration ttl, Clock clock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        if (ttl != null && (ttl.isNegative() || ttl.isZero())) {
+            throw new IllegalArgumentException("TTL must be positive: " + ttl);
+        }
+        this.capacity = capacity;
+        this.ttlMillis = ttl == null ? Long.MAX_VALUE : ttl.toMillis();
+        this.clock = clock;
+    }
+
+    /**
+     * La entrada vigente del id (su valor puede ser null), o null si no hay.
+     */
+    Cached<V> lookup(int id) {
+        lock.lock();
+        try {
+            Cached<V> cached = entries.get(id);
+            if (cached != null && cached.expiresAt() <= clock.millis()) {
+                entries.remove(id);
+                expirations.increment();
+                cached = null;
+            }
+            if (cached == null) {
+                misses.increment();
+            } else {
+                hits.increment();
+                if (cached.value() == null) {
+                    negativeHits.increment();
+                }
+            }
+            return cached;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marca para fill: hay que tomarla antes de leer del repositorio.
+     */
+    long stamp() {
+        lock.lock();
+        try {
+            return invalidations;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Guarda lo leído del repositorio si nadie lo ha cambiado mientras.
+     */
+    void fill(int id, V value, long stamp) {
+        lock.lock();
+        try {
+            if (stamp == invalidations && !entries.containsKey(id)) {
+                store(id, value);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void store(int id, V value) {
+        long now = clock.millis();
+        entries.put(id, new Cached<>(value, ttlMillis > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + ttlMillis));
+        Iterator<Map.Entry<Integer, Cached<V>>> eldest = entries.entrySet().iterator();
+        while (entries.size() > capacity) {
+            eldest.next();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    public void invalidate(int id) {
+        lock.lock();
+        try {
+            invalidations++;
+            entries.remove(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            invalidations++;
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Aciertos, contando los de ids que no existen.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Entradas que han salido por LRU al llenarse.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    public double getHitRatio() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d hits=%d negativeHits=%d misses=%d hitRatio=%.3f evictions=%d expirations=%d",
+                size(), getHits(), getNegativeHits(), getMisses(), getHitRatio(), getEvictions(), getExpirations());
+    }
+}
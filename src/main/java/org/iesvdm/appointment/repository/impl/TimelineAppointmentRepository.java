@@ -0,0 +1,179 @@
+package org.iesvdm.appointment.repository.impl;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.entity.TimeSlot;
+import org.iesvdm.appointment.repository.AppointmentCursor;
+import org.iesvdm.appointment.repository.AppointmentRepository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * AppointmentRepository que, después de guardar una cita en el repositorio,
+ * pone al día las citas de los clientes: la línea de tiempo
+ * (Customer.getTimeline) y la lista Customer.getAppointments. Si la cita ha
+ * cambiado de cliente, por ejemplo al aceptar un intercambio, sale de las
+ * del anterior; si ha cambiado su start, se recoloca. Es el único sitio que
+ * las mantiene: las entidades no lo hacen al cambiar.
+ *
+ * Sólo conoce las citas que se guardan por aquí; las que ya estaban en el
+ * repositorio no están en ninguna línea de tiempo hasta que se guardan.
+ */
+public class TimelineAppointmentRepository implements AppointmentRepository {
+
+    private final AppointmentRepository delegate;
+    /**
+     * Cliente en cuyas citas está cada id.
+     */
+    private final Map<Integer, Customer> owners = new ConcurrentHashMap<>();
+
+    public TimelineAppointmentRepository(AppointmentRepository delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Repository is required");
+        }
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Appointment getOne(int appointmentId) {
+        return delegate.getOne(appointmentId);
+    }
+
+    @Override
+    public void save(Appointment appointment) {
+        delegate.save(appointment);
+        track(appointment);
+    }
+
+    @Override
+    public Map<Integer, Appointment> findAllById(Collection<Integer> appointmentIds) {
+        return delegate.findAllById(appointmentIds);
+    }
+
+    @Override
+    public void saveAll(Collection<Appointment> appointments) {
+        delegate.saveAll(appointments);
+        appointments.forEach(this::track);
+    }
+
+    /**
+     * Los cambios de una misma cita se hacen de uno en uno (compute), en el
+     * orden en que llegan aquí.
+     */
+    private void track(Appointment appointment) {
+        Integer id = appointment.getId();
+        if (id == null) {
+            return;
+        }
+        Customer customer = appointment.getCustomer();
+        owners.compute(id, (key, previous) -> {
+            if (previous != null && previous != customer) {
+                previous.getTimeline().remove(appointment);
+                removeFromList(previous, id);
+            }
+            if (customer == null) {
+                return null;
+            }
+            customer.getTimeline().add(appointment);
+            replaceInList(customer, appointment);
+            return customer;
+        });
+    }
+
+    private static void removeFromList(Customer customer, Integer id) {
+        List<Appointment> appointments = customer.getAppointments();
+        if (appointments != null) {
+            synchronized (appointments) {
+                appointments.removeIf(appointment -> id.equals(appointment.getId()));
+            }
+        }
+    }
+
+    private static void replaceInList(Customer customer, Appointment appointment) {
+        List<Appointment> appointments = customer.getAppointments();
+        if (appointments == null) {
+            return;
+        }
+        synchronized (appointments) {
+            for (int i = 0; i < appointments.size(); i++) {
+                if (appointment.getId().equals(appointments.get(i).getId())) {
+                    appointments.set(i, appointment);
+                    return;
+                }
+            }
+            appointments.add(appointment);
+        }
+    }
+
+    @Override
+    public List<Appointment> findCanceledByUser(int userId) {
+        return delegate.findCanceledByUser(userId);
+    }
+
+    @Override
+    public List<Appointment> findByCustomerIdWithStartInPeroid(int customerId, LocalDateTime startPeroid, LocalDateTime endPeroid) {
+        return delegate.findByCustomerIdWithStartInPeroid(customerId, startPeroid, endPeroid);
+    }
+
+    @Override
+    public List<Appointment> findScheduledWithEndBeforeDate(LocalDateTime now) {
+        return delegate.findScheduledWithEndBeforeDate(now);
+    }
+
+    @Override
+    public List<Appointment> getEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId) {
+        return delegate.getEligibleAppointmentsForExchange(start, customerId);
+    }
+
+    @Override
+    public List<Appointment> getEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId,
+                                                                AppointmentCursor after, int limit) {
+        return delegate.getEligibleAppointmentsForExchange(start, customerId, after, limit);
+    }
+
+    @Override
+    public List<Appointment> findExchangeRequestedWithStartBefore(LocalDateTime date) {
+        return delegate.findExchangeRequestedWithStartBefore(date);
+    }
+
+    @Override
+    public Stream<Appointment> streamScheduledWithEndBeforeDate(LocalDateTime now, AppointmentCursor after) {
+        return delegate.streamScheduledWithEndBeforeDate(now, after);
+    }
+
+    @Override
+    public Stream<Appointment> streamExchangeRequestedWithStartBefore(LocalDateTime date, AppointmentCursor after) {
+        return delegate.streamExchangeRequestedWithStartBefore(date, after);
+    }
+
+    @Override
+    public Stream<Appointment> streamEligibleAppointmentsForExchange(LocalDateTime start, Integer customerId,
+                                                                     AppointmentCursor after) {
+        return delegate.streamEligibleAppointmentsForExchange(start, customerId, after);
+    }
+
+    @Override
+    public List<Appointment> findOverlapping(LocalDateTime from, LocalDateTime to) {
+        return delegate.findOverlapping(from, to);
+    }
+
+    @Override
+    public List<Appointment> findByCustomerIdOverlapping(int customerId, LocalDateTime from, LocalDateTime to) {
+        return delegate.findByCustomerIdOverlapping(customerId, from, to);
+    }
+
+    @Override
+    public List<Appointment> findAt(LocalDateTime instant) {
+        return delegate.findAt(instant);
+    }
+
+    @Override
+    public List<TimeSlot> findFreeSlots(LocalDateTime from, LocalDateTime to) {
+        return delegate.findFreeSlots(from, to);
+    }
+}
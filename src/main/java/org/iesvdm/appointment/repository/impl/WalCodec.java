@@ -0,0 +1,174 @@
+package org.iesvdm.appointment.repository.impl;
+
+import org.iesvdm.appointment.codec.EntityCodec;
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.entity.User;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Formato de los registros del log y de las instantáneas de
+ * FileAppointmentStore.
+ *
+ * Cada registro es [longitud][crc32][tipo][datos]: la longitud y el crc
+ * cubren tipo y datos, y los datos son los de EntityCodec. Un registro
+ * guarda el estado completo de un usuario, una cita o una petición, así que
+ * volver a aplicarlo no cambia nada y gana el último. Como en EntityCodec,
+ * las referencias entre entidades van por id (se resuelven al terminar de
+ * leer), las fechas en segundos y de los usuarios no se guarda la
+ * contraseña.
+ */
+final class WalCodec {
+
+    static final int HEADER_BYTES = 8;
+    static final int MAX_RECORD_BYTES = 16 << 20;
+
+    static final byte APPOINTMENT = 1;
+    static final byte EXCHANGE_REQUEST = 2;
+    static final byte END = 3;
+    static final byte USER = 4;
+
+    private static final long NONE = -1;
+    private static final EntityCodec.References STUBS = EntityCodec.References.stubs();
+
+    private WalCodec() {
+    }
+
+    static byte[] encode(Appointment appointment) {
+        ByteBuffer buffer = record(APPOINTMENT, EntityCodec.APPOINTMENT_BYTES);
+        EntityCodec.writeAppointment(buffer, appointment);
+        return frame(buffer);
+    }
+
+    static byte[] encode(User user) {
+        ByteBuffer buffer = record(USER, EntityCodec.userBytes(user));
+        EntityCodec.writeUser(buffer, user);
+        return frame(buffer);
+    }
+
+    static byte[] encode(ExchangeRequest exchangeRequest) {
+        ByteBuffer buffer = record(EXCHANGE_REQUEST, EntityCodec.EXCHANGE_REQUEST_BYTES);
+        EntityCodec.writeExchangeRequest(buffer, exchangeRequest);
+        return frame(buffer);
+    }
+
+    static byte[] encodeEnd(long records) {
+        ByteBuffer buffer = record(END, Long.BYTES);
+        buffer.putLong(records);
+        return frame(buffer);
+    }
+
+    private static ByteBuffer record(byte type, int bytes) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 1 + bytes);
+        buffer.position(HEADER_BYTES);
+        return buffer.put(type);
+    }
+
+    private static byte[] frame(ByteBuffer buffer) {
+        int length = buffer.position() - HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_BYTES, length);
+        buffer.putInt(0, length);
+        buffer.putInt(4, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Comprueba el crc de un registro ya leído (sin la cabecera).
+     */
+    static boolean verify(ByteBuffer payload, int expectedCrc) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue() == expectedCrc;
+    }
+
+    /**
+     * Estado que se va reconstruyendo al leer registros. Las entidades
+     * relacionadas se leen como stubs con solo el id y link() las cambia por
+     * las de verdad.
+     */
+    static final class State {
+
+        final Map<Integer, Appointment> appointments = new HashMap<>();
+        final Map<Integer, ExchangeRequest> exchangeRequests = new TreeMap<>();
+        final Map<Integer, User> users = new HashMap<>();
+        long records;
+
+        /**
+         * Aplica un registro (sin la cabecera, posicionado en el tipo).
+         *
+         * @return el número de registros que anuncia si es el de fin, o -1.
+         */
+        long apply(ByteBuffer payload) {
+            byte type = payload.get();
+            switch (type) {
+                case APPOINTMENT -> {
+                    Appointment appointment = EntityCodec.readAppointment(payload, STUBS);
+                    appointments.put(appointment.getId(), appointment);
+                }
+                case EXCHANGE_REQUEST -> {
+                    ExchangeRequest exchangeRequest = EntityCodec.readExchangeRequest(payload, STUBS);
+                    exchangeRequests.put(exchangeRequest.getId(), exchangeRequest);
+                }
+                case USER -> {
+                    User user = EntityCodec.readUser(payload);
+                    User known = users.get(user.getId());
+                    if (known != null && known.getClass() == user.getClass()) {
+                        known.setUserName(user.getUserName());
+                    } else {
+                        users.put(user.getId(), user);
+                    }
+                }
+                case END -> {
+                    return payload.getLong();
+                }
+                default -> throw new IllegalStateException("Unknown record type: " + type);
+            }
+            records++;
+            return NONE;
+        }
+
+        /**
+         * Enlaza las citas con sus usuarios y sus peticiones. Un mismo
+         * usuario se comparte entre todas sus citas. Una cita guardada antes
+         * de que su petición tuviera id se enlaza con la última petición que
+         * la pide.
+         */
+        void link() {
+            Set<Integer> withoutExchange = new HashSet<>();
+            for (Appointment appointment : appointments.values()) {
+                if (appointment.getCanceler() != null) {
+                    appointment.setCanceler(users.get(appointment.getCanceler().getId()));
+                }
+                if (appointment.getCustomer() != null) {
+                    appointment.setCustomer(users.get(appointment.getCustomer().getId()) instanceof Customer customer ? customer : null);
+                }
+                if (appointment.getExchangeRequest() == null) {
+                    withoutExchange.add(appointment.getId());
+                } else {
+                    appointment.setExchangeRequest(exchangeRequests.get(appointment.getExchangeRequest().getId()));
+                }
+            }
+            for (ExchangeRequest exchangeRequest : exchangeRequests.values()) {
+                exchangeRequest.setRequestor(resolve(exchangeRequest.getRequestor()));
+                exchangeRequest.setRequested(resolve(exchangeRequest.getRequested()));
+                Appointment requestor = exchangeRequest.getRequestor();
+                if (requestor != null && withoutExchange.contains(requestor.getId())) {
+                    requestor.setExchangeRequest(exchangeRequest);
+                }
+            }
+        }
+
+        private Appointment resolve(Appointment stub) {
+            return stub == null ? null : appointments.get(stub.getId());
+        }
+    }
+}
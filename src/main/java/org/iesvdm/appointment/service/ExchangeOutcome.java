@@ -0,0 +1,12 @@
+package org.iesvdm.appointment.service;
+
+/**
+ * Resultado de cada elemento de una operación por lotes de ExchangeService.
+ */
+public enum ExchangeOutcome {
+    DONE,
+    NOT_FOUND,
+    UNAUTHORIZED,
+    NOT_POSSIBLE,
+    STALE
+}
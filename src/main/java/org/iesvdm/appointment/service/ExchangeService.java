@@ -1,6 +1,7 @@
 package org.iesvdm.appointment.service;
 
 import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.repository.AppointmentCursor;
 
 import java.util.List;
 
@@ -10,6 +11,12 @@ public interface ExchangeService {
 
     List<Appointment> getEligibleAppointmentsForExchange(int appointmentId);
 
+    /**
+     * Una página de getEligibleAppointmentsForExchange, ordenada por start e
+     * id; la siguiente se pide con AppointmentCursor.after(página).
+     */
+    List<Appointment> getEligibleAppointmentsForExchange(int appointmentId, AppointmentCursor after, int limit);
+
     boolean checkIfExchangeIsPossible(int oldAppointmentId, int newAppointmentId, int userId);
 
     boolean acceptExchange(int exchangeId, int userId);
@@ -17,4 +24,22 @@ public interface ExchangeService {
     boolean rejectExchange(int exchangeId);
 
     boolean requestExchange(int oldAppointmentId, int newAppointmentId, int userId);
+
+    /**
+     * Como requestExchange para cada petición, pero leyendo todas las citas de
+     * una vez y guardando todo junto al final. Devuelve un resultado por
+     * petición, en el mismo orden; una cita ajena da UNAUTHORIZED en lugar de
+     * lanzar excepción.
+     */
+    List<ExchangeOutcome> requestExchanges(List<Request> requests);
+
+    List<ExchangeOutcome> acceptExchanges(List<Acceptance> acceptances);
+
+    List<ExchangeOutcome> rejectExchanges(List<Integer> exchangeIds);
+
+    record Request(int oldAppointmentId, int newAppointmentId, int userId) {
+    }
+
+    record Acceptance(int exchangeId, int userId) {
+    }
 }
@@ -4,6 +4,8 @@ package org.iesvdm.appointment.service;
 import org.iesvdm.appointment.entity.Appointment;
 import org.iesvdm.appointment.entity.ExchangeRequest;
 
+import java.util.List;
+
 
 public interface NotificationService {
 
@@ -12,4 +14,22 @@ public interface NotificationService {
     void newExchangeAcceptedNotification(ExchangeRequest exchangeRequest, boolean sendEmail);
 
     void newExchangeRejectedNotification(ExchangeRequest exchangeRequest, boolean sendEmail);
+
+    default void newExchangesRequestedNotification(List<ExchangeRequest> exchangeRequests, boolean sendEmail) {
+        for (ExchangeRequest exchangeRequest : exchangeRequests) {
+            newExchangeRequestedNotification(exchangeRequest.getRequestor(), exchangeRequest.getRequested(), sendEmail);
+        }
+    }
+
+    default void newExchangesAcceptedNotification(List<ExchangeRequest> exchangeRequests, boolean sendEmail) {
+        for (ExchangeRequest exchangeRequest : exchangeRequests) {
+            newExchangeAcceptedNotification(exchangeRequest, sendEmail);
+        }
+    }
+
+    default void newExchangesRejectedNotification(List<ExchangeRequest> exchangeRequests, boolean sendEmail) {
+        for (ExchangeRequest exchangeRequest : exchangeRequests) {
+            newExchangeRejectedNotification(exchangeRequest, sendEmail);
+        }
+    }
 }
@@ -0,0 +1,168 @@
+package org.iesvdm.appointment.service.impl;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Cerrojos por franjas de citas (id módulo el número de franjas) para que
+ * las operaciones que tocan dos citas se ejecuten de forma atómica sin un
+ * cerrojo global.
+ *
+ * Las dos franjas se cogen siempre en el mismo orden (la de menor índice
+ * primero), así que no hay interbloqueos. Si la segunda está ocupada se
+ * suelta la primera, se espera un poco y se vuelve a intentar, para no
+ * retener una franja mientras se espera otra; tras maxRetries intentos se
+ * espera bloqueando, en el mismo orden. withAllLocks coge las de varias citas
+ * también de menor a mayor.
+ */
+public class AppointmentLocks {
+
+    public static final int DEFAULT_STRIPES = 256;
+    public static final int DEFAULT_MAX_RETRIES = 8;
+
+    private static final long BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+
+    private final ReentrantLock[] stripes;
+    private final int maxRetries;
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+    public AppointmentLocks() {
+        this(DEFAULT_STRIPES, DEFAULT_MAX_RETRIES);
+    }
+
+    public AppointmentLocks(int stripes, int maxRetries) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Stripes must be at least 1: " + stripes);
+        }
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.maxRetries = maxRetries;
+    }
+
+    public <T> T withLock(int appointmentId, Supplier<T> action) {
+        return withLocks(appointmentId, appointmentId, action);
+    }
+
+    public <T> T withLocks(int firstAppointmentId, int secondAppointmentId, Supplier<T> action) {
+        int a = stripeOf(firstAppointmentId);
+        int b = stripeOf(secondAppointmentId);
+        ReentrantLock low = stripes[Math.min(a, b)];
+        ReentrantLock high = stripes[Math.max(a, b)];
+
+        long start = System.nanoTime();
+        if (low == high) {
+            low.lock();
+        } else {
+            acquire(low, high);
+        }
+        long waited = System.nanoTime() - start;
+        acquisitions.increment();
+        waitNanos.add(waited);
+        maxWaitNanos.accumulate(waited);
+        try {
+            return action.get();
+        } finally {
+            if (high != low) {
+                high.unlock();
+            }
+            low.unlock();
+        }
+    }
+
+    /**
+     * Ejecuta action con las franjas de todas las citas cogidas, para los
+     * lotes que cambian y guardan varias citas de una vez. Un lote grande
+     * puede coger todas las franjas y parar mientras tanto al resto.
+     */
+    public <T> T withAllLocks(Collection<Integer> appointmentIds, Supplier<T> action) {
+        BitSet needed = new BitSet(stripes.length);
+        for (Integer appointmentId : appointmentIds) {
+            needed.set(stripeOf(appointmentId == null ? 0 : appointmentId));
+        }
+
+        long start = System.nanoTime();
+        for (int i = needed.nextSetBit(0); i >= 0; i = needed.nextSetBit(i + 1)) {
+            stripes[i].lock();
+        }
+        long waited = System.nanoTime() - start;
+        acquisitions.increment();
+        waitNanos.add(waited);
+        maxWaitNanos.accumulate(waited);
+        try {
+            return action.get();
+        } finally {
+            for (int i = needed.previousSetBit(stripes.length - 1); i >= 0; i = needed.previousSetBit(i - 1)) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    private void acquire(ReentrantLock low, ReentrantLock high) {
+        for (int attempt = 0; attempt < maxRetries; attempt++) {
+            low.lock();
+            if (high.tryLock()) {
+                return;
+            }
+            low.unlock();
+            retries.increment();
+            LockSupport.parkNanos(BACKOFF_NANOS << attempt);
+        }
+        low.lock();
+        high.lock();
+    }
+
+    private int stripeOf(int appointmentId) {
+        return Math.floorMod(appointmentId, stripes.length);
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * Veces que la segunda franja estaba ocupada y se volvió a empezar.
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Tiempo total esperando los cerrojos, en nanosegundos.
+     */
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public double getMeanWaitNanos() {
+        long n = getAcquisitions();
+        return n == 0 ? 0 : (double) getWaitNanos() / n;
+    }
+
+    public void resetMetrics() {
+        acquisitions.reset();
+        retries.reset();
+        waitNanos.reset();
+        maxWaitNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("acquisitions=%d retries=%d meanWait=%.1fus maxWait=%.1fus",
+                getAcquisitions(), getRetries(), getMeanWaitNanos() / 1e3, getMaxWaitNanos() / 1e3);
+    }
+}
@@ -0,0 +1,328 @@
+package org.iesvdm.appointment.service.impl;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.entity.ExchangeStatus;
+import org.iesvdm.appointment.repository.AppointmentRepository;
+import org.iesvdm.appointment.repository.ExchangeRequestRepository;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Termina las citas programadas al llegar su fin (FINISHED) y caduca las
+ * peticiones de intercambio pendientes cuando ya no se podrían aceptar, 24
+ * horas antes del inicio de la cita (EXPIRED, y la cita vuelve a SCHEDULED).
+ *
+ * Cada cambio pendiente es un vencimiento en una cola de prioridad por
+ * fecha: apuntarlo y sacarlo cuesta O(log n) y no se recorre el repositorio
+ * en cada vuelta. Al vencer, se vuelve a leer la cita con su cerrojo (los
+ * mismos AppointmentLocks que ExchangeServiceImpl) y solo se cambia si sigue
+ * en el estado esperado; si su fecha se ha movido más tarde, se vuelve a
+ * apuntar. Si una cita cambia a una fecha anterior hay que volver a
+ * apuntarla con schedule.
+ *
+ * load() apunta lo que ya hay; después, ExchangeServiceImpl apunta las citas
+ * que cambia (setSweeper), y quien crea o cambia citas por otro lado las
+ * apunta con schedule. Apuntar otra vez lo mismo no hace nada.
+ * Un vencimiento cuyo cambio falla (por ejemplo, al guardar) se cuenta en
+ * getFailures y se descarta, y el barrido sigue con los demás.
+ */
+public class AppointmentSweeper implements AutoCloseable {
+
+    public static final long EXCHANGE_DEADLINE_HOURS = 24;
+
+    private static final Duration MAX_WAIT = Duration.ofMinutes(1);
+
+    private enum Kind { FINISH, EXPIRE }
+
+    private record Deadline(LocalDateTime due, long sequence, Kind kind, int appointmentId) implements Comparable<Deadline> {
+
+        @Override
+        public int compareTo(Deadline other) {
+            int byDue = due.compareTo(other.due);
+            return byDue != 0 ? byDue : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private record Target(Kind kind, int appointmentId) {
+    }
+
+    private enum Result { DONE, DISCARDED, RESCHEDULED }
+
+    private final AppointmentRepository appointmentRepository;
+    private final ExchangeRequestRepository exchangeRequestRepository;
+    private final AppointmentLocks locks;
+    private final Clock clock;
+
+    private final PriorityQueue<Deadline> deadlines = new PriorityQueue<>();
+    private final Map<Target, LocalDateTime> registered = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final AtomicLong sequence = new AtomicLong();
+    private Thread worker;
+    private volatile boolean closed;
+
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public AppointmentSweeper(AppointmentRepository appointmentRepository, ExchangeRequestRepository exchangeRequestRepository,
+                              AppointmentLocks locks, Clock clock) {
+        this.appointmentRepository = appointmentRepository;
+        this.exchangeRequestRepository = exchangeRequestRepository;
+        this.locks = locks;
+        this.clock = clock;
+    }
+
+    /**
+     * Apunta las citas que ya hay en el repositorio: las programadas para
+     * terminar y las que esperan un intercambio para caducar y terminar.
+     * Son las únicas búsquedas de todo el repositorio, y se recorren sin
+     * copiarlas a una lista.
+     */
+    public void load() {
+        appointmentRepository.streamScheduledWithEndBeforeDate(LocalDateTime.MAX, null).forEach(this::schedule);
+        appointmentRepository.streamExchangeRequestedWithStartBefore(LocalDateTime.MAX, null).forEach(this::schedule);
+    }
+
+    /**
+     * Apunta lo que le toca a la cita según su estado: terminar si está
+     * programada, y además caducar si espera un intercambio.
+     */
+    public void schedule(Appointment appointment) {
+        if (appointment.getStatus() == AppointmentStatus.EXCHANGE_REQUESTED) {
+            scheduleExpiry(appointment);
+            scheduleFinish(appointment);
+        } else if (appointment.getStatus() == AppointmentStatus.SCHEDULED) {
+            scheduleFinish(appointment);
+        }
+    }
+
+    public void scheduleFinish(Appointment appointment) {
+        if (appointment.getId() != null && appointment.getEnd() != null) {
+            add(new Deadline(appointment.getEnd(), sequence.getAndIncrement(), Kind.FINISH, appointment.getId()));
+        }
+    }
+
+    public void scheduleExpiry(Appointment appointment) {
+        if (appointment.getId() != null && appointment.getStart() != null) {
+            add(new Deadline(expiryOf(appointment), sequence.getAndIncrement(), Kind.EXPIRE, appointment.getId()));
+        }
+    }
+
+    private static LocalDateTime expiryOf(Appointment appointment) {
+        return appointment.getStart().minusHours(EXCHANGE_DEADLINE_HOURS);
+    }
+
+    /**
+     * Si la cita ya tiene apuntado ese vencimiento para esa fecha, no hace
+     * nada.
+     */
+    private void add(Deadline deadline) {
+        lock.lock();
+        try {
+            Target target = new Target(deadline.kind(), deadline.appointmentId());
+            if (deadline.due().equals(registered.put(target, deadline.due()))) {
+                return;
+            }
+            deadlines.add(deadline);
+            if (deadlines.peek() == deadline) {
+                changed.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int sweep() {
+        return sweep(LocalDateTime.now(clock));
+    }
+
+    /**
+     * Aplica todos los vencimientos hasta now.
+     *
+     * @return cuántos cambios se han hecho.
+     */
+    public int sweep(LocalDateTime now) {
+        int done = 0;
+        while (true) {
+            Deadline deadline;
+            lock.lock();
+            try {
+                deadline = deadlines.peek();
+                if (deadline == null || deadline.due().isAfter(now)) {
+                    return done;
+                }
+                deadlines.poll();
+                registered.remove(new Target(deadline.kind(), deadline.appointmentId()), deadline.due());
+            } finally {
+                lock.unlock();
+            }
+            try {
+                if (apply(deadline, now)) {
+                    done++;
+                }
+            } catch (RuntimeException e) {
+                failures.increment();
+            }
+        }
+    }
+
+    private boolean apply(Deadline deadline, LocalDateTime now) {
+        Result result = locks.withLock(deadline.appointmentId(), () -> {
+            Appointment appointment = appointmentRepository.getOne(deadline.appointmentId());
+            return deadline.kind() == Kind.FINISH ? finish(appointment, now) : expire(appointment, now);
+        });
+        switch (result) {
+            case DONE -> (deadline.kind() == Kind.FINISH ? finished : expired).increment();
+            case DISCARDED -> discarded.increment();
+            case RESCHEDULED -> { }
+        }
+        return result == Result.DONE;
+    }
+
+    private Result finish(Appointment appointment, LocalDateTime now) {
+        if (appointment == null || appointment.getStatus() != AppointmentStatus.SCHEDULED || appointment.getEnd() == null) {
+            return Result.DISCARDED;
+        }
+        if (appointment.getEnd().isAfter(now)) {
+            scheduleFinish(appointment);
+            return Result.RESCHEDULED;
+        }
+        appointment.setStatus(AppointmentStatus.FINISHED);
+        appointmentRepository.save(appointment);
+        return Result.DONE;
+    }
+
+    private Result expire(Appointment appointment, LocalDateTime now) {
+        if (appointment == null || appointment.getStatus() != AppointmentStatus.EXCHANGE_REQUESTED || appointment.getStart() == null) {
+            return Result.DISCARDED;
+        }
+        if (expiryOf(appointment).isAfter(now)) {
+            scheduleExpiry(appointment);
+            return Result.RESCHEDULED;
+        }
+        ExchangeRequest exchangeRequest = appointment.getExchangeRequest();
+        if (exchangeRequest != null && (exchangeRequest.getStatus() == null || exchangeRequest.getStatus() == ExchangeStatus.PENDING)) {
+            exchangeRequest.setStatus(ExchangeStatus.EXPIRED);
+            exchangeRequestRepository.save(exchangeRequest);
+        }
+        appointment.setStatus(AppointmentStatus.SCHEDULED);
+        appointmentRepository.save(appointment);
+        return Result.DONE;
+    }
+
+    /**
+     * Arranca un hilo que duerme hasta el siguiente vencimiento y lo aplica.
+     * El hilo acaba con close() o si lo interrumpen.
+     */
+    public void start(ThreadFactory threadFactory) {
+        if (worker != null) {
+            throw new IllegalStateException("Sweeper already started");
+        }
+        worker = threadFactory.newThread(this::run);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void run() {
+        while (!closed) {
+            lock.lock();
+            try {
+                Deadline next = deadlines.peek();
+                Duration wait = next == null ? MAX_WAIT : Duration.between(LocalDateTime.now(clock), next.due());
+                if (wait.isNegative() || wait.isZero()) {
+                    wait = null;
+                } else if (wait.compareTo(MAX_WAIT) > 0) {
+                    wait = MAX_WAIT;
+                }
+                if (wait != null) {
+                    changed.awaitNanos(wait.toNanos());
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            sweep();
+        }
+    }
+
+    /**
+     * Para el hilo y espera a que acabe el barrido en curso, como mucho 5
+     * segundos. Si interrumpen la espera, vuelve con el hilo marcado como
+     * interrumpido.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (worker != null) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Vencimientos apuntados que aún no se han aplicado.
+     */
+    public int getPending() {
+        lock.lock();
+        try {
+            return deadlines.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getFinished() {
+        return finished.sum();
+    }
+
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    /**
+     * Vencimientos que al llegar ya no tenían nada que hacer.
+     */
+    public long getDiscarded() {
+        return discarded.sum();
+    }
+
+    /**
+     * Vencimientos cuyo cambio lanzó una excepción.
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pending=%d finished=%d expired=%d discarded=%d failures=%d",
+                getPending(), getFinished(), getExpired(), getDiscarded(), getFailures());
+    }
+}
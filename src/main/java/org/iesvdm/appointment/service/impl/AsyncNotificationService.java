@@ -0,0 +1,397 @@
+package org.iesvdm.appointment.service.impl;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.entity.ExchangeStatus;
+import org.iesvdm.appointment.service.NotificationService;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * NotificationService que encola los avisos y los entrega otro hilo, para
+ * que el intercambio no espere al correo.
+ *
+ * Al encolar se fija el destinatario y se copia la petición con sus citas,
+ * así que un intercambio aceptado después no cambia a quién ni qué se avisa.
+ * Mientras un aviso espera en la cola, otro del mismo suceso (tipo de aviso y
+ * petición) para el mismo destinatario no ocupa sitio: sustituye al que
+ * esperaba. La cola está acotada: si se llena, quien avisa espera a que haya
+ * hueco. El hilo de entrega saca hasta maxBatch avisos de golpe, los agrupa
+ * por destinatario y los pasa al servicio real con los métodos por lotes. Un
+ * fallo del servicio real se cuenta y no para la entrega de los demás.
+ */
+public class AsyncNotificationService implements NotificationService, AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_MAX_BATCH = 64;
+
+    private static final long POLL_MILLIS = 50;
+
+    private enum Kind { REQUESTED, ACCEPTED, REJECTED }
+
+    /**
+     * El suceso y su destinatario. Sin ids no se puede saber qué suceso es, y
+     * unique hace distinto a cada aviso.
+     */
+    private record Key(Integer recipient, Kind kind, Integer first, Integer second, boolean sendEmail, Object unique) {
+    }
+
+    private static final class Notification {
+
+        private final Key key;
+        private final long enqueuedNanos;
+        private ExchangeRequest exchangeRequest;
+
+        Notification(Key key, ExchangeRequest exchangeRequest, long enqueuedNanos) {
+            this.key = key;
+            this.exchangeRequest = exchangeRequest;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    private final NotificationService delegate;
+    private final int capacity;
+    private final int maxBatch;
+    private final Thread worker;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<Notification> queue = new ArrayDeque<>();
+    private final Map<Key, Notification> queued = new HashMap<>();
+    private boolean closed;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder backpressureWaits = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Entrega desde un hilo virtual.
+     */
+    public AsyncNotificationService(NotificationService delegate) {
+        this(delegate, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH, Thread.ofVirtual().factory());
+    }
+
+    /**
+     * @param threadFactory crea el hilo de entrega.
+     */
+    public AsyncNotificationService(NotificationService delegate, int capacity, int maxBatch, ThreadFactory threadFactory) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("Max batch must be at least 1: " + maxBatch);
+        }
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.maxBatch = maxBatch;
+        this.worker = threadFactory.newThread(this::run);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    @Override
+    public void newExchangeRequestedNotification(Appointment oldAppointment, Appointment newAppointment, boolean sendEmail) {
+        enqueue(Kind.REQUESTED, new ExchangeRequest(oldAppointment, newAppointment, ExchangeStatus.PENDING), sendEmail);
+    }
+
+    @Override
+    public void newExchangeAcceptedNotification(ExchangeRequest exchangeRequest, boolean sendEmail) {
+        enqueue(Kind.ACCEPTED, exchangeRequest, sendEmail);
+    }
+
+    @Override
+    public void newExchangeRejectedNotification(ExchangeRequest exchangeRequest, boolean sendEmail) {
+        enqueue(Kind.REJECTED, exchangeRequest, sendEmail);
+    }
+
+    @Override
+    public void newExchangesRequestedNotification(List<ExchangeRequest> exchangeRequests, boolean sendEmail) {
+        for (ExchangeRequest exchangeRequest : exchangeRequests) {
+            enqueue(Kind.REQUESTED, exchangeRequest, sendEmail);
+        }
+    }
+
+    @Override
+    public void newExchangesAcceptedNotification(List<ExchangeRequest> exchangeRequests, boolean sendEmail) {
+        for (ExchangeRequest exchangeRequest : exchangeRequests) {
+            enqueue(Kind.ACCEPTED, exchangeRequest, sendEmail);
+        }
+    }
+
+    @Override
+    public void newExchangesRejectedNotification(List<ExchangeRequest> exchangeRequests, boolean sendEmail) {
+        for (ExchangeRequest exchangeRequest : exchangeRequests) {
+            enqueue(Kind.REJECTED, exchangeRequest, sendEmail);
+        }
+    }
+
+    /**
+     * Comprueba closed y encola con el mismo cerrojo, así que lo que se acepta
+     * antes de close() se entrega siempre.
+     */
+    private void enqueue(Kind kind, ExchangeRequest exchangeRequest, boolean sendEmail) {
+        long enqueuedNanos = System.nanoTime();
+        ExchangeRequest snapshot = snapshot(exchangeRequest);
+        Key key = keyOf(kind, snapshot, sendEmail);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Notification service is closed");
+            }
+            Notification waiting = queued.get(key);
+            if (waiting != null) {
+                waiting.exchangeRequest = snapshot;
+                coalesced.increment();
+                return;
+            }
+            if (queue.size() >= capacity) {
+                backpressureWaits.increment();
+                while (queue.size() >= capacity) {
+                    notFull.await();
+                    if (closed) {
+                        throw new IllegalStateException("Notification service is closed");
+                    }
+                }
+            }
+            Notification added = new Notification(key, snapshot, enqueuedNanos);
+            queue.add(added);
+            queued.put(key, added);
+            pending.incrementAndGet();
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the notification queue", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Si interrumpen el hilo, el servicio se cierra como con close(): deja de
+     * aceptar avisos, entrega los que quedan y el hilo acaba con la marca de
+     * interrumpido.
+     */
+    private void run() {
+        List<Notification> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            lock.lock();
+            try {
+                while (queue.isEmpty() && !closed) {
+                    notEmpty.await(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+                while (batch.size() < maxBatch && !queue.isEmpty()) {
+                    Notification notification = queue.poll();
+                    queued.remove(notification.key);
+                    batch.add(notification);
+                }
+                notFull.signalAll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closed = true;
+                notFull.signalAll();
+                continue;
+            } finally {
+                lock.unlock();
+            }
+            deliver(batch);
+            if (pending.addAndGet(-batch.size()) == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void deliver(List<Notification> batch) {
+        Map<Integer, List<Notification>> byRecipient = new LinkedHashMap<>();
+        for (Notification notification : batch) {
+            byRecipient.computeIfAbsent(notification.key.recipient(), r -> new ArrayList<>()).add(notification);
+        }
+
+        long now = System.nanoTime();
+        for (List<Notification> notifications : byRecipient.values()) {
+            Map<Kind, List<ExchangeRequest>> withEmail = new EnumMap<>(Kind.class);
+            Map<Kind, List<ExchangeRequest>> withoutEmail = new EnumMap<>(Kind.class);
+            for (Notification notification : notifications) {
+                (notification.key.sendEmail() ? withEmail : withoutEmail)
+                        .computeIfAbsent(notification.key.kind(), k -> new ArrayList<>())
+                        .add(notification.exchangeRequest);
+                long latency = now - notification.enqueuedNanos;
+                latencyNanos.add(latency);
+                maxLatencyNanos.accumulate(latency);
+            }
+            send(withEmail, true);
+            send(withoutEmail, false);
+        }
+    }
+
+    private void send(Map<Kind, List<ExchangeRequest>> byKind, boolean sendEmail) {
+        for (Map.Entry<Kind, List<ExchangeRequest>> entry : byKind.entrySet()) {
+            List<ExchangeRequest> exchangeRequests = entry.getValue();
+            try {
+                switch (entry.getKey()) {
+                    case REQUESTED -> delegate.newExchangesRequestedNotification(exchangeRequests, sendEmail);
+                    case ACCEPTED -> delegate.newExchangesAcceptedNotification(exchangeRequests, sendEmail);
+                    case REJECTED -> delegate.newExchangesRejectedNotification(exchangeRequests, sendEmail);
+                }
+                delivered.add(exchangeRequests.size());
+            } catch (RuntimeException e) {
+                failures.add(exchangeRequests.size());
+            }
+        }
+    }
+
+    /**
+     * Copia de la petición y sus citas tal como están ahora.
+     */
+    private static ExchangeRequest snapshot(ExchangeRequest exchangeRequest) {
+        ExchangeRequest copy = new ExchangeRequest(snapshot(exchangeRequest.getRequestor()),
+                snapshot(exchangeRequest.getRequested()), exchangeRequest.getStatus());
+        copy.setId(exchangeRequest.getId());
+        return copy;
+    }
+
+    private static Appointment snapshot(Appointment appointment) {
+        if (appointment == null) {
+            return null;
+        }
+        return Appointment.detached(appointment.getId(), appointment.getStart(), appointment.getEnd(),
+                appointment.getCanceledAt(), appointment.getCanceler(), appointment.getStatus(),
+                appointment.getCustomer(), null);
+    }
+
+    /**
+     * Cliente al que va el aviso: al pedir, el dueño de la cita pedida; al
+     * aceptar, el que pidió, que ya es el dueño de la cita pedida; al
+     * rechazar, el que pidió.
+     */
+    private static Integer recipientOf(Kind kind, ExchangeRequest exchangeRequest) {
+        Appointment appointment = kind == Kind.REJECTED
+                ? exchangeRequest.getRequestor()
+                : exchangeRequest.getRequested();
+        Customer customer = appointment == null ? null : appointment.getCustomer();
+        return customer == null ? null : customer.getId();
+    }
+
+    private static Key keyOf(Kind kind, ExchangeRequest exchangeRequest, boolean sendEmail) {
+        Integer recipient = recipientOf(kind, exchangeRequest);
+        if (kind != Kind.REQUESTED && exchangeRequest.getId() != null) {
+            return new Key(recipient, kind, exchangeRequest.getId(), null, sendEmail, null);
+        }
+        Appointment requestor = exchangeRequest.getRequestor();
+        Appointment requested = exchangeRequest.getRequested();
+        if (requestor == null || requested == null || requestor.getId() == null || requested.getId() == null) {
+            return new Key(recipient, kind, null, null, sendEmail, new Object());
+        }
+        return new Key(recipient, kind, requestor.getId(), requested.getId(), sendEmail, null);
+    }
+
+    /**
+     * Espera a que se hayan entregado todos los avisos encolados hasta ahora.
+     *
+     * @return false si se acabó el tiempo antes.
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (pending.get() > 0) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Deja de aceptar avisos y espera a que se entreguen los que quedan. Si
+     * interrumpen la espera, vuelve con el hilo marcado como interrumpido.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Avisos encolados o entregándose.
+     */
+    public long getQueueDepth() {
+        return pending.get();
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    /**
+     * Avisos que sustituyeron a otro del mismo suceso y destinatario que
+     * aún esperaba en la cola.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Veces que un aviso tuvo que esperar porque la cola estaba llena.
+     */
+    public long getBackpressureWaits() {
+        return backpressureWaits.sum();
+    }
+
+    public double getMeanLatencyNanos() {
+        long n = getDelivered() + getFailures();
+        return n == 0 ? 0 : (double) latencyNanos.sum() / n;
+    }
+
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("queued=%d delivered=%d coalesced=%d failures=%d backpressure=%d meanLatency=%.1fus maxLatency=%.1fus",
+                getQueueDepth(), getDelivered(), getCoalesced(), getFailures(), getBackpressureWaits(),
+                getMeanLatencyNanos() / 1e3, getMaxLatencyNanos() / 1e3);
+    }
+}
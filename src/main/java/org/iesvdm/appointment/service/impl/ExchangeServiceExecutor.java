@@ -0,0 +1,234 @@
+package org.iesvdm.appointment.service.impl;
+
+import org.iesvdm.appointment.service.ExchangeService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Frente de ExchangeService que ejecuta cada operación en su propio hilo
+ * virtual y devuelve un CompletableFuture con el resultado.
+ *
+ * Las operaciones de un mismo usuario se encadenan: cada una empieza cuando
+ * termina la anterior, en el orden en que se enviaron, así que dos
+ * operaciones de un usuario nunca se cruzan; las de usuarios distintos van en
+ * paralelo. Mientras espera su turno una operación no ocupa ningún hilo. Que
+ * una falle no impide que sigan las demás.
+ *
+ * submit comprueba closed y se pone a la cola con el mismo cerrojo con el que
+ * close() marca closed, así que close() espera a todo lo que se aceptó antes.
+ */
+public class ExchangeServiceExecutor implements AutoCloseable {
+
+    public static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final ExchangeService exchangeService;
+    private final Executor executor;
+    private final ExecutorService owned;
+    private final ConcurrentMap<Integer, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    private boolean closed;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private final AtomicLong inFlight = new AtomicLong();
+
+    /**
+     * Con un hilo virtual por operación, que se cierra con close().
+     */
+    public ExchangeServiceExecutor(ExchangeService exchangeService) {
+        this(exchangeService, Executors.newVirtualThreadPerTaskExecutor(), true);
+    }
+
+    /**
+     * @param executor donde se ejecutan las operaciones; no se cierra con
+     *                 close().
+     */
+    public ExchangeServiceExecutor(ExchangeService exchangeService, Executor executor) {
+        this(exchangeService, executor, false);
+    }
+
+    private ExchangeServiceExecutor(ExchangeService exchangeService, Executor executor, boolean owns) {
+        if (exchangeService == null || executor == null) {
+            throw new IllegalArgumentException("Exchange service and executor are required");
+        }
+        this.exchangeService = exchangeService;
+        this.executor = executor;
+        this.owned = owns ? (ExecutorService) executor : null;
+    }
+
+    public CompletableFuture<Boolean> requestExchange(int oldAppointmentId, int newAppointmentId, int userId) {
+        return submit(userId, service -> service.requestExchange(oldAppointmentId, newAppointmentId, userId));
+    }
+
+    public CompletableFuture<Boolean> acceptExchange(int exchangeId, int userId) {
+        return submit(userId, service -> service.acceptExchange(exchangeId, userId));
+    }
+
+    /**
+     * ExchangeService.rejectExchange no lleva usuario; aquí sólo sirve para
+     * ponerla en la cola de quien rechaza.
+     */
+    public CompletableFuture<Boolean> rejectExchange(int exchangeId, int userId) {
+        return submit(userId, service -> service.rejectExchange(exchangeId));
+    }
+
+    public CompletableFuture<Boolean> checkIfExchangeIsPossible(int oldAppointmentId, int newAppointmentId, int userId) {
+        return submit(userId, service -> service.checkIfExchangeIsPossible(oldAppointmentId, newAppointmentId, userId));
+    }
+
+    /**
+     * Ejecuta la operación en el turno del usuario. El future que se devuelve
+     * no controla la cola: cancelarlo no adelanta a la siguiente.
+     */
+    public <T> CompletableFuture<T> submit(int userId, Function<ExchangeService, T> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> tail;
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Exchange service executor is closed");
+            }
+            submitted.increment();
+            inFlight.incrementAndGet();
+            tail = tails.put(userId, done);
+        }
+        Runnable task = () -> run(userId, operation, result, done);
+        if (tail == null) {
+            dispatch(userId, task, result, done);
+        } else {
+            queued.increment();
+            tail.whenComplete((ignored, e) -> dispatch(userId, task, result, done));
+        }
+        return result;
+    }
+
+    private void dispatch(int userId, Runnable task, CompletableFuture<?> result, CompletableFuture<Void> done) {
+        try {
+            executor.execute(task);
+        } catch (RuntimeException e) {
+            failed.increment();
+            result.completeExceptionally(e);
+            finish(userId, done);
+        }
+    }
+
+    private <T> void run(int userId, Function<ExchangeService, T> operation, CompletableFuture<T> result,
+                         CompletableFuture<Void> done) {
+        try {
+            T value = operation.apply(exchangeService);
+            completed.increment();
+            result.complete(value);
+        } catch (Throwable e) {
+            failed.increment();
+            result.completeExceptionally(e);
+        } finally {
+            finish(userId, done);
+        }
+    }
+
+    /**
+     * Saca la operación de tails antes de dar paso a la siguiente, para que
+     * quien espere a done ya no la vea como activa.
+     */
+    private void finish(int userId, CompletableFuture<Void> done) {
+        inFlight.decrementAndGet();
+        tails.remove(userId, done);
+        done.complete(null);
+    }
+
+    /**
+     * Deja de aceptar operaciones, espera como mucho CLOSE_TIMEOUT_SECONDS a
+     * que terminen las enviadas y, si el executor es suyo, lo cierra. Las que
+     * no terminan a tiempo se cuentan en getAbandoned() y, si el executor es
+     * suyo, se interrumpen. Si interrumpen la espera, cierra el executor sin
+     * esperar y vuelve con el hilo marcado como interrumpido.
+     */
+    @Override
+    public void close() {
+        CompletableFuture<?>[] pending;
+        synchronized (lock) {
+            closed = true;
+            pending = tails.values().toArray(new CompletableFuture<?>[0]);
+        }
+        try {
+            CompletableFuture.allOf(pending).get(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (owned != null) {
+                owned.shutdown();
+                owned.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+        } catch (ExecutionException | TimeoutException e) {
+            abandoned.add(inFlight.get());
+            if (owned != null) {
+                owned.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (owned != null) {
+                owned.shutdown();
+            }
+        }
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    /**
+     * Operaciones que lanzaron excepción o que el executor no aceptó.
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Operaciones que tuvieron que esperar a otra del mismo usuario.
+     */
+    public long getQueued() {
+        return queued.sum();
+    }
+
+    /**
+     * Operaciones que seguían sin terminar cuando close() dejó de esperar.
+     */
+    public long getAbandoned() {
+        return abandoned.sum();
+    }
+
+    /**
+     * Operaciones enviadas que aún no han terminado.
+     */
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Usuarios con alguna operación sin terminar.
+     */
+    public int getActiveUsers() {
+        return tails.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("submitted=%d completed=%d failed=%d queued=%d abandoned=%d inFlight=%d activeUsers=%d",
+                getSubmitted(), getCompleted(), getFailed(), getQueued(), getAbandoned(), getInFlight(), getActiveUsers());
+    }
+}
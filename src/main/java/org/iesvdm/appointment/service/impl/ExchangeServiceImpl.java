@@ -1,13 +1,21 @@
 package org.iesvdm.appointment.service.impl;
 
 import org.iesvdm.appointment.entity.*;
+import org.iesvdm.appointment.repository.AppointmentCursor;
 import org.iesvdm.appointment.repository.AppointmentRepository;
 import org.iesvdm.appointment.repository.ExchangeRequestRepository;
+import org.iesvdm.appointment.service.ExchangeOutcome;
 import org.iesvdm.appointment.service.ExchangeService;
 import org.iesvdm.appointment.service.NotificationService;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 
 public class ExchangeServiceImpl implements ExchangeService {
@@ -15,6 +23,9 @@ public class ExchangeServiceImpl implements ExchangeService {
     private final AppointmentRepository appointmentRepository;
     private final NotificationService notificationService;
     private final ExchangeRequestRepository exchangeRequestRepository;
+    private final AppointmentLocks locks = new AppointmentLocks();
+    private final LongAdder staleExchanges = new LongAdder();
+    private volatile AppointmentSweeper sweeper;
 
     public ExchangeServiceImpl(AppointmentRepository appointmentRepository, NotificationService notificationService, ExchangeRequestRepository exchangeRequestRepository) {
         this.appointmentRepository = appointmentRepository;
@@ -37,32 +48,72 @@ public class ExchangeServiceImpl implements ExchangeService {
                 , appointmentToExchange.getCustomer().getId());
     }
 
+    @Override
+    public List<Appointment> getEligibleAppointmentsForExchange(int appointmentId, AppointmentCursor after, int limit) {
+        Appointment appointmentToExchange = appointmentRepository.getOne(appointmentId);
+        return appointmentRepository.getEligibleAppointmentsForExchange(LocalDateTime.now().plusHours(24),
+                appointmentToExchange.getCustomer().getId(), after, limit);
+    }
+
     @Override
     public boolean checkIfExchangeIsPossible(int oldAppointmentId, int newAppointmentId, int userId) {
         Appointment oldAppointment = appointmentRepository.getOne(oldAppointmentId);
         Appointment newAppointment = appointmentRepository.getOne(newAppointmentId);
         if (oldAppointment.getCustomer().getId() == userId) {
-            return  oldAppointment.getStart().minusHours(24).isAfter(LocalDateTime.now())
-                    && newAppointment.getStart().minusHours(24).isAfter(LocalDateTime.now());
+            return isExchangePossible(oldAppointment, newAppointment, LocalDateTime.now());
         } else {
             throw new RuntimeException("Unauthorized");
         }
 
     }
 
+    private boolean isExchangePossible(Appointment oldAppointment, Appointment newAppointment, LocalDateTime now) {
+        return  oldAppointment.getStart().minusHours(24).isAfter(now)
+                && newAppointment.getStart().minusHours(24).isAfter(now);
+    }
+
+    /**
+     * Si userId puede pedir ahora cambiar oldAppointment por newAppointment:
+     * la cita sigue programada, sigue siendo suya y el cambio es posible.
+     */
+    private boolean canRequest(Appointment oldAppointment, Appointment newAppointment, int userId, LocalDateTime now) {
+        return oldAppointment.getStatus() == AppointmentStatus.SCHEDULED
+                && oldAppointment.getCustomer() != null && oldAppointment.getCustomer().getId() == userId
+                && isExchangePossible(oldAppointment, newAppointment, now);
+    }
+
+    /**
+     * El intercambio se hace con las dos citas bloqueadas (AppointmentLocks),
+     * y dentro se comprueba de nuevo que la petición sigue sin resolver y que
+     * la cita pedida sigue siendo de userId: si otra aceptación se ha
+     * adelantado, devuelve false sin tocar nada.
+     */
     @Override
     public boolean acceptExchange(int exchangeId, int userId) {
         ExchangeRequest exchangeRequest = exchangeRequestRepository.getOne(exchangeId);
         Appointment requestor = exchangeRequest.getRequestor();
         Appointment requested = exchangeRequest.getRequested();
-        Customer tempCustomer = requestor.getCustomer();
-        requestor.setStatus(AppointmentStatus.SCHEDULED);
-        exchangeRequest.setStatus(ExchangeStatus.ACCEPTED);
-        requestor.setCustomer(requested.getCustomer());
-        requested.setCustomer(tempCustomer);
-        exchangeRequestRepository.save(exchangeRequest);
-        appointmentRepository.save(requested);
-        appointmentRepository.save(requestor);
+        boolean accepted = locks.withLocks(lockKey(requestor), lockKey(requested), () -> {
+            if (isResolved(exchangeRequest) || requested.getCustomer() == null
+                    || requested.getCustomer().getId() != userId) {
+                return false;
+            }
+            Customer tempCustomer = requestor.getCustomer();
+            requestor.setStatus(AppointmentStatus.SCHEDULED);
+            exchangeRequest.setStatus(ExchangeStatus.ACCEPTED);
+            requestor.setCustomer(requested.getCustomer());
+            requested.setCustomer(tempCustomer);
+            exchangeRequestRepository.save(exchangeRequest);
+            appointmentRepository.save(requested);
+            appointmentRepository.save(requestor);
+            return true;
+        });
+        if (!accepted) {
+            staleExchanges.increment();
+            return false;
+        }
+        schedule(requested);
+        schedule(requestor);
         notificationService.newExchangeAcceptedNotification(exchangeRequest, true);
         return true;
     }
@@ -71,26 +122,251 @@ public class ExchangeServiceImpl implements ExchangeService {
     public boolean rejectExchange(int exchangeId) {
         ExchangeRequest exchangeRequest = exchangeRequestRepository.getOne(exchangeId);
         Appointment requestor = exchangeRequest.getRequestor();
-        exchangeRequest.setStatus(ExchangeStatus.REJECTED);
-        requestor.setStatus(AppointmentStatus.SCHEDULED);
-        exchangeRequestRepository.save(exchangeRequest);
-        appointmentRepository.save(requestor);
+        boolean rejected = locks.withLock(lockKey(requestor), () -> {
+            if (isResolved(exchangeRequest)) {
+                return false;
+            }
+            exchangeRequest.setStatus(ExchangeStatus.REJECTED);
+            requestor.setStatus(AppointmentStatus.SCHEDULED);
+            exchangeRequestRepository.save(exchangeRequest);
+            appointmentRepository.save(requestor);
+            return true;
+        });
+        if (!rejected) {
+            staleExchanges.increment();
+            return false;
+        }
+        schedule(requestor);
         notificationService.newExchangeRejectedNotification(exchangeRequest, true);
         return true;
     }
 
+    /**
+     * Con las dos citas bloqueadas se vuelve a comprobar todo lo de
+     * checkIfExchangeIsPossible, porque entre medias otra operación ha podido
+     * aceptar un intercambio, finalizar la cita o pedir otro; en ese caso
+     * devuelve false sin tocar nada. La petición y la cita se guardan antes de
+     * soltar los cerrojos.
+     */
     @Override
     public boolean requestExchange(int oldAppointmentId, int newAppointmentId, int userId) {
         if (checkIfExchangeIsPossible(oldAppointmentId, newAppointmentId, userId)) {
             Appointment oldAppointment = appointmentRepository.getOne(oldAppointmentId);
             Appointment newAppointment = appointmentRepository.getOne(newAppointmentId);
-            oldAppointment.setStatus(AppointmentStatus.EXCHANGE_REQUESTED);
-            appointmentRepository.save(oldAppointment);
             ExchangeRequest exchangeRequest = new ExchangeRequest(oldAppointment, newAppointment, ExchangeStatus.PENDING);
-            exchangeRequestRepository.save(exchangeRequest);
+            boolean requested = locks.withLocks(oldAppointmentId, newAppointmentId, () -> {
+                if (!canRequest(oldAppointment, newAppointment, userId, LocalDateTime.now())) {
+                    return false;
+                }
+                oldAppointment.setStatus(AppointmentStatus.EXCHANGE_REQUESTED);
+                oldAppointment.setExchangeRequest(exchangeRequest);
+                exchangeRequestRepository.save(exchangeRequest);
+                appointmentRepository.save(oldAppointment);
+                return true;
+            });
+            if (!requested) {
+                staleExchanges.increment();
+                return false;
+            }
+            schedule(oldAppointment);
             notificationService.newExchangeRequestedNotification(oldAppointment, newAppointment, true);
             return true;
         }
         return false;
     }
+
+    /**
+     * Las comprobaciones, los cambios y los saveAll se hacen con las franjas
+     * de todas las citas del lote cogidas (AppointmentLocks.withAllLocks), así
+     * que nadie ve ni cambia las citas a medio guardar.
+     */
+    @Override
+    public List<ExchangeOutcome> requestExchanges(List<Request> requests) {
+        Set<Integer> ids = new HashSet<>();
+        for (Request request : requests) {
+            ids.add(request.oldAppointmentId());
+            ids.add(request.newAppointmentId());
+        }
+        Map<Integer, Appointment> appointments = appointmentRepository.findAllById(ids);
+
+        List<ExchangeOutcome> outcomes = new ArrayList<>(requests.size());
+        List<Appointment> changed = new ArrayList<>();
+        List<ExchangeRequest> created = new ArrayList<>();
+        locks.withAllLocks(appointments.keySet(), () -> {
+            LocalDateTime now = LocalDateTime.now();
+            for (Request request : requests) {
+                Appointment oldAppointment = appointments.get(request.oldAppointmentId());
+                Appointment newAppointment = appointments.get(request.newAppointmentId());
+                ExchangeOutcome outcome;
+                if (oldAppointment == null || newAppointment == null) {
+                    outcome = ExchangeOutcome.NOT_FOUND;
+                } else if (oldAppointment.getCustomer() == null || oldAppointment.getCustomer().getId() != request.userId()) {
+                    outcome = ExchangeOutcome.UNAUTHORIZED;
+                } else if (oldAppointment.getStatus() != AppointmentStatus.SCHEDULED) {
+                    staleExchanges.increment();
+                    outcome = ExchangeOutcome.STALE;
+                } else if (!isExchangePossible(oldAppointment, newAppointment, now)) {
+                    outcome = ExchangeOutcome.NOT_POSSIBLE;
+                } else {
+                    ExchangeRequest exchangeRequest = new ExchangeRequest(oldAppointment, newAppointment, ExchangeStatus.PENDING);
+                    oldAppointment.setStatus(AppointmentStatus.EXCHANGE_REQUESTED);
+                    oldAppointment.setExchangeRequest(exchangeRequest);
+                    changed.add(oldAppointment);
+                    created.add(exchangeRequest);
+                    outcome = ExchangeOutcome.DONE;
+                }
+                outcomes.add(outcome);
+            }
+            exchangeRequestRepository.saveAll(created);
+            appointmentRepository.saveAll(changed);
+            return null;
+        });
+
+        changed.forEach(this::schedule);
+        if (!created.isEmpty()) {
+            notificationService.newExchangesRequestedNotification(created, true);
+        }
+        return outcomes;
+    }
+
+    @Override
+    public List<ExchangeOutcome> acceptExchanges(List<Acceptance> acceptances) {
+        List<Integer> ids = new ArrayList<>(acceptances.size());
+        for (Acceptance acceptance : acceptances) {
+            ids.add(acceptance.exchangeId());
+        }
+        Map<Integer, ExchangeRequest> exchangeRequests = exchangeRequestRepository.findAllById(ids);
+        Set<Integer> lockKeys = new HashSet<>();
+        for (ExchangeRequest exchangeRequest : exchangeRequests.values()) {
+            lockKeys.add(lockKey(exchangeRequest.getRequestor()));
+            lockKeys.add(lockKey(exchangeRequest.getRequested()));
+        }
+
+        List<ExchangeOutcome> outcomes = new ArrayList<>(acceptances.size());
+        Map<Integer, Appointment> changed = new LinkedHashMap<>();
+        List<ExchangeRequest> accepted = new ArrayList<>();
+        locks.withAllLocks(lockKeys, () -> {
+            for (Acceptance acceptance : acceptances) {
+                ExchangeRequest exchangeRequest = exchangeRequests.get(acceptance.exchangeId());
+                if (exchangeRequest == null) {
+                    outcomes.add(ExchangeOutcome.NOT_FOUND);
+                    continue;
+                }
+                Appointment requestor = exchangeRequest.getRequestor();
+                Appointment requested = exchangeRequest.getRequested();
+                if (isResolved(exchangeRequest) || requested.getCustomer() == null
+                        || requested.getCustomer().getId() != acceptance.userId()) {
+                    staleExchanges.increment();
+                    outcomes.add(ExchangeOutcome.STALE);
+                    continue;
+                }
+                Customer tempCustomer = requestor.getCustomer();
+                requestor.setStatus(AppointmentStatus.SCHEDULED);
+                exchangeRequest.setStatus(ExchangeStatus.ACCEPTED);
+                requestor.setCustomer(requested.getCustomer());
+                requested.setCustomer(tempCustomer);
+                changed.put(lockKey(requested), requested);
+                changed.put(lockKey(requestor), requestor);
+                accepted.add(exchangeRequest);
+                outcomes.add(ExchangeOutcome.DONE);
+            }
+            exchangeRequestRepository.saveAll(accepted);
+            appointmentRepository.saveAll(changed.values());
+            return null;
+        });
+
+        changed.values().forEach(this::schedule);
+        if (!accepted.isEmpty()) {
+            notificationService.newExchangesAcceptedNotification(accepted, true);
+        }
+        return outcomes;
+    }
+
+    @Override
+    public List<ExchangeOutcome> rejectExchanges(List<Integer> exchangeIds) {
+        Map<Integer, ExchangeRequest> exchangeRequests = exchangeRequestRepository.findAllById(exchangeIds);
+        Set<Integer> lockKeys = new HashSet<>();
+        for (ExchangeRequest exchangeRequest : exchangeRequests.values()) {
+            lockKeys.add(lockKey(exchangeRequest.getRequestor()));
+        }
+
+        List<ExchangeOutcome> outcomes = new ArrayList<>(exchangeIds.size());
+        Map<Integer, Appointment> changed = new LinkedHashMap<>();
+        List<ExchangeRequest> rejected = new ArrayList<>();
+        locks.withAllLocks(lockKeys, () -> {
+            for (Integer exchangeId : exchangeIds) {
+                ExchangeRequest exchangeRequest = exchangeRequests.get(exchangeId);
+                if (exchangeRequest == null) {
+                    outcomes.add(ExchangeOutcome.NOT_FOUND);
+                    continue;
+                }
+                if (isResolved(exchangeRequest)) {
+                    staleExchanges.increment();
+                    outcomes.add(ExchangeOutcome.STALE);
+                    continue;
+                }
+                Appointment requestor = exchangeRequest.getRequestor();
+                exchangeRequest.setStatus(ExchangeStatus.REJECTED);
+                requestor.setStatus(AppointmentStatus.SCHEDULED);
+                changed.put(lockKey(requestor), requestor);
+                rejected.add(exchangeRequest);
+                outcomes.add(ExchangeOutcome.DONE);
+            }
+            exchangeRequestRepository.saveAll(rejected);
+            appointmentRepository.saveAll(changed.values());
+            return null;
+        });
+
+        changed.values().forEach(this::schedule);
+        if (!rejected.isEmpty()) {
+            notificationService.newExchangesRejectedNotification(rejected, true);
+        }
+        return outcomes;
+    }
+
+    /**
+     * Una petición sin estado se trata como pendiente.
+     */
+    private static boolean isResolved(ExchangeRequest exchangeRequest) {
+        return exchangeRequest.getStatus() != null && exchangeRequest.getStatus() != ExchangeStatus.PENDING;
+    }
+
+    private void schedule(Appointment appointment) {
+        AppointmentSweeper sweeper = this.sweeper;
+        if (sweeper != null) {
+            sweeper.schedule(appointment);
+        }
+    }
+
+    /**
+     * Las citas sin id comparten franja.
+     */
+    private static int lockKey(Appointment appointment) {
+        return appointment.getId() == null ? 0 : appointment.getId();
+    }
+
+    public AppointmentLocks getLocks() {
+        return locks;
+    }
+
+    /**
+     * Aceptaciones, rechazos y peticiones que no se hicieron porque otra
+     * operación concurrente ya había cambiado la petición o las citas.
+     */
+    public long getStaleExchanges() {
+        return staleExchanges.sum();
+    }
+
+    /**
+     * Con un AppointmentSweeper, cada cita que cambia un intercambio se
+     * apunta para caducar y terminar a su hora. Debe usar los mismos cerrojos
+     * (getLocks()).
+     */
+    public void setSweeper(AppointmentSweeper sweeper) {
+        this.sweeper = sweeper;
+    }
+
+    public AppointmentSweeper getSweeper() {
+        return sweeper;
+    }
 }
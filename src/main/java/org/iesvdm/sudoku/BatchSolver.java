@@ -0,0 +1,235 @@
+package org.iesvdm.sudoku;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Resuelve un fichero de tableros, uno por línea (N² caracteres en base 36,
+ * con '0' o '.' para las casillas vacías), y escribe las soluciones en el
+ * mismo orden, una por línea, o "unsolvable" si no la tiene. Las líneas con
+ * algún carácter que no es una cifra entre 1 y N, '0' ni '.' no se resuelven:
+ * se escribe "invalid".
+ *
+ * La entrada se lee por bloques desde un FileChannel y se reparte en lotes
+ * entre un pool de hilos. Sólo hay 2 * threads lotes en vuelo, de modo que la
+ * memoria no crece con el tamaño del fichero.
+ */
+public class BatchSolver {
+
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final byte[] UNSOLVABLE = "unsolvable\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INVALID = "invalid\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final int threads;
+    private final int chunkSize;
+
+    public BatchSolver(int threads, int chunkSize) {
+        if (threads < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("threads and chunkSize must be positive");
+        }
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    public Report solve(Path input, Path output) throws IOException {
+        LatencyHistogram latencies = new LatencyHistogram();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        long puzzles = 0;
+        Totals totals = new Totals();
+        long started = System.nanoTime();
+
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(output), 1 << 16)) {
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            byte[] line = new byte[25 * 25];
+            int lineLength = 0;
+            long lineNumber = 0;
+            Chunk chunk = null;
+
+            while (true) {
+                buffer.clear();
+                int read = channel.read(buffer);
+                boolean eof = read < 0;
+                buffer.flip();
+                while (buffer.hasRemaining() || eof) {
+                    boolean endOfLine = eof || buffer.get(buffer.position()) == '\n';
+                    if (!endOfLine) {
+                        byte b = buffer.get();
+                        if (b != '\r') {
+                            if (lineLength == line.length) {
+                                throw new IllegalArgumentException("Line " + (lineNumber + 1) + " is too long");
+                            }
+                            line[lineLength++] = b;
+                        }
+                        continue;
+                    }
+                    if (!eof) {
+                        buffer.get();
+                    }
+                    lineNumber++;
+                    if (lineLength > 0) {
+                        if (chunk == null) {
+                            chunk = new Chunk(lineLength, chunkSize);
+                        } else if (chunk.cells != lineLength) {
+                            throw new IllegalArgumentException("Line " + lineNumber + " has " + lineLength
+                                    + " cells, expected " + chunk.cells);
+                        }
+                        chunk.add(line);
+                        puzzles++;
+                        lineLength = 0;
+                        if (chunk.count == chunkSize) {
+                            submit(workers, inFlight, chunk, latencies, out, totals);
+                            chunk = new Chunk(chunk.cells, chunkSize);
+                        }
+                    }
+                    if (eof) {
+                        break;
+                    }
+                }
+                if (eof) {
+                    break;
+                }
+            }
+            if (chunk != null && chunk.count > 0) {
+                submit(workers, inFlight, chunk, latencies, out, totals);
+            }
+            while (!inFlight.isEmpty()) {
+                write(inFlight.poll(), out, totals);
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        return new Report(puzzles, totals.unsolvable, totals.invalid, System.nanoTime() - started, latencies);
+    }
+
+    private void submit(ExecutorService workers, ArrayDeque<Future<Chunk>> inFlight, Chunk chunk,
+                        LatencyHistogram latencies, OutputStream out, Totals totals) throws IOException {
+        if (inFlight.size() >= 2 * threads) {
+            write(inFlight.poll(), out, totals);
+        }
+        inFlight.add(workers.submit(() -> chunk.solve(latencies)));
+    }
+
+    private void write(Future<Chunk> future, OutputStream out, Totals totals) throws IOException {
+        Chunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for solver workers", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Solver worker failed", e.getCause());
+        }
+        out.write(chunk.output, 0, chunk.outputLength);
+        totals.unsolvable += chunk.unsolvable;
+        totals.invalid += chunk.invalid;
+    }
+
+    private static final class Totals {
+
+        long unsolvable;
+        long invalid;
+    }
+
+    private static final class Chunk {
+
+        final int cells;
+        final int gridSize;
+        final byte[] puzzles;
+        int count;
+        byte[] output;
+        int outputLength;
+        long unsolvable;
+        long invalid;
+
+        Chunk(int cells, int chunkSize) {
+            this.cells = cells;
+            this.gridSize = (int) Math.round(Math.sqrt(cells));
+            if (gridSize * gridSize != cells) {
+                throw new IllegalArgumentException("Line length " + cells + " is not a square grid");
+            }
+            Grid.boxSizeOf(gridSize);
+            this.puzzles = new byte[cells * chunkSize];
+        }
+
+        void add(byte[] line) {
+            System.arraycopy(line, 0, puzzles, count * cells, cells);
+            count++;
+        }
+
+        Chunk solve(LatencyHistogram latencies) {
+            SudokuWorkspace workspace = SudokuWorkspace.current(gridSize);
+            int[][] board = workspace.scratch();
+            output = new byte[count * Math.max(cells + 1, UNSOLVABLE.length)];
+
+            for (int p = 0; p < count; p++) {
+                if (!parse(p, board)) {
+                    invalid++;
+                    System.arraycopy(INVALID, 0, output, outputLength, INVALID.length);
+                    outputLength += INVALID.length;
+                    continue;
+                }
+                long start = System.nanoTime();
+                boolean solved = workspace.solve(board);
+                latencies.record(System.nanoTime() - start);
+
+                if (solved) {
+                    for (int i = 0; i < cells; i++) {
+                        output[outputLength++] = (byte) Character.forDigit(board[i / gridSize][i % gridSize], 36);
+                    }
+                    output[outputLength++] = '\n';
+                } else {
+                    unsolvable++;
+                    System.arraycopy(UNSOLVABLE, 0, output, outputLength, UNSOLVABLE.length);
+                    outputLength += UNSOLVABLE.length;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Copia el tablero p en board; devuelve false si tiene alguna casilla
+         * que no es '.' ni una cifra entre 0 y gridSize.
+         */
+        private boolean parse(int p, int[][] board) {
+            int offset = p * cells;
+            for (int i = 0; i < cells; i++) {
+                byte c = puzzles[offset + i];
+                int number = (c == '.') ? 0 : Character.digit(c, 36);
+                if (number < 0 || number > gridSize) {
+                    return false;
+                }
+                board[i / gridSize][i % gridSize] = number;
+            }
+            return true;
+        }
+    }
+
+    public record Report(long puzzles, long unsolvable, long invalid, long elapsedNanos,
+                         LatencyHistogram latencies) {
+
+        public double puzzlesPerSecond() {
+            return elapsedNanos == 0 ? 0 : puzzles * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d puzzles (%d unsolvable, %d invalid) in %.3f s, %.0f puzzles/s, solve latency %s",
+                    puzzles, unsolvable, invalid, elapsedNanos / 1e9, puzzlesPerSecond(), latencies);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package org.iesvdm.sudoku;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Solver que mantiene las cifras usadas en cada fila, columna y caja como
+ * máscaras de bits (bit n = cifra n usada). Las máscaras se actualizan al
+ * colocar y deshacer cada cifra, y en cada paso se elige la casilla vacía
+ * con menos candidatos (MRV).
+ */
+class BitmaskSolver {
+
+    private static final int ABORT_CHECK_INTERVAL = 1024;
+
+    private final int gridSize;
+    private final int fullMask;
+
+    private final Grid grid;
+    private final int[] rowMask;
+    private final int[] columnMask;
+    private final int[] boxMask;
+    private final int[] empties;
+    private int emptyCount;
+
+    private SolveStats stats;
+    private BooleanSupplier abort;
+    private int nodesUntilAbortCheck = ABORT_CHECK_INTERVAL;
+
+    BitmaskSolver(int gridSize) {
+        this.gridSize = gridSize;
+        this.fullMask = ((1 << (gridSize + 1)) - 1) & ~1;
+        this.grid = new Grid(gridSize);
+        this.rowMask = new int[gridSize];
+        this.columnMask = new int[gridSize];
+        this.boxMask = new int[gridSize];
+        this.empties = new int[gridSize * gridSize];
+    }
+
+    /**
+     * Copia el estado completo para seguir la búsqueda por otra rama.
+     */
+    BitmaskSolver(BitmaskSolver other) {
+        this(other.gridSize);
+        System.arraycopy(other.grid.cells, 0, grid.cells, 0, grid.cells.length);
+        System.arraycopy(other.rowMask, 0, rowMask, 0, gridSize);
+        System.arraycopy(other.columnMask, 0, columnMask, 0, gridSize);
+        System.arraycopy(other.boxMask, 0, boxMask, 0, gridSize);
+        System.arraycopy(other.empties, 0, empties, 0, other.emptyCount);
+        this.emptyCount = other.emptyCount;
+    }
+
+    boolean solve(int[][] board) {
+        load(board);
+        if (!search(0)) {
+            return false;
+        }
+        fillEmpties(board);
+        return true;
+    }
+
+    /**
+     * Como solve(board), acumulando los contadores en stats.
+     */
+    boolean solve(int[][] board, SolveStats stats) {
+        this.stats = stats;
+        try {
+            return solve(board);
+        } finally {
+            this.stats = null;
+        }
+    }
+
+    /**
+     * Cuenta soluciones parando en limit; con limit 2 basta para saber si la
+     * solución es única. No modifica el tablero.
+     */
+    int countSolutions(int[][] board, int limit) {
+        load(board);
+        return count(0, limit);
+    }
+
+    void setAbort(BooleanSupplier abort) {
+        this.abort = abort;
+    }
+
+    void setStats(SolveStats stats) {
+        this.stats = stats;
+    }
+
+    void load(int[][] board) {
+        grid.load(board);
+        Arrays.fill(rowMask, 0);
+        Arrays.fill(columnMask, 0);
+        Arrays.fill(boxMask, 0);
+        emptyCount = 0;
+        byte[] cells = grid.cells;
+        for (int cell = 0; cell < cells.length; cell++) {
+            int number = cells[cell];
+            if (number == 0) {
+                empties[emptyCount++] = cell;
+            } else if (number > 0) {
+                // Igual que isValidPlacement: las pistas repetidas no invalidan el tablero,
+                // sólo restringen los candidatos de las casillas vacías.
+                int row = cell / gridSize;
+                int column = cell % gridSize;
+                int bit = 1 << number;
+                rowMask[row] |= bit;
+                columnMask[column] |= bit;
+                boxMask[grid.box(row, column)] |= bit;
+            }
+        }
+    }
+
+    void fillEmpties(int[][] board) {
+        grid.fillEmpties(board);
+    }
+
+    int emptyCount() {
+        return emptyCount;
+    }
+
+    private int candidates(int cell) {
+        int row = cell / gridSize;
+        int column = cell % gridSize;
+        return fullMask & ~(rowMask[row] | columnMask[column] | boxMask[grid.box(row, column)]);
+    }
+
+    /**
+     * Mueve a empties[depth] la casilla con menos candidatos y devuelve su
+     * máscara de candidatos (0 si es un callejón sin salida).
+     */
+    int selectCell(int depth) {
+        int best = depth;
+        int bestCandidates = candidates(empties[depth]);
+        int bestCount = Integer.bitCount(bestCandidates);
+        int i = depth + 1;
+        for (; i < emptyCount && bestCount > 1; i++) {
+            int candidates = candidates(empties[i]);
+            int count = Integer.bitCount(candidates);
+            if (count < bestCount) {
+                best = i;
+                bestCandidates = candidates;
+                bestCount = count;
+            }
+        }
+        if (stats != null) {
+            stats.candidateChecks += i - depth;
+        }
+
+        int cell = empties[best];
+        empties[best] = empties[depth];
+        empties[depth] = cell;
+        return bestCandidates;
+    }
+
+    void place(int depth, int bit) {
+        int cell = empties[depth];
+        int row = cell / gridSize;
+        int column = cell % gridSize;
+        grid.cells[cell] = (byte) Integer.numberOfTrailingZeros(bit);
+        rowMask[row] |= bit;
+        columnMask[column] |= bit;
+        boxMask[grid.box(row, column)] |= bit;
+    }
+
+    void undo(int depth, int bit) {
+        int cell = empties[depth];
+        int row = cell / gridSize;
+        int column = cell % gridSize;
+        grid.cells[cell] = 0;
+        rowMask[row] &= ~bit;
+        columnMask[column] &= ~bit;
+        boxMask[grid.box(row, column)] &= ~bit;
+    }
+
+    boolean search(int depth) {
+        if (depth == emptyCount) {
+            return true;
+        }
+        if (abort != null && --nodesUntilAbortCheck == 0) {
+            nodesUntilAbortCheck = ABORT_CHECK_INTERVAL;
+            if (abort.getAsBoolean()) {
+                return false;
+            }
+        }
+        if (stats != null) {
+            stats.enter(depth);
+        }
+
+        int remaining = selectCell(depth);
+        while (remaining != 0) {
+            int bit = remaining & -remaining;
+            remaining ^= bit;
+
+            place(depth, bit);
+            if (search(depth + 1)) {
+                return true;
+            }
+            undo(depth, bit);
+            if (stats != null) {
+                stats.backtracks++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Como countSolutions, desde depth y con el estado que haya.
+     */
+    int count(int depth, int limit) {
+        if (depth == emptyCount) {
+            return 1;
+        }
+        int found = 0;
+        int remaining = selectCell(depth);
+        while (remaining != 0 && found < limit) {
+            int bit = remaining & -remaining;
+            remaining ^= bit;
+
+            place(depth, bit);
+            found += count(depth + 1, limit - found);
+            undo(depth, bit);
+        }
+        return found;
+    }
+}
@@ -0,0 +1,370 @@
+package org.iesvdm.sudoku;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Forma canónica de un tablero frente a las transformaciones que conservan
+ * la validez: trasponer (con las permutaciones cubre giros y reflexiones),
+ * permutar bandas y pilas, permutar filas dentro de cada banda y columnas
+ * dentro de cada pila, y renombrar cifras.
+ *
+ * Las filas y columnas se ordenan por invariantes (número de pistas y número
+ * de pistas de las líneas que cruzan) y sólo se prueban las permutaciones de
+ * las líneas empatadas; las cifras se renombran por orden de aparición. De
+ * todos los candidatos se queda el menor. Si los empates dan más de
+ * maxCandidates candidatos se prueban sólo los primeros: la clave sigue siendo
+ * correcta (dos tableros con la misma clave son equivalentes), aunque puede
+ * que dos tableros equivalentes no den la misma.
+ *
+ * Reutiliza sus buffers de una llamada a otra, así que no es thread-safe;
+ * SudokuWorkspace guarda uno por hilo y tamaño.
+ */
+class BoardCanonicalizer {
+
+    private final int gridSize;
+    private final int boxSize;
+    private final int maxCandidates;
+    private final int[][] transposed;
+    private final int[] rowCounts;
+    private final int[] columnCounts;
+    private final int[] labels;
+    private byte[] candidate;
+    private byte[] best;
+
+    BoardCanonicalizer(int gridSize, int maxCandidates) {
+        this.gridSize = gridSize;
+        this.boxSize = Grid.boxSizeOf(gridSize);
+        this.maxCandidates = maxCandidates;
+        this.transposed = new int[gridSize][gridSize];
+        this.rowCounts = new int[gridSize];
+        this.columnCounts = new int[gridSize];
+        this.labels = new int[gridSize + 1];
+        this.candidate = new byte[gridSize * gridSize];
+        this.best = new byte[gridSize * gridSize];
+    }
+
+    int getMaxCandidates() {
+        return maxCandidates;
+    }
+
+    /**
+     * Devuelve null si el tablero tiene valores fuera de 0..gridSize.
+     */
+    Canonical canonicalize(int[][] board) {
+        for (int[] row : board) {
+            for (int number : row) {
+                if (number < 0 || number > gridSize) {
+                    return null;
+                }
+            }
+        }
+
+        boolean found = false;
+        boolean bestTranspose = false;
+        int[] bestRowOrder = null;
+        int[] bestColumnOrder = null;
+        int budget = Math.max(1, maxCandidates / 2);
+        for (int pass = 0; pass < 2; pass++) {
+            boolean transpose = pass == 1;
+            int[][] view = transpose ? transpose(board) : board;
+            Arrays.fill(rowCounts, 0);
+            Arrays.fill(columnCounts, 0);
+            for (int r = 0; r < gridSize; r++) {
+                for (int c = 0; c < gridSize; c++) {
+                    if (view[r][c] != 0) {
+                        rowCounts[r]++;
+                        columnCounts[c]++;
+                    }
+                }
+            }
+            List<int[]> rowOrders = orders(lineKeys(view, true), budget);
+            List<int[]> columnOrders = orders(lineKeys(view, false),
+                    Math.max(1, budget / rowOrders.size()));
+
+            for (int[] rowOrder : rowOrders) {
+                for (int[] columnOrder : columnOrders) {
+                    if (encodeIfSmaller(view, rowOrder, columnOrder, found)) {
+                        byte[] smaller = candidate;
+                        candidate = best;
+                        best = smaller;
+                        found = true;
+                        bestTranspose = transpose;
+                        bestRowOrder = rowOrder;
+                        bestColumnOrder = columnOrder;
+                    }
+                }
+            }
+        }
+        Canonical canonical = new Canonical(best.clone(), bestTranspose, bestRowOrder, bestColumnOrder);
+        canonical.assignLabels(board);
+        return canonical;
+    }
+
+    private int[][] transpose(int[][] board) {
+        for (int r = 0; r < gridSize; r++) {
+            for (int c = 0; c < gridSize; c++) {
+                transposed[c][r] = board[r][c];
+            }
+        }
+        return transposed;
+    }
+
+    /**
+     * Clave de cada fila (o columna): su número de pistas seguido, en orden
+     * descendente, del número de pistas de las líneas que la cruzan en cada pista.
+     */
+    private int[][] lineKeys(int[][] view, boolean rows) {
+        int[][] keys = new int[gridSize][];
+        for (int line = 0; line < gridSize; line++) {
+            int count = rows ? rowCounts[line] : columnCounts[line];
+            int[] key = new int[count + 1];
+            key[0] = count;
+            int k = 1;
+            for (int cross = 0; cross < gridSize; cross++) {
+                int number = rows ? view[line][cross] : view[cross][line];
+                if (number != 0) {
+                    key[k++] = rows ? columnCounts[cross] : rowCounts[cross];
+                }
+            }
+            Arrays.sort(key, 1, key.length);
+            reverse(key, 1, key.length);
+            keys[line] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * Órdenes de líneas (posición canónica -> línea original) compatibles con
+     * las claves: bandas y líneas de cada banda en orden descendente de clave,
+     * probando todas las permutaciones de las empatadas, hasta limit órdenes.
+     */
+    private List<int[]> orders(int[][] lineKeys, int limit) {
+        Comparator<int[]> descending = (a, b) -> Arrays.compare(b, a);
+
+        int[][] bandKeys = new int[boxSize][];
+        List<List<List<Integer>>> bandLineTies = new ArrayList<>();
+        for (int band = 0; band < boxSize; band++) {
+            Integer[] lines = new Integer[boxSize];
+            for (int i = 0; i < boxSize; i++) {
+                lines[i] = band * boxSize + i;
+            }
+            Arrays.sort(lines, (a, b) -> descending.compare(lineKeys[a], lineKeys[b]));
+            List<List<Integer>> ties = tieGroups(lines, i -> lineKeys[i], descending);
+            bandLineTies.add(ties);
+            int length = 0;
+            for (Integer line : lines) {
+                length += lineKeys[line].length;
+            }
+            int[] bandKey = new int[length];
+            int k = 0;
+            for (Integer line : lines) {
+                System.arraycopy(lineKeys[line], 0, bandKey, k, lineKeys[line].length);
+                k += lineKeys[line].length;
+            }
+            bandKeys[band] = bandKey;
+        }
+
+        Integer[] bands = new Integer[boxSize];
+        for (int i = 0; i < boxSize; i++) {
+            bands[i] = i;
+        }
+        Arrays.sort(bands, (a, b) -> descending.compare(bandKeys[a], bandKeys[b]));
+        List<int[]> bandOrders = permuteGroups(tieGroups(bands, i -> bandKeys[i], descending), limit);
+
+        List<List<int[]>> lineOrdersPerBand = new ArrayList<>();
+        for (int band = 0; band < boxSize; band++) {
+            lineOrdersPerBand.add(permuteGroups(bandLineTies.get(band), limit));
+        }
+
+        List<int[]> orders = new ArrayList<>();
+        for (int[] bandOrder : bandOrders) {
+            combine(bandOrder, lineOrdersPerBand, 0, new int[gridSize], orders, limit);
+            if (orders.size() >= limit) {
+                break;
+            }
+        }
+        return orders;
+    }
+
+    private void combine(int[] bandOrder, List<List<int[]>> lineOrdersPerBand, int position, int[] order,
+                         List<int[]> orders, int limit) {
+        if (orders.size() >= limit) {
+            return;
+        }
+        if (position == boxSize) {
+            orders.add(order.clone());
+            return;
+        }
+        for (int[] lines : lineOrdersPerBand.get(bandOrder[position])) {
+            System.arraycopy(lines, 0, order, position * boxSize, boxSize);
+            combine(bandOrder, lineOrdersPerBand, position + 1, order, orders, limit);
+        }
+    }
+
+    private static List<List<Integer>> tieGroups(Integer[] sorted, IntFunction<int[]> key,
+                                                 Comparator<int[]> comparator) {
+        List<List<Integer>> groups = new ArrayList<>();
+        List<Integer> group = new ArrayList<>();
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0 && comparator.compare(key.apply(sorted[i - 1]), key.apply(sorted[i])) != 0) {
+                groups.add(group);
+                group = new ArrayList<>();
+            }
+            group.add(sorted[i]);
+        }
+        groups.add(group);
+        return groups;
+    }
+
+    /**
+     * Todas las secuencias que permutan cada grupo sin mover los grupos, hasta limit.
+     */
+    private static List<int[]> permuteGroups(List<List<Integer>> groups, int limit) {
+        List<Integer> members = new ArrayList<>();
+        List<Integer> groupStarts = new ArrayList<>();
+        List<Integer> groupEnds = new ArrayList<>();
+        for (List<Integer> group : groups) {
+            for (int i = 0; i < group.size(); i++) {
+                groupStarts.add(members.size());
+                groupEnds.add(members.size() + group.size());
+            }
+            members.addAll(group);
+        }
+        List<int[]> result = new ArrayList<>();
+        permute(members, groupStarts, groupEnds, 0, new int[members.size()], new boolean[members.size()], result, limit);
+        return result;
+    }
+
+    private static void permute(List<Integer> members, List<Integer> groupStarts, List<Integer> groupEnds,
+                                int position, int[] sequence, boolean[] used, List<int[]> result, int limit) {
+        if (result.size() >= limit) {
+            return;
+        }
+        if (position == sequence.length) {
+            result.add(sequence.clone());
+            return;
+        }
+        for (int i = groupStarts.get(position); i < groupEnds.get(position); i++) {
+            if (!used[i]) {
+                used[i] = true;
+                sequence[position] = members.get(i);
+                permute(members, groupStarts, groupEnds, position + 1, sequence, used, result, limit);
+                used[i] = false;
+            }
+        }
+    }
+
+    /**
+     * Codifica el candidato en candidate renombrando cifras por orden de
+     * aparición; devuelve false en cuanto se sabe que no es menor que best
+     * (si hasBest).
+     */
+    private boolean encodeIfSmaller(int[][] view, int[] rowOrder, int[] columnOrder, boolean hasBest) {
+        byte[] key = candidate;
+        Arrays.fill(labels, 0);
+        int nextLabel = 1;
+        boolean smaller = !hasBest;
+        for (int r = 0; r < gridSize; r++) {
+            for (int c = 0; c < gridSize; c++) {
+                int number = view[rowOrder[r]][columnOrder[c]];
+                if (number != 0) {
+                    if (labels[number] == 0) {
+                        labels[number] = nextLabel++;
+                    }
+                    number = labels[number];
+                }
+                int index = r * gridSize + c;
+                key[index] = (byte) number;
+                if (!smaller) {
+                    if (number > best[index]) {
+                        return false;
+                    }
+                    smaller = number < best[index];
+                }
+            }
+        }
+        return smaller;
+    }
+
+    private static void reverse(int[] values, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+
+    /**
+     * Clave canónica más la transformación que lleva del tablero original a
+     * ella, para traducir soluciones en ambos sentidos.
+     */
+    final class Canonical {
+
+        final byte[] key;
+        private final boolean transpose;
+        private final int[] rowOrder;
+        private final int[] columnOrder;
+        private final int[] labels = new int[gridSize + 1];
+        private final int[] numbers = new int[gridSize + 1];
+
+        private Canonical(byte[] key, boolean transpose, int[] rowOrder, int[] columnOrder) {
+            this.key = key;
+            this.transpose = transpose;
+            this.rowOrder = rowOrder;
+            this.columnOrder = columnOrder;
+        }
+
+        /**
+         * Las cifras que no aparecen en las pistas reciben las etiquetas
+         * restantes en orden creciente.
+         */
+        private void assignLabels(int[][] board) {
+            int nextLabel = 1;
+            for (int r = 0; r < gridSize; r++) {
+                for (int c = 0; c < gridSize; c++) {
+                    int number = valueAt(board, r, c);
+                    if (number != 0 && labels[number] == 0) {
+                        labels[number] = nextLabel++;
+                    }
+                }
+            }
+            for (int number = 1; number <= gridSize; number++) {
+                if (labels[number] == 0) {
+                    labels[number] = nextLabel++;
+                }
+                numbers[labels[number]] = number;
+            }
+        }
+
+        private int valueAt(int[][] board, int r, int c) {
+            return transpose ? board[columnOrder[c]][rowOrder[r]] : board[rowOrder[r]][columnOrder[c]];
+        }
+
+        byte[] encode(int[][] solution) {
+            byte[] canonical = new byte[gridSize * gridSize];
+            for (int r = 0; r < gridSize; r++) {
+                for (int c = 0; c < gridSize; c++) {
+                    canonical[r * gridSize + c] = (byte) labels[valueAt(solution, r, c)];
+                }
+            }
+            return canonical;
+        }
+
+        void decode(byte[] canonical, int[][] board) {
+            for (int r = 0; r < gridSize; r++) {
+                for (int c = 0; c < gridSize; c++) {
+                    int number = numbers[canonical[r * gridSize + c]];
+                    if (transpose) {
+                        board[columnOrder[c]][rowOrder[r]] = number;
+                    } else {
+                        board[rowOrder[r]][columnOrder[c]] = number;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package org.iesvdm.sudoku;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Solver por cobertura exacta (Algorithm X de Knuth con Dancing Links).
+ *
+ * Sólo se construyen las filas de las casillas vacías y las columnas de
+ * restricción que las pistas no satisfacen ya. Si una fila, columna o caja
+ * tiene pistas repetidas o fuera de rango, sus columnas de cifra pasan a ser
+ * secundarias (como mucho una vez), de modo que el resultado coincide con el
+ * de isValidPlacement.
+ */
+class DancingLinksSolver {
+
+    private static final Consumer<int[][]> KEEP_SOLUTION = board -> { };
+
+    private final int gridSize;
+    private final int boxSize;
+
+    private int[] left;
+    private int[] right;
+    private int[] up;
+    private int[] down;
+    private int[] column;
+    private int[] size;
+    private int[] rowCell;
+    private int[] rowNumber;
+    private int nodeCount;
+
+    private int[] chosen;
+
+    private final int[] rowUsed;
+    private final int[] columnUsed;
+    private final int[] boxUsed;
+    private final boolean[] rowExact;
+    private final boolean[] columnExact;
+    private final boolean[] boxExact;
+    private int[][] board;
+    private long limit;
+    private long found;
+    private Consumer<int[][]> consumer;
+    private SolveStats stats;
+
+    DancingLinksSolver(int gridSize) {
+        this.gridSize = gridSize;
+        this.boxSize = Grid.boxSizeOf(gridSize);
+        this.rowUsed = new int[gridSize];
+        this.columnUsed = new int[gridSize];
+        this.boxUsed = new int[gridSize];
+        this.rowExact = new boolean[gridSize];
+        this.columnExact = new boolean[gridSize];
+        this.boxExact = new boolean[gridSize];
+    }
+
+    /**
+     * La búsqueda sólo escribe las casillas vacías, y sólo al encontrar una
+     * solución, así que se resuelve directamente sobre board sin copiarlo.
+     */
+    boolean solve(int[][] board) {
+        return forEachSolution(board, 1, KEEP_SOLUTION) > 0;
+    }
+
+    /**
+     * Como solve(board), acumulando los contadores en stats.
+     */
+    boolean solve(int[][] board, SolveStats stats) {
+        this.stats = stats;
+        try {
+            return solve(board);
+        } finally {
+            this.stats = null;
+        }
+    }
+
+    /**
+     * Sin consumer la búsqueda no escribe en board.
+     */
+    long countSolutions(int[][] board, long limit) {
+        return forEachSolution(board, limit, null);
+    }
+
+    /**
+     * Recorre hasta limit soluciones. El tablero que recibe el consumer se
+     * reutiliza entre soluciones, así que hay que copiarlo si se quiere guardar.
+     */
+    long forEachSolution(int[][] board, long limit, Consumer<int[][]> consumer) {
+        this.board = board;
+        this.limit = limit;
+        this.found = 0;
+        this.consumer = consumer;
+        if (build()) {
+            search(0);
+        }
+        this.board = null;
+        this.consumer = null;
+        return found;
+    }
+
+    private int box(int row, int column) {
+        return (row / boxSize) * boxSize + column / boxSize;
+    }
+
+    /**
+     * Construye la matriz. Devuelve false si alguna casilla vacía no tiene
+     * candidatos, en cuyo caso no hay solución.
+     */
+    private boolean build() {
+        int n = gridSize;
+        Arrays.fill(rowUsed, 0);
+        Arrays.fill(columnUsed, 0);
+        Arrays.fill(boxUsed, 0);
+        Arrays.fill(rowExact, true);
+        Arrays.fill(columnExact, true);
+        Arrays.fill(boxExact, true);
+
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                int number = board[r][c];
+                if (number == 0) {
+                    continue;
+                }
+                int b = box(r, c);
+                if (number < 0 || number > n) {
+                    rowExact[r] = columnExact[c] = boxExact[b] = false;
+                    continue;
+                }
+                int bit = 1 << number;
+                if ((rowUsed[r] & bit) != 0) rowExact[r] = false;
+                if ((columnUsed[c] & bit) != 0) columnExact[c] = false;
+                if ((boxUsed[b] & bit) != 0) boxExact[b] = false;
+                rowUsed[r] |= bit;
+                columnUsed[c] |= bit;
+                boxUsed[b] |= bit;
+            }
+        }
+
+        // Columnas: [celda | fila-cifra | columna-cifra | caja-cifra], cada bloque n*n.
+        int headers = 4 * n * n;
+        int fullMask = ((1 << (n + 1)) - 1) & ~1;
+        int rows = 0;
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                if (board[r][c] == 0) {
+                    int candidates = fullMask & ~(rowUsed[r] | columnUsed[c] | boxUsed[box(r, c)]);
+                    if (candidates == 0) {
+                        return false;
+                    }
+                    rows += Integer.bitCount(candidates);
+                }
+            }
+        }
+
+        // Los arrays se reutilizan entre llamadas mientras quepa la matriz.
+        int capacity = headers + 1 + 4 * rows;
+        if (left == null || left.length < capacity) {
+            left = new int[capacity];
+            right = new int[capacity];
+            up = new int[capacity];
+            down = new int[capacity];
+            column = new int[capacity];
+            rowCell = new int[capacity];
+            rowNumber = new int[capacity];
+            size = new int[headers + 1];
+            chosen = new int[n * n];
+        } else {
+            Arrays.fill(size, 0);
+        }
+
+        left[0] = right[0] = 0;
+        for (int h = 1; h <= headers; h++) {
+            up[h] = down[h] = h;
+            column[h] = h;
+            left[h] = right[h] = h;
+        }
+
+        // Sólo las columnas primarias se enlazan a la raíz.
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                if (board[r][c] == 0) {
+                    linkHeader(1 + r * n + c);
+                }
+            }
+        }
+        for (int unit = 0; unit < n; unit++) {
+            for (int number = 1; number <= n; number++) {
+                int bit = 1 << number;
+                if (rowExact[unit] && (rowUsed[unit] & bit) == 0) {
+                    linkHeader(1 + n * n + unit * n + number - 1);
+                }
+                if (columnExact[unit] && (columnUsed[unit] & bit) == 0) {
+                    linkHeader(1 + 2 * n * n + unit * n + number - 1);
+                }
+                if (boxExact[unit] && (boxUsed[unit] & bit) == 0) {
+                    linkHeader(1 + 3 * n * n + unit * n + number - 1);
+                }
+            }
+        }
+
+        nodeCount = headers + 1;
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                if (board[r][c] != 0) {
+                    continue;
+                }
+                int b = box(r, c);
+                int candidates = fullMask & ~(rowUsed[r] | columnUsed[c] | boxUsed[b]);
+                while (candidates != 0) {
+                    int bit = candidates & -candidates;
+                    candidates ^= bit;
+                    int number = Integer.numberOfTrailingZeros(bit);
+                    int first = nodeCount;
+                    addNode(first, 1 + r * n + c, r * n + c, number);
+                    addNode(first, 1 + n * n + r * n + number - 1, r * n + c, number);
+                    addNode(first, 1 + 2 * n * n + c * n + number - 1, r * n + c, number);
+                    addNode(first, 1 + 3 * n * n + b * n + number - 1, r * n + c, number);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void linkHeader(int header) {
+        left[header] = left[0];
+        right[header] = 0;
+        right[left[0]] = header;
+        left[0] = header;
+    }
+
+    private void addNode(int first, int header, int cell, int number) {
+        int node = nodeCount++;
+        column[node] = header;
+        rowCell[node] = cell;
+        rowNumber[node] = number;
+
+        up[node] = up[header];
+        down[node] = header;
+        down[up[header]] = node;
+        up[header] = node;
+        size[header]++;
+
+        if (node == first) {
+            left[node] = right[node] = node;
+        } else {
+            left[node] = left[first];
+            right[node] = first;
+            right[left[first]] = node;
+            left[first] = node;
+        }
+    }
+
+    private void cover(int header) {
+        right[left[header]] = right[header];
+        left[right[header]] = left[header];
+        for (int i = down[header]; i != header; i = down[i]) {
+            for (int j = right[i]; j != i; j = right[j]) {
+                down[up[j]] = down[j];
+                up[down[j]] = up[j];
+                size[column[j]]--;
+            }
+        }
+    }
+
+    private void uncover(int header) {
+        for (int i = up[header]; i != header; i = up[i]) {
+            for (int j = left[i]; j != i; j = left[j]) {
+                size[column[j]]++;
+                down[up[j]] = j;
+                up[down[j]] = j;
+            }
+        }
+        right[left[header]] = header;
+        left[right[header]] = header;
+    }
+
+    private boolean search(int depth) {
+        if (right[0] == 0) {
+            found++;
+            if (consumer != null) {
+                for (int k = 0; k < depth; k++) {
+                    int node = chosen[k];
+                    board[rowCell[node] / gridSize][rowCell[node] % gridSize] = rowNumber[node];
+                }
+                consumer.accept(board);
+            }
+            return found >= limit;
+        }
+        if (stats != null) {
+            stats.enter(depth);
+        }
+
+        int best = right[0];
+        for (int h = right[best]; h != 0 && size[best] > 1; h = right[h]) {
+            if (stats != null) {
+                stats.candidateChecks++;
+            }
+            if (size[h] < size[best]) {
+                best = h;
+            }
+        }
+        if (size[best] == 0) {
+            return false;
+        }
+
+        cover(best);
+        for (int i = down[best]; i != best; i = down[i]) {
+            chosen[depth] = i;
+            for (int j = right[i]; j != i; j = right[j]) {
+                cover(column[j]);
+            }
+            boolean stop = search(depth + 1);
+            for (int j = left[i]; j != i; j = left[j]) {
+                uncover(column[j]);
+            }
+            if (stop) {
+                uncover(best);
+                return true;
+            }
+            if (stats != null) {
+                stats.backtracks++;
+            }
+        }
+        uncover(best);
+        return false;
+    }
+}
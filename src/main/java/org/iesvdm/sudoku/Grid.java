@@ -0,0 +1,62 @@
+package org.iesvdm.sudoku;
+
+/**
+ * Tablero compacto de lado N²: una casilla por byte en un array plano
+ * (fila * size + columna). 0 es casilla vacía y -1 un valor fuera de rango,
+ * que cuenta como ocupada pero no restringe a nadie.
+ */
+final class Grid {
+
+    final int size;
+    final int boxSize;
+    final byte[] cells;
+
+    Grid(int size) {
+        this.size = size;
+        this.boxSize = boxSizeOf(size);
+        this.cells = new byte[size * size];
+    }
+
+    static int boxSizeOf(int gridSize) {
+        int boxSize = (int) Math.round(Math.sqrt(gridSize));
+        if (gridSize < 1 || boxSize * boxSize != gridSize || gridSize > 25) {
+            throw new IllegalArgumentException("Grid size must be a perfect square between 1 and 25: " + gridSize);
+        }
+        return boxSize;
+    }
+
+    int get(int row, int column) {
+        return cells[row * size + column];
+    }
+
+    void set(int row, int column, int number) {
+        cells[row * size + column] = (byte) number;
+    }
+
+    int box(int row, int column) {
+        return (row / boxSize) * boxSize + column / boxSize;
+    }
+
+    void load(int[][] board) {
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                int number = board[row][column];
+                cells[row * size + column] = (byte) (number >= 0 && number <= size ? number : -1);
+            }
+        }
+    }
+
+    /**
+     * Vuelca al tablero las casillas que en él están vacías; las pistas,
+     * incluidas las fuera de rango, se dejan tal cual.
+     */
+    void fillEmpties(int[][] board) {
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                if (board[row][column] == 0) {
+                    board[row][column] = cells[row * size + column];
+                }
+            }
+        }
+    }
+}
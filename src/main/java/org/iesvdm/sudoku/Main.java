@@ -1,7 +1,17 @@
 package org.iesvdm.sudoku;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+
+        if (args.length >= 3 && args[0].equals("batch")) {
+            int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            BatchSolver batchSolver = new BatchSolver(threads, 1024);
+            System.out.println(batchSolver.solve(Path.of(args[1]), Path.of(args[2])));
+            return;
+        }
 
         Sudoku sudokuSolver = new Sudoku();
 
@@ -0,0 +1,209 @@
+package org.iesvdm.sudoku;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Versión fork-join del BitmaskSolver. Los primeros splitDepth niveles del
+ * árbol de búsqueda se reparten como subtareas (una por candidato) y el resto
+ * de cada rama se resuelve secuencialmente.
+ *
+ * Las ramas se esperan en el mismo orden en que las recorre el solver
+ * secuencial: en cuanto una da solución se cancelan las ramas a su derecha,
+ * se espera a que paren y se devuelve la primera solución por la izquierda.
+ *
+ * Esa solución es la misma que obtiene solveBoard() en modo BITMASK si se
+ * llega a ella siempre por la primera rama. Si no, puede no serlo: el solver
+ * secuencial empieza cada rama hermana con empties como lo dejó la anterior
+ * al fallar, y la copia de la rama lo tiene como quedó tras selectCell, así
+ * que pueden desempatar distinto. Las ramas de la izquierda no tienen
+ * solución con ningún orden, así que basta con que la rama más alta del
+ * camino que no es la primera de sus hermanas tenga una sola solución: se
+ * cuentan en paralelo y, si hay más, se resuelve otra vez secuencialmente.
+ */
+class ParallelSolver {
+
+    static final int DEFAULT_SPLIT_DEPTH = 4;
+
+    private final int gridSize;
+    private final ForkJoinPool pool;
+    private final int splitDepth;
+    private final SolveStats stats;
+
+    ParallelSolver(int gridSize, ForkJoinPool pool, int splitDepth) {
+        this(gridSize, pool, splitDepth, null);
+    }
+
+    /**
+     * Con stats no nulo cada rama cuenta en sus propios contadores y los
+     * suma a stats al terminar.
+     */
+    ParallelSolver(int gridSize, ForkJoinPool pool, int splitDepth, SolveStats stats) {
+        if (splitDepth < 0) {
+            throw new IllegalArgumentException("Split depth must not be negative: " + splitDepth);
+        }
+        this.gridSize = gridSize;
+        this.pool = pool;
+        this.splitDepth = splitDepth;
+        this.stats = stats;
+    }
+
+    boolean solve(int[][] board) {
+        BitmaskSolver root = new BitmaskSolver(gridSize);
+        root.load(board);
+        SolveTask task = new SolveTask(null, root, 0, 0);
+        BitmaskSolver solution = pool.invoke(task);
+        if (solution == null) {
+            return false;
+        }
+        if (task.late != null && pool.invoke(new CountTask(task.late.initialState(), task.late.depth)) > 1) {
+            return new BitmaskSolver(gridSize).solve(board, stats);
+        }
+        solution.fillEmpties(board);
+        return true;
+    }
+
+    /**
+     * Copia el estado y le pone el candidato bit en la casilla de depth, que
+     * selectCell ya ha dejado en empties[depth].
+     */
+    private static BitmaskSolver branch(BitmaskSolver state, int depth, int bit) {
+        BitmaskSolver branch = new BitmaskSolver(state);
+        branch.place(depth, bit);
+        return branch;
+    }
+
+    @SuppressWarnings("serial")
+    private class SolveTask extends RecursiveTask<BitmaskSolver> {
+
+        private final SolveTask parent;
+        private final BitmaskSolver state;
+        private final int depth;
+        private final int bit;
+        private volatile boolean aborted;
+        /**
+         * Con solución, la primera rama del camino hasta ella que no es la
+         * primera de sus hermanas, o null.
+         */
+        private SolveTask late;
+
+        SolveTask(SolveTask parent, BitmaskSolver state, int depth, int bit) {
+            this.parent = parent;
+            this.state = state;
+            this.depth = depth;
+            this.bit = bit;
+        }
+
+        boolean isAborted() {
+            for (SolveTask task = this; task != null; task = task.parent) {
+                if (task.aborted) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * El estado con el que empezó la rama; el de su padre no cambia
+         * después de repartir.
+         */
+        BitmaskSolver initialState() {
+            return branch(parent.state, parent.depth, bit);
+        }
+
+        @Override
+        protected BitmaskSolver compute() {
+            if (isAborted()) {
+                return null;
+            }
+            if (depth >= splitDepth || depth == state.emptyCount()) {
+                state.setAbort(this::isAborted);
+                if (stats == null) {
+                    return state.search(depth) ? state : null;
+                }
+                SolveStats branchStats = new SolveStats();
+                state.setStats(branchStats);
+                boolean solved = state.search(depth);
+                state.setStats(null);
+                stats.merge(branchStats);
+                return solved ? state : null;
+            }
+
+            if (stats != null) {
+                stats.enterShared(depth);
+            }
+            int remaining = state.selectCell(depth);
+            List<SolveTask> branches = new ArrayList<>(Integer.bitCount(remaining));
+            while (remaining != 0) {
+                int bit = remaining & -remaining;
+                remaining ^= bit;
+                branches.add(new SolveTask(this, branch(state, depth, bit), depth + 1, bit));
+            }
+            for (int i = branches.size() - 1; i > 0; i--) {
+                branches.get(i).fork();
+            }
+
+            for (int i = 0; i < branches.size(); i++) {
+                SolveTask branch = branches.get(i);
+                BitmaskSolver solution = (i == 0) ? branch.compute() : branch.join();
+                if (solution != null) {
+                    late = (i == 0) ? branch.late : branch;
+                    drain(branches.subList(i + 1, branches.size()));
+                    return solution;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Cancela las ramas y espera a las que ya habían empezado, para que
+         * ninguna siga sumando a stats después de solve.
+         */
+        private void drain(List<SolveTask> branches) {
+            for (SolveTask branch : branches) {
+                branch.aborted = true;
+            }
+            for (SolveTask branch : branches) {
+                branch.cancel(false);
+                branch.quietlyJoin();
+            }
+        }
+    }
+
+    /**
+     * Cuenta hasta 2 soluciones a partir de state, repartiendo igual que
+     * SolveTask.
+     */
+    @SuppressWarnings("serial")
+    private class CountTask extends RecursiveTask<Integer> {
+
+        private final BitmaskSolver state;
+        private final int depth;
+
+        CountTask(BitmaskSolver state, int depth) {
+            this.state = state;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (depth >= splitDepth || depth == state.emptyCount()) {
+                return state.count(depth, 2);
+            }
+            int remaining = state.selectCell(depth);
+            List<CountTask> branches = new ArrayList<>(Integer.bitCount(remaining));
+            while (remaining != 0) {
+                int bit = remaining & -remaining;
+                remaining ^= bit;
+                branches.add(new CountTask(branch(state, depth, bit), depth + 1));
+            }
+            int found = 0;
+            for (CountTask branch : invokeAll(branches)) {
+                found += branch.join();
+            }
+            return Math.min(found, 2);
+        }
+    }
+}
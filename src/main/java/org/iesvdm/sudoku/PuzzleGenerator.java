@@ -0,0 +1,226 @@
+package org.iesvdm.sudoku;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Generador de tableros en tiempo acotado. Parte de una rejilla completa
+ * válida (el tablero vacío resuelto probando los candidatos en orden
+ * aleatorio, y barajado después con transformaciones que conservan la
+ * validez) y quita pistas en orden aleatorio, devolviendo la pista si el
+ * tablero deja de tener solución única. Cada comprobación cuenta como mucho
+ * dos soluciones, y hay a lo sumo una por casilla.
+ */
+class PuzzleGenerator {
+
+    /**
+     * Nodos por casilla que puede gastar un intento de rellenar el tablero
+     * vacío antes de volver a empezar con otro orden.
+     */
+    private static final int FILL_NODES_PER_CELL = 8;
+
+    private final int gridSize;
+    private final int boxSize;
+    private final RandomGenerator random;
+    private final BitmaskSolver solver;
+    private final int[] cellOrder;
+    private final int[] digitOrder;
+    private final int[] bands;
+    private final int[] rows;
+    private final int[] columns;
+    private final int[] digits;
+    private final int[][] filled;
+    private int fillNodes;
+
+    PuzzleGenerator(int gridSize, RandomGenerator random) {
+        this.gridSize = gridSize;
+        this.boxSize = Grid.boxSizeOf(gridSize);
+        this.random = random;
+        this.solver = new BitmaskSolver(gridSize);
+        this.cellOrder = new int[gridSize * gridSize];
+        this.digitOrder = new int[gridSize];
+        this.bands = new int[boxSize];
+        this.rows = new int[gridSize];
+        this.columns = new int[gridSize];
+        this.digits = new int[gridSize + 1];
+        this.filled = new int[gridSize][gridSize];
+    }
+
+    void fullGrid(int[][] board) {
+        for (int[] row : filled) {
+            Arrays.fill(row, 0);
+        }
+        do {
+            solver.load(filled);
+            fillNodes = FILL_NODES_PER_CELL * gridSize * gridSize;
+        } while (!fill(0));
+        solver.fillEmpties(filled);
+
+        shuffleLines(rows);
+        shuffleLines(columns);
+        for (int i = 0; i < gridSize; i++) {
+            digits[i + 1] = i + 1;
+        }
+        shuffle(digits, 1, gridSize + 1);
+        boolean transpose = random.nextBoolean();
+
+        for (int row = 0; row < gridSize; row++) {
+            for (int column = 0; column < gridSize; column++) {
+                int number = digits[filled[rows[row]][columns[column]]];
+                if (transpose) {
+                    board[column][row] = number;
+                } else {
+                    board[row][column] = number;
+                }
+            }
+        }
+    }
+
+    /**
+     * Búsqueda del BitmaskSolver con los candidatos en orden aleatorio; false
+     * si no hay solución o se acaban los nodos del intento.
+     */
+    private boolean fill(int depth) {
+        if (depth == solver.emptyCount()) {
+            return true;
+        }
+        if (--fillNodes < 0) {
+            return false;
+        }
+        int remaining = solver.selectCell(depth);
+        while (remaining != 0) {
+            int bit = randomBit(remaining);
+            remaining ^= bit;
+            solver.place(depth, bit);
+            if (fill(depth + 1)) {
+                return true;
+            }
+            solver.undo(depth, bit);
+        }
+        return false;
+    }
+
+    private int randomBit(int mask) {
+        for (int skip = random.nextInt(Integer.bitCount(mask)); skip > 0; skip--) {
+            mask &= mask - 1;
+        }
+        return mask & -mask;
+    }
+
+    /**
+     * Tablero con solución única y numClues pistas. Si numClues está por
+     * debajo del mínimo alcanzable desde la rejilla elegida, se devuelve el
+     * tablero con menos pistas encontrado.
+     */
+    int[][] generate(int numClues) {
+        int[][] board = new int[gridSize][gridSize];
+        generate(board, numClues);
+        return board;
+    }
+
+    void generate(int[][] board, int numClues) {
+        fullGrid(board);
+        int clues = gridSize * gridSize;
+        shuffledCells();
+        for (int i = 0; i < cellOrder.length && clues > numClues; i++) {
+            int row = cellOrder[i] / gridSize;
+            int column = cellOrder[i] % gridSize;
+            int number = board[row][column];
+            board[row][column] = 0;
+            if (solver.countSolutions(board, 2) == 1) {
+                clues--;
+            } else {
+                board[row][column] = number;
+            }
+        }
+    }
+
+    /**
+     * Tablero sin solución con numClues pistas y sin cifras repetidas: se
+     * parte de un tablero único y se cambia una pista por otra cifra que
+     * isValidPlacement aceptaría, hasta que el tablero queda sin solución.
+     */
+    int[][] generateUnsolvable(int numClues) {
+        int[][] board = new int[gridSize][gridSize];
+        generateUnsolvable(board, numClues);
+        return board;
+    }
+
+    void generateUnsolvable(int[][] board, int numClues) {
+        generate(board, numClues);
+        shuffledCells();
+        for (int cell : cellOrder) {
+            int row = cell / gridSize;
+            int column = cell % gridSize;
+            int number = board[row][column];
+            if (number == 0) {
+                continue;
+            }
+            board[row][column] = 0;
+            int used = usedDigits(board, row, column);
+            shuffleDigits();
+            for (int candidate : digitOrder) {
+                if (candidate != number && (used & (1 << candidate)) == 0) {
+                    board[row][column] = candidate;
+                    if (solver.countSolutions(board, 1) == 0) {
+                        return;
+                    }
+                }
+            }
+            board[row][column] = number;
+        }
+        throw new IllegalArgumentException("No unsolvable board with " + numClues + " clues");
+    }
+
+    private int usedDigits(int[][] board, int row, int column) {
+        int used = 0;
+        int boxRow = row - row % boxSize;
+        int boxColumn = column - column % boxSize;
+        for (int i = 0; i < gridSize; i++) {
+            used |= 1 << board[row][i];
+            used |= 1 << board[i][column];
+            used |= 1 << board[boxRow + i / boxSize][boxColumn + i % boxSize];
+        }
+        return used;
+    }
+
+    /**
+     * Permutación de filas (o columnas) que conserva la geometría: baraja las
+     * bandas y las líneas dentro de cada banda.
+     */
+    private void shuffleLines(int[] lines) {
+        for (int i = 0; i < boxSize; i++) {
+            bands[i] = i;
+        }
+        shuffle(bands, 0, boxSize);
+        for (int band = 0; band < boxSize; band++) {
+            for (int i = 0; i < boxSize; i++) {
+                lines[band * boxSize + i] = bands[band] * boxSize + i;
+            }
+            shuffle(lines, band * boxSize, band * boxSize + boxSize);
+        }
+    }
+
+    private void shuffledCells() {
+        for (int i = 0; i < cellOrder.length; i++) {
+            cellOrder[i] = i;
+        }
+        shuffle(cellOrder, 0, cellOrder.length);
+    }
+
+    private void shuffleDigits() {
+        for (int i = 0; i < gridSize; i++) {
+            digitOrder[i] = i + 1;
+        }
+        shuffle(digitOrder, 0, gridSize);
+    }
+
+    private void shuffle(int[] values, int from, int to) {
+        for (int i = to - 1; i > from; i--) {
+            int j = from + random.nextInt(i - from + 1);
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+}
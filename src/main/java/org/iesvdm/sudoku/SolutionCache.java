@@ -0,0 +1,168 @@
+package org.iesvdm.sudoku;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché LRU de soluciones indexada por la forma canónica del tablero
+ * (BoardCanonicalizer), de modo que un tablero girado, reflejado, con bandas
+ * o pilas intercambiadas o con las cifras renombradas reutiliza la solución
+ * de otro ya resuelto. También guarda los tableros sin solución. Se puede
+ * compartir entre varios Sudoku y varios hilos.
+ */
+public class SolutionCache {
+
+    public static final int DEFAULT_MAX_CANDIDATES = 64;
+    public static final int MAX_CANDIDATES = 4096;
+
+    private static final byte[] UNSOLVABLE = new byte[0];
+
+    private final int maxEntries;
+    private final int maxCandidates;
+    private final LinkedHashMap<Key, byte[]> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder uncacheable = new LongAdder();
+
+    public SolutionCache(int maxEntries) {
+        this(maxEntries, DEFAULT_MAX_CANDIDATES);
+    }
+
+    /**
+     * maxCandidates acota las permutaciones que se prueban al canonizar un
+     * tablero con muchas filas o columnas indistinguibles, hasta MAX_CANDIDATES.
+     */
+    public SolutionCache(int maxEntries, int maxCandidates) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1: " + maxEntries);
+        }
+        if (maxCandidates < 1 || maxCandidates > MAX_CANDIDATES) {
+            throw new IllegalArgumentException("Max candidates must be between 1 and " + MAX_CANDIDATES + ": " + maxCandidates);
+        }
+        this.maxEntries = maxEntries;
+        this.maxCandidates = maxCandidates;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+                if (size() > SolutionCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Resuelve el tablero con solver si no está en la caché, con la misma
+     * semántica que solveBoard: rellena las casillas vacías y dice si hay
+     * solución. Canoniza con el canonizador del workspace del hilo.
+     */
+    boolean solve(int[][] board, int gridSize, Solver solver) {
+        BoardCanonicalizer.Canonical canonical =
+                SudokuWorkspace.current(gridSize).canonicalizer(maxCandidates).canonicalize(board);
+        if (canonical == null) {
+            uncacheable.increment();
+            return solver.solve(board);
+        }
+        Key key = new Key(canonical.key);
+        byte[] solution;
+        synchronized (entries) {
+            solution = entries.get(key);
+        }
+        if (solution != null) {
+            hits.increment();
+            if (solution == UNSOLVABLE) {
+                return false;
+            }
+            canonical.decode(solution, board);
+            return true;
+        }
+
+        misses.increment();
+        boolean solved = solver.solve(board);
+        solution = solved ? canonical.encode(board) : UNSOLVABLE;
+        synchronized (entries) {
+            entries.put(key, solution);
+        }
+        return solved;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Tableros con valores fuera de rango, que se resuelven sin pasar por la caché.
+     */
+    public long getUncacheable() {
+        return uncacheable.sum();
+    }
+
+    public double getHitRatio() {
+        long lookups = getHits() + getMisses();
+        return lookups == 0 ? 0 : (double) getHits() / lookups;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        uncacheable.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d/%d hits=%d misses=%d evictions=%d hitRatio=%.3f",
+                size(), maxEntries, getHits(), getMisses(), getEvictions(), getHitRatio());
+    }
+
+    interface Solver {
+        boolean solve(int[][] board);
+    }
+
+    private static final class Key {
+
+        private final byte[] cells;
+        private final int hash;
+
+        Key(byte[] cells) {
+            this.cells = cells;
+            this.hash = Arrays.hashCode(cells);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && hash == other.hash && Arrays.equals(cells, other.cells);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.iesvdm.sudoku;
+
+/**
+ * Contadores de una resolución. Los solvers sólo los actualizan cuando se les
+ * pasa una instancia; con null el bucle de búsqueda no cuenta nada.
+ */
+public class SolveStats {
+
+    long nodes;
+    long backtracks;
+    int maxDepth;
+    long candidateChecks;
+    long wallNanos;
+    boolean solved;
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getBacktracks() {
+        return backtracks;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getCandidateChecks() {
+        return candidateChecks;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public boolean isSolved() {
+        return solved;
+    }
+
+    void reset() {
+        nodes = 0;
+        backtracks = 0;
+        maxDepth = 0;
+        candidateChecks = 0;
+        wallNanos = 0;
+        solved = false;
+    }
+
+    void enter(int depth) {
+        nodes++;
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+    }
+
+    synchronized void enterShared(int depth) {
+        enter(depth);
+    }
+
+    synchronized void merge(SolveStats other) {
+        nodes += other.nodes;
+        backtracks += other.backtracks;
+        maxDepth = Math.max(maxDepth, other.maxDepth);
+        candidateChecks += other.candidateChecks;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("solved=%s nodes=%d backtracks=%d maxDepth=%d candidateChecks=%d time=%.1fus",
+                solved, nodes, backtracks, maxDepth, candidateChecks, wallNanos / 1e3);
+    }
+}
@@ -0,0 +1,8 @@
+package org.iesvdm.sudoku;
+
+public enum SolverMode {
+    BACKTRACKING,
+    BITMASK,
+    DANCING_LINKS,
+    PARALLEL
+}
@@ -0,0 +1,70 @@
+package org.iesvdm.sudoku;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Agregado de muchas resoluciones: histogramas de tiempo, nodos y vueltas
+ * atrás. Se puede compartir entre varios Sudoku y varios hilos.
+ */
+public class SolverStatistics {
+
+    private final LatencyHistogram wallTime = new LatencyHistogram();
+    private final LatencyHistogram nodes = new LatencyHistogram();
+    private final LatencyHistogram backtracks = new LatencyHistogram();
+    private final LongAdder solved = new LongAdder();
+    private final LongAdder candidateChecks = new LongAdder();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+
+    public void record(SolveStats stats) {
+        wallTime.record(stats.wallNanos);
+        nodes.record(stats.nodes);
+        backtracks.record(stats.backtracks);
+        candidateChecks.add(stats.candidateChecks);
+        maxDepth.accumulateAndGet(stats.maxDepth, Math::max);
+        if (stats.solved) {
+            solved.increment();
+        }
+    }
+
+    public long getSolves() {
+        return wallTime.getCount();
+    }
+
+    public long getSolved() {
+        return solved.sum();
+    }
+
+    public long getCandidateChecks() {
+        return candidateChecks.sum();
+    }
+
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    public LatencyHistogram getWallTime() {
+        return wallTime;
+    }
+
+    /**
+     * Histograma de nodos visitados por resolución (los valores son conteos,
+     * no nanosegundos).
+     */
+    public LatencyHistogram getNodes() {
+        return nodes;
+    }
+
+    public LatencyHistogram getBacktracks() {
+        return backtracks;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("solves=%d solved=%d maxDepth=%d%n  time: %s%n  nodes: mean=%.1f p50=%d p99=%d max=%d%n"
+                        + "  backtracks: mean=%.1f p50=%d p99=%d max=%d",
+                getSolves(), getSolved(), getMaxDepth(), wallTime,
+                nodes.getMean(), nodes.percentile(50), nodes.percentile(99), nodes.getMax(),
+                backtracks.getMean(), backtracks.percentile(50), backtracks.percentile(99), backtracks.getMax());
+    }
+}
@@ -1,10 +1,27 @@
 package org.iesvdm.sudoku;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
 public class Sudoku {
 
     private int gridSize = 9;
+    private int boxSize = 3;
     private int numClues = 63;
     private int[][] board;
+    private SolverMode solverMode = SolverMode.BITMASK;
+    /**
+     * Un pool por nivel de paralelismo, compartido por todos los Sudoku. Sus
+     * hilos son daemon y terminan solos cuando no tienen trabajo.
+     */
+    private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    private int parallelism = ForkJoinPool.getCommonPoolParallelism();
+    private SolveStats lastSolveStats;
+    private SolverStatistics statistics;
+    private SolutionCache solutionCache;
 
     public int getNumClues() {
         return numClues;
@@ -23,61 +40,100 @@ public class Sudoku {
         return gridSize;
     }
     public void setGridSize(int gridSize) {
+        this.boxSize = Grid.boxSizeOf(gridSize);
         this.gridSize = gridSize;
     }
+    public int getBoxSize() {
+        return boxSize;
+    }
+    public SolverMode getSolverMode() {
+        return solverMode;
+    }
+    public void setSolverMode(SolverMode solverMode) {
+        this.solverMode = solverMode;
+    }
+    public int getParallelism() {
+        return parallelism;
+    }
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
 
-    void fillBoardRandomly() {
-        board = new int[gridSize][gridSize];
-        for (int i = 0; i < gridSize; i++) {
-            for (int j = 0; j < gridSize; j++) {
-                board[i][j] = (int)(Math.random()*(gridSize+1));
+    /**
+     * Activa los contadores de cada resolución (getLastSolveStats) y su
+     * agregado (getStatistics). Desactivados, solveBoard no cuenta nada.
+     */
+    public void setStatisticsEnabled(boolean enabled) {
+        if (!enabled) {
+            lastSolveStats = null;
+            statistics = null;
+        } else if (lastSolveStats == null) {
+            lastSolveStats = new SolveStats();
+            if (statistics == null) {
+                statistics = new SolverStatistics();
             }
         }
     }
+    public boolean isStatisticsEnabled() {
+        return lastSolveStats != null;
+    }
+    public SolveStats getLastSolveStats() {
+        return lastSolveStats;
+    }
+    public SolverStatistics getStatistics() {
+        return statistics;
+    }
+    /**
+     * Permite agregar en un mismo SolverStatistics las resoluciones de varios Sudoku.
+     */
+    public void setStatistics(SolverStatistics statistics) {
+        this.statistics = statistics;
+        if (statistics != null && lastSolveStats == null) {
+            lastSolveStats = new SolveStats();
+        }
+    }
 
-    void fillBoardBasedInCluesRandomly(){
+    public SolutionCache getSolutionCache() {
+        return solutionCache;
+    }
+    /**
+     * Con una caché, solveBoard reutiliza la solución de cualquier tablero
+     * equivalente ya resuelto; null la desactiva.
+     */
+    public void setSolutionCache(SolutionCache solutionCache) {
+        this.solutionCache = solutionCache;
+    }
 
+    void fillBoardRandomly() {
         board = new int[gridSize][gridSize];
-        int cont = 0;
-        int i = 0;
-        int j = 0;
-        while (cont < numClues) {
-            i = (int) (Math.random() * gridSize);
-            j = (int) (Math.random() * gridSize);
-            if (board[i][j] == 0) {
-                board[i][j] = 1 + (int)(Math.random() * (gridSize));
-                cont++;
-            }
-        }
+        workspace().fillRandomly(board);
+    }
 
+    void fillBoardBasedInCluesRandomly(){
+        board = new int[gridSize][gridSize];
+        workspace().fillWithClues(board, numClues);
     }
 
     void fillBoardBasedInCluesRandomlySolvable() {
-        Sudoku sudoku = null;
-        do {
-                fillBoardBasedInCluesRandomly();
-                sudoku = new Sudoku();
-                sudoku.gridSize=gridSize;
-                sudoku.copyBoard(board);
-        }while(sudoku.solveBoard());
+        board = new int[gridSize][gridSize];
+        workspace().generate(board, numClues);
     }
 
     void fillBoardSolvable() {
-        Sudoku sudokuAux = new Sudoku();
-        sudokuAux.setGridSize(gridSize);
-        do {
-            sudokuAux.fillBoardRandomly();
-            copyBoard(sudokuAux.board);
-        } while(!sudokuAux.solveBoard());
+        board = new int[gridSize][gridSize];
+        workspace().generate(board, numClues);
     }
 
     void fillBoardUnsolvable() {
-        Sudoku sudokuAux = new Sudoku();
-        sudokuAux.setGridSize(gridSize);
-        do {
-            sudokuAux.fillBoardRandomly();
-            copyBoard(sudokuAux.board);
-        } while(sudokuAux.solveBoard());
+        board = new int[gridSize][gridSize];
+        workspace().generateUnsolvable(board, numClues);
+    }
+
+    private SudokuWorkspace workspace() {
+        return SudokuWorkspace.current(gridSize);
     }
 
     void copyBoard(int[][] boardSrc) {
@@ -92,15 +148,17 @@ public class Sudoku {
     }
 
     void printBoard() {
+        String separator = "-".repeat(gridSize + boxSize - 1);
         for (int row = 0; row < gridSize; row++) {
-            if (row % 3 == 0 && row != 0) {
-                System.out.println("-----------");
+            if (row % boxSize == 0 && row != 0) {
+                System.out.println(separator);
             }
             for (int column = 0; column < gridSize; column++) {
-                if (column % 3 == 0 && column != 0) {
+                if (column % boxSize == 0 && column != 0) {
                     System.out.print("|");
                 }
-                System.out.print(board[row][column]);
+                // Base 36 para que cada casilla ocupe un carácter también en 16x16 y 25x25.
+                System.out.print(Character.forDigit(board[row][column], 36));
             }
             System.out.println();
         }
@@ -126,11 +184,11 @@ public class Sudoku {
     }
 
     boolean isNumberInBox(int number, int row, int column) {
-        int localBoxRow = row - row % 3;
-        int localBoxColumn = column - column % 3;
+        int localBoxRow = row - row % boxSize;
+        int localBoxColumn = column - column % boxSize;
 
-        for (int i = localBoxRow; i < localBoxRow + 3; i++) {
-            for (int j = localBoxColumn; j < localBoxColumn + 3; j++) {
+        for (int i = localBoxRow; i < localBoxRow + boxSize; i++) {
+            for (int j = localBoxColumn; j < localBoxColumn + boxSize; j++) {
                 if (board[i][j] == number) {
                     return true;
                 }
@@ -146,6 +204,58 @@ public class Sudoku {
     }
 
     boolean solveBoard() {
+        if (lastSolveStats == null) {
+            return solveBoard(null);
+        }
+        lastSolveStats.reset();
+        long start = System.nanoTime();
+        boolean solved = solveBoard(lastSolveStats);
+        lastSolveStats.wallNanos = System.nanoTime() - start;
+        lastSolveStats.solved = solved;
+        statistics.record(lastSolveStats);
+        return solved;
+    }
+
+    /**
+     * En modo BACKTRACKING sólo se mide el tiempo. Un acierto de la caché no
+     * cuenta nodos.
+     */
+    private boolean solveBoard(SolveStats stats) {
+        if (solutionCache != null) {
+            return solutionCache.solve(board, gridSize, b -> solveBoardUncached(stats));
+        }
+        return solveBoardUncached(stats);
+    }
+
+    private boolean solveBoardUncached(SolveStats stats) {
+        return switch (solverMode) {
+            case BACKTRACKING -> solveBoardBacktracking();
+            case BITMASK -> workspace().solve(board, stats);
+            case DANCING_LINKS -> workspace().dancingLinks().solve(board, stats);
+            case PARALLEL -> new ParallelSolver(gridSize, pool(), ParallelSolver.DEFAULT_SPLIT_DEPTH, stats).solve(board);
+        };
+    }
+
+    private ForkJoinPool pool() {
+        if (parallelism == ForkJoinPool.getCommonPoolParallelism()) {
+            return ForkJoinPool.commonPool();
+        }
+        return POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+    }
+
+    long countSolutions(long limit) {
+        return workspace().dancingLinks().countSolutions(board, limit);
+    }
+
+    long forEachSolution(long limit, Consumer<int[][]> consumer) {
+        int[][] work = new int[gridSize][gridSize];
+        for (int i = 0; i < gridSize; i++) {
+            System.arraycopy(board[i], 0, work[i], 0, gridSize);
+        }
+        return workspace().dancingLinks().forEachSolution(work, limit, consumer);
+    }
+
+    boolean solveBoardBacktracking() {
         for (int row = 0; row < gridSize; row++) {
             for (int column = 0; column < gridSize; column++) {
                 if (board[row][column] == 0) {
@@ -153,7 +263,7 @@ public class Sudoku {
                         if (isValidPlacement( numberToTry, row, column)) {
                             board[row][column] = numberToTry;
 
-                            if (solveBoard()) {
+                            if (solveBoardBacktracking()) {
                                 return true;
                             }
                             else {
@@ -0,0 +1,124 @@
+package org.iesvdm.sudoku;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Estado reutilizable para resolver y generar tableros de un tamaño dado sin
+ * reservar memoria en cada llamada: los solvers, el generador y un tablero
+ * auxiliar. No es thread-safe; current() devuelve uno por hilo y
+ * tamaño, con ThreadLocalRandom como fuente aleatoria.
+ *
+ * Escribe en el tablero que se le pasa. Sudoku le pasa uno nuevo en cada
+ * fillBoard* y copyBoard, para no pisar el que ya tenga quien llamó a
+ * getBoard o setBoard; quien quiera no reservar memoria usa el workspace
+ * con su propio tablero.
+ */
+public class SudokuWorkspace {
+
+    private static final ThreadLocal<SudokuWorkspace[]> WORKSPACES =
+            ThreadLocal.withInitial(() -> new SudokuWorkspace[26]);
+
+    private final int gridSize;
+    private final BitmaskSolver solver;
+    private final DancingLinksSolver dancingLinks;
+    private final PuzzleGenerator generator;
+    private final RandomGenerator random;
+    private final int[][] scratch;
+    private BoardCanonicalizer canonicalizer;
+
+    public SudokuWorkspace(int gridSize, long seed) {
+        this(gridSize, new SplittableRandom(seed));
+    }
+
+    SudokuWorkspace(int gridSize, RandomGenerator random) {
+        this.gridSize = gridSize;
+        this.solver = new BitmaskSolver(gridSize);
+        this.dancingLinks = new DancingLinksSolver(gridSize);
+        this.generator = new PuzzleGenerator(gridSize, random);
+        this.random = random;
+        this.scratch = new int[gridSize][gridSize];
+    }
+
+    public static SudokuWorkspace current(int gridSize) {
+        SudokuWorkspace[] workspaces = WORKSPACES.get();
+        Grid.boxSizeOf(gridSize);
+        SudokuWorkspace workspace = workspaces[gridSize];
+        if (workspace == null) {
+            workspace = new SudokuWorkspace(gridSize, ThreadLocalRandom.current());
+            workspaces[gridSize] = workspace;
+        }
+        return workspace;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public boolean solve(int[][] board) {
+        return solver.solve(board);
+    }
+
+    public boolean solve(int[][] board, SolveStats stats) {
+        return solver.solve(board, stats);
+    }
+
+    public int countSolutions(int[][] board, int limit) {
+        return solver.countSolutions(board, limit);
+    }
+
+    public void generate(int[][] board, int numClues) {
+        generator.generate(board, numClues);
+    }
+
+    public void generateUnsolvable(int[][] board, int numClues) {
+        generator.generateUnsolvable(board, numClues);
+    }
+
+    public void fillRandomly(int[][] board) {
+        for (int i = 0; i < gridSize; i++) {
+            for (int j = 0; j < gridSize; j++) {
+                board[i][j] = random.nextInt(gridSize + 1);
+            }
+        }
+    }
+
+    public void fillWithClues(int[][] board, int numClues) {
+        for (int[] row : board) {
+            Arrays.fill(row, 0);
+        }
+        int clues = Math.min(numClues, gridSize * gridSize);
+        int cont = 0;
+        while (cont < clues) {
+            int i = random.nextInt(gridSize);
+            int j = random.nextInt(gridSize);
+            if (board[i][j] == 0) {
+                board[i][j] = 1 + random.nextInt(gridSize);
+                cont++;
+            }
+        }
+    }
+
+    DancingLinksSolver dancingLinks() {
+        return dancingLinks;
+    }
+
+    /**
+     * Canonizador del workspace; se crea otro sólo si cambia maxCandidates.
+     */
+    BoardCanonicalizer canonicalizer(int maxCandidates) {
+        if (canonicalizer == null || canonicalizer.getMaxCandidates() != maxCandidates) {
+            canonicalizer = new BoardCanonicalizer(gridSize, maxCandidates);
+        }
+        return canonicalizer;
+    }
+
+    /**
+     * Tablero auxiliar del workspace; se sobrescribe en cada uso.
+     */
+    int[][] scratch() {
+        return scratch;
+    }
+}
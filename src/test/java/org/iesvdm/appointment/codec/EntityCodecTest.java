@@ -0,0 +1,227 @@
+package org.iesvdm.appointment.codec;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.entity.ExchangeStatus;
+import org.iesvdm.appointment.entity.User;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class EntityCodecTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 6, 1, 8, 0);
+
+    private Customer customer1 = new Customer(1, "paco", "1234", new ArrayList<>());
+    private Customer customer2 = new Customer(2, "pepe", "1111", new ArrayList<>());
+    private User admin = new User(9, "admin", "secret");
+
+    /**
+     * Resuelve los ids con las entidades ya leídas.
+     */
+    private static class Registry implements EntityCodec.References {
+
+        final Map<Integer, User> users = new HashMap<>();
+        final Map<Integer, Appointment> appointments = new HashMap<>();
+        final Map<Integer, ExchangeRequest> exchangeRequests = new HashMap<>();
+
+        @Override
+        public User user(int id) {
+            return users.get(id);
+        }
+
+        @Override
+        public Customer customer(int id) {
+            return (Customer) users.get(id);
+        }
+
+        @Override
+        public Appointment appointment(int id) {
+            return appointments.get(id);
+        }
+
+        @Override
+        public ExchangeRequest exchangeRequest(int id) {
+            return exchangeRequests.computeIfAbsent(id, key -> EntityCodec.References.stubs().exchangeRequest(key));
+        }
+    }
+
+    private List<Appointment> appointments(int count) {
+        List<Appointment> appointments = new ArrayList<>();
+        for (int id = 0; id < count; id++) {
+            Customer customer = id % 2 == 0 ? customer1 : customer2;
+            Appointment appointment = new Appointment(BASE.plusHours(id), BASE.plusHours(id).plusMinutes(30), null, null,
+                    AppointmentStatus.SCHEDULED, customer, null);
+            appointment.setId(id);
+            customer.getAppointments().add(appointment);
+            appointments.add(appointment);
+        }
+        return appointments;
+    }
+
+    @Test
+    void roundTripTest() {
+        Appointment requestor = new Appointment(BASE, BASE.plusHours(1), BASE.minusDays(1), admin,
+                AppointmentStatus.EXCHANGE_REQUESTED, customer1, null);
+        requestor.setId(10);
+        Appointment requested = new Appointment(BASE.plusDays(1), null, null, null, null, customer2, null);
+        requested.setId(11);
+        ExchangeRequest exchangeRequest = new ExchangeRequest(requestor, requested, ExchangeStatus.PENDING);
+        exchangeRequest.setId(5);
+        requestor.setExchangeRequest(exchangeRequest);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        for (User user : List.of(customer1, customer2, admin)) {
+            EntityCodec.writeUser(buffer, user);
+        }
+        EntityCodec.writeAppointment(buffer, requestor);
+        EntityCodec.writeAppointment(buffer, requested);
+        EntityCodec.writeExchangeRequest(buffer, exchangeRequest);
+        assertThat(buffer.position()).isEqualTo(EntityCodec.userBytes(customer1) + EntityCodec.userBytes(customer2)
+                + EntityCodec.userBytes(admin) + 2 * EntityCodec.APPOINTMENT_BYTES + EntityCodec.EXCHANGE_REQUEST_BYTES);
+        buffer.flip();
+
+        Registry registry = new Registry();
+        for (int i = 0; i < 3; i++) {
+            User user = EntityCodec.readUser(buffer);
+            registry.users.put(user.getId(), user);
+        }
+        assertThat(registry.users.get(1)).isInstanceOf(Customer.class).extracting(User::getUserName).isEqualTo("paco");
+        assertThat(registry.users.get(9)).isNotInstanceOf(Customer.class);
+        assertThat(registry.users.values()).allMatch(user -> user.getPassword() == null);
+
+        Appointment readRequestor = EntityCodec.readAppointment(buffer, registry);
+        Appointment readRequested = EntityCodec.readAppointment(buffer, registry);
+        registry.appointments.put(10, readRequestor);
+        registry.appointments.put(11, readRequested);
+        ExchangeRequest readExchangeRequest = EntityCodec.readExchangeRequest(buffer, registry);
+        assertThat(buffer.hasRemaining()).isFalse();
+
+        assertThat(readRequestor).usingRecursiveComparison().ignoringFields("canceler", "customer", "exchangeRequest").isEqualTo(requestor);
+        assertThat(readRequestor.getCanceler()).isSameAs(registry.users.get(9));
+        assertThat(readRequestor.getCustomer()).isSameAs(registry.users.get(1));
+        assertThat(readRequested.getEnd()).isNull();
+        assertThat(readRequested.getStatus()).isNull();
+        assertThat(readRequested.getExchangeRequest()).isNull();
+        assertThat(readExchangeRequest.getRequestor()).isSameAs(readRequestor);
+        assertThat(readExchangeRequest.getRequested()).isSameAs(readRequested);
+        assertThat(readExchangeRequest.getStatus()).isEqualTo(ExchangeStatus.PENDING);
+        assertThat(readRequestor.getExchangeRequest()).extracting(ExchangeRequest::getId).isEqualTo(5);
+
+        assertThatThrownBy(() -> EntityCodec.writeAppointment(ByteBuffer.allocate(64), new Appointment()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Leer una cita da una copia que no toca la línea de tiempo de su
+     * cliente, aunque tenga el id de una cita viva.
+     */
+    @Test
+    void readDoesNotChangeTimelineTest() {
+        Appointment live = new Appointment(BASE, BASE.plusHours(1), null, null, AppointmentStatus.SCHEDULED, customer1, null);
+        live.setId(1);
+        customer1.getTimeline().add(live);
+        ByteBuffer buffer = ByteBuffer.allocate(EntityCodec.APPOINTMENT_BYTES);
+        EntityCodec.writeAppointment(buffer, Appointment.detached(1, BASE.plusDays(1), BASE.plusDays(1).plusHours(1),
+                null, null, AppointmentStatus.CANCELED, customer1, null));
+
+        Registry registry = new Registry();
+        registry.users.put(1, customer1);
+        Appointment copy = EntityCodec.readAppointment(buffer.flip(), registry);
+        Appointment stub = EntityCodec.References.stubs().appointment(1);
+
+        assertThat(copy.getStart()).isEqualTo(BASE.plusDays(1));
+        assertThat(copy.getCustomer()).isSameAs(customer1);
+        assertThat(stub.getId()).isEqualTo(1);
+        assertThat(customer1.getTimeline().toList()).containsExactly(live);
+        assertThat(customer1.getTimeline().get(1)).isSameAs(live);
+    }
+
+    @Test
+    void viewTest() {
+        List<Appointment> appointments = appointments(100);
+        appointments.get(7).setStatus(AppointmentStatus.CANCELED);
+        appointments.get(7).setCanceler(admin);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(appointments.size() * EntityCodec.APPOINTMENT_BYTES);
+        appointments.forEach(appointment -> EntityCodec.writeAppointment(buffer, appointment));
+        buffer.flip();
+
+        AppointmentView view = new AppointmentView(buffer);
+        assertThat(view.count()).isEqualTo(100);
+        int paco = 0;
+        for (int i = 0; i < view.count(); i++) {
+            view.at(i);
+            assertThat(view.getId()).isEqualTo(i);
+            assertThat(view.getStart()).isEqualTo(BASE.plusHours(i));
+            if (view.getCustomerId() == 1) {
+                paco++;
+            }
+        }
+        assertThat(paco).isEqualTo(50);
+        assertThat(view.at(7).getStatus()).isEqualTo(AppointmentStatus.CANCELED);
+        assertThat(view.getCancelerId()).isEqualTo(9);
+        assertThat(view.at(8).getCancelerId()).isEqualTo(-1);
+        assertThat(view.getCanceledAt()).isNull();
+        assertThat(buffer.position()).isZero();
+        assertThatThrownBy(() -> view.at(100)).isInstanceOf(IndexOutOfBoundsException.class);
+
+        ExchangeRequest exchangeRequest = new ExchangeRequest(appointments.get(1), appointments.get(2), ExchangeStatus.ACCEPTED);
+        exchangeRequest.setId(3);
+        ByteBuffer exchangeBuffer = ByteBuffer.allocate(EntityCodec.EXCHANGE_REQUEST_BYTES);
+        EntityCodec.writeExchangeRequest(exchangeBuffer, exchangeRequest);
+        ExchangeRequestView exchangeView = new ExchangeRequestView(exchangeBuffer.flip()).at(0);
+        assertThat(exchangeView.getId()).isEqualTo(3);
+        assertThat(exchangeView.getRequestorId()).isEqualTo(1);
+        assertThat(exchangeView.getRequestedId()).isEqualTo(2);
+        assertThat(exchangeView.getStatus()).isEqualTo(ExchangeStatus.ACCEPTED);
+    }
+
+    private record CustomerData(Integer id, String userName) implements Serializable {
+    }
+
+    private record AppointmentData(Integer id, LocalDateTime start, LocalDateTime end, AppointmentStatus status,
+                                   CustomerData customer) implements Serializable {
+    }
+
+    /**
+     * Las entidades no son Serializable; se compara con unos records con los
+     * mismos campos, cada cliente escrito una sola vez.
+     */
+    @Test
+    void smallerThanJavaSerializationTest() throws IOException {
+        List<Appointment> appointments = appointments(1000);
+
+        Map<Integer, CustomerData> customers = new HashMap<>();
+        ArrayList<AppointmentData> data = new ArrayList<>();
+        for (Appointment appointment : appointments) {
+            Customer customer = appointment.getCustomer();
+            data.add(new AppointmentData(appointment.getId(), appointment.getStart(), appointment.getEnd(), appointment.getStatus(),
+                    customers.computeIfAbsent(customer.getId(), id -> new CustomerData(id, customer.getUserName()))));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(data);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(appointments.size() * EntityCodec.APPOINTMENT_BYTES
+                + EntityCodec.userBytes(customer1) + EntityCodec.userBytes(customer2));
+        EntityCodec.writeUser(buffer, customer1);
+        EntityCodec.writeUser(buffer, customer2);
+        appointments.forEach(appointment -> EntityCodec.writeAppointment(buffer, appointment));
+
+        assertThat(buffer.position()).isLessThan(bytes.size() * 2 / 3);
+    }
+}
@@ -0,0 +1,116 @@
+package org.iesvdm.appointment.entity;
+
+import org.iesvdm.appointment.repository.impl.ExchangeRequestRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.IndexedAppointmentRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.TimelineAppointmentRepository;
+import org.iesvdm.appointment.service.NotificationService;
+import org.iesvdm.appointment.service.impl.ExchangeServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class AppointmentTimelineTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 6, 1, 8, 0);
+
+    private Customer customer1 = new Customer(1, "paco", "1234", new ArrayList<>());
+    private Customer customer2 = new Customer(2, "pepe", "1111", new ArrayList<>());
+
+    private final TimelineAppointmentRepository appointmentRepository =
+            new TimelineAppointmentRepository(new IndexedAppointmentRepositoryImpl());
+
+    private Appointment save(int id, LocalDateTime start, Customer customer) {
+        Appointment appointment = new Appointment(start, start.plusHours(1), null, null, AppointmentStatus.SCHEDULED, customer, null);
+        appointment.setId(id);
+        appointmentRepository.save(appointment);
+        return appointment;
+    }
+
+    /**
+     * La línea de tiempo sigue a lo que se guarda: ordenada por start, sin
+     * ids repetidos y con las consultas de siguiente, anterior y rango.
+     * Cambiar una cita sin guardarla no la toca.
+     */
+    @Test
+    void followsSavedAppointmentsTest() {
+        Appointment late = save(1, BASE.plusHours(5), customer1);
+        Appointment early = save(2, BASE.plusHours(1), customer1);
+        Appointment middle = save(3, BASE.plusHours(3), customer1);
+        AppointmentTimeline timeline = customer1.getTimeline();
+
+        assertThat(timeline.toList()).containsExactly(early, middle, late);
+        assertThat(customer1.getAppointments()).containsExactly(late, early, middle);
+        assertThat(timeline.get(3)).isSameAs(middle);
+        assertThat(timeline.next(BASE.plusHours(3))).isSameAs(middle);
+        assertThat(timeline.next(BASE.plusHours(6))).isNull();
+        assertThat(timeline.previous(BASE.plusHours(3))).isSameAs(early);
+        assertThat(timeline.previous(BASE)).isNull();
+        assertThat(timeline.between(BASE.plusHours(1), BASE.plusHours(5))).containsExactly(early, middle);
+
+        middle.setStart(BASE);
+        assertThat(timeline.toList()).containsExactly(early, middle, late);
+        appointmentRepository.save(middle);
+        assertThat(timeline.toList()).containsExactly(middle, early, late);
+
+        Appointment copy = save(1, BASE.plusHours(7), customer1);
+        assertThat(timeline.toList()).containsExactly(middle, early, copy);
+        assertThat(timeline.get(1)).isSameAs(copy);
+        assertThat(customer1.getAppointments()).containsExactly(copy, early, middle);
+
+        Appointment detached = Appointment.detached(2, early.getStart(), early.getEnd(), null, null,
+                AppointmentStatus.SCHEDULED, customer2, null);
+        assertThat(timeline.get(2)).isSameAs(early);
+        appointmentRepository.save(detached);
+        assertThat(timeline.toList()).containsExactly(middle, copy);
+        assertThat(customer2.getTimeline().toList()).containsExactly(detached);
+        assertThat(customer2.getAppointments()).containsExactly(detached);
+
+        customer1.getTimeline().setCapacity(1);
+        assertThat(customer1.getTimeline().toList()).containsExactly(copy);
+        assertThatThrownBy(() -> timeline.setCapacity(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Construir o cambiar una cita no la mete en ninguna línea de tiempo.
+     */
+    @Test
+    void entitiesHaveNoSideEffectsTest() {
+        Appointment built = new Appointment(BASE, BASE.plusHours(1), null, null, AppointmentStatus.SCHEDULED, customer1, null);
+        built.setId(1);
+        built.setStart(BASE.plusHours(2));
+        built.setCustomer(customer2);
+        assertThat(customer1.getTimeline().toList()).isEmpty();
+        assertThat(customer2.getTimeline().toList()).isEmpty();
+
+        appointmentRepository.save(built);
+        assertThat(customer2.getTimeline().toList()).containsExactly(built);
+    }
+
+    /**
+     * Al aceptar un intercambio cada cita pasa a la línea de tiempo de su
+     * nuevo cliente.
+     */
+    @Test
+    void acceptExchangeMovesAppointmentsTest() {
+        ExchangeRequestRepositoryImpl exchangeRequestRepository = new ExchangeRequestRepositoryImpl();
+        ExchangeServiceImpl exchangeService = new ExchangeServiceImpl(appointmentRepository,
+                Mockito.mock(NotificationService.class), exchangeRequestRepository);
+        LocalDateTime start = LocalDateTime.now().plusDays(3);
+        Appointment mine = save(1, start, customer1);
+        Appointment other = save(2, start.plusHours(2), customer2);
+        Appointment stays = save(3, start.plusHours(4), customer1);
+
+        assertThat(exchangeService.requestExchange(1, 2, 1)).isTrue();
+        assertThat(exchangeService.acceptExchange(mine.getExchangeRequest().getId(), 2)).isTrue();
+
+        assertThat(customer1.getTimeline().toList()).containsExactly(other, stays);
+        assertThat(customer2.getTimeline().toList()).containsExactly(mine);
+        assertThat(customer1.getTimeline().next(start)).isSameAs(other);
+        assertThat(customer1.getAppointments()).containsExactlyInAnyOrder(other, stays);
+        assertThat(customer2.getAppointments()).containsExactly(mine);
+    }
+}
@@ -0,0 +1,158 @@
+package org.iesvdm.appointment.repository;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.repository.impl.CachingAppointmentRepository;
+import org.iesvdm.appointment.repository.impl.CachingExchangeRequestRepository;
+import org.iesvdm.appointment.repository.impl.ExchangeRequestRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.IndexedAppointmentRepositoryImpl;
+import org.iesvdm.appointment.service.NotificationService;
+import org.iesvdm.appointment.service.impl.ExchangeServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CachingAppointmentRepositoryTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.now().plusDays(3);
+
+    private IndexedAppointmentRepositoryImpl delegate;
+    private CachingAppointmentRepository appointmentRepository;
+    private MutableClock clock = new MutableClock();
+
+    private Customer customer1 = new Customer(1, "paco", "1234", new ArrayList<>());
+    private Customer customer2 = new Customer(2, "pepe", "1111", new ArrayList<>());
+
+    /**
+     * Reloj que sólo avanza cuando se le pide.
+     */
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.EPOCH;
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    @BeforeEach
+    public void setup() {
+        delegate = Mockito.spy(new IndexedAppointmentRepositoryImpl());
+        appointmentRepository = new CachingAppointmentRepository(delegate, 3, Duration.ofMinutes(5), clock);
+        for (int id = 1; id <= 4; id++) {
+            Appointment appointment = new Appointment(BASE.plusHours(2L * id), BASE.plusHours(2L * id + 1),
+                    null, null, AppointmentStatus.SCHEDULED, id % 2 == 1 ? customer1 : customer2, null);
+            appointment.setId(id);
+            delegate.save(appointment);
+        }
+        clearInvocations(delegate);
+    }
+
+    /**
+     * Una cita, o su ausencia, se lee del repositorio una sola vez, y guardar
+     * invalida la entrada para que la siguiente lectura vuelva al repositorio.
+     */
+    @Test
+    void readThroughInvalidateOnWriteTest() {
+        Appointment appointment = appointmentRepository.getOne(1);
+        assertThat(appointmentRepository.getOne(1)).isSameAs(appointment);
+        assertThat(appointmentRepository.getOne(99)).isNull();
+        assertThat(appointmentRepository.getOne(99)).isNull();
+        verify(delegate, times(1)).getOne(1);
+        verify(delegate, times(1)).getOne(99);
+
+        Appointment created = new Appointment(BASE, BASE.plusHours(1), null, null, AppointmentStatus.SCHEDULED, customer1, null);
+        created.setId(99);
+        appointmentRepository.save(created);
+        assertThat(appointmentRepository.getOne(99)).isSameAs(created);
+        assertThat(appointmentRepository.getOne(99)).isSameAs(created);
+        verify(delegate, times(1)).save(created);
+        verify(delegate, times(2)).getOne(99);
+
+        assertThat(appointmentRepository.getCache().getHits()).isEqualTo(3);
+        assertThat(appointmentRepository.getCache().getNegativeHits()).isEqualTo(1);
+        assertThat(appointmentRepository.getCache().getMisses()).isEqualTo(3);
+        assertThat(appointmentRepository.getCache().getHitRatio()).isEqualTo(0.5);
+    }
+
+    /**
+     * Al llenarse sale la menos usada, las entradas caducan con el ttl y
+     * findAllById sólo pide al repositorio las que faltan.
+     */
+    @Test
+    void evictionExpiryAndInvalidationTest() {
+        appointmentRepository.getOne(1);
+        appointmentRepository.getOne(2);
+        appointmentRepository.getOne(3);
+        appointmentRepository.getOne(1);
+        appointmentRepository.getOne(4);
+        assertThat(appointmentRepository.getCache().getEvictions()).isEqualTo(1);
+        assertThat(appointmentRepository.getCache().size()).isEqualTo(3);
+
+        assertThat(appointmentRepository.findAllById(List.of(1, 2, 4, 99))).containsOnlyKeys(1, 2, 4);
+        verify(delegate, times(1)).findAllById(List.of(2, 99));
+
+        clock.advance(Duration.ofMinutes(6));
+        appointmentRepository.getOne(4);
+        assertThat(appointmentRepository.getCache().getExpirations()).isEqualTo(1);
+        verify(delegate, times(2)).getOne(4);
+
+        appointmentRepository.invalidate(4);
+        appointmentRepository.getOne(4);
+        verify(delegate, times(3)).getOne(4);
+        appointmentRepository.invalidateAll();
+        assertThat(appointmentRepository.getCache().size()).isZero();
+    }
+
+    /**
+     * Con ExchangeServiceImpl, cada cita y la petición se leen del
+     * repositorio una vez y otra más después de cada vez que se guardan.
+     */
+    @Test
+    void exchangeServiceTest() {
+        ExchangeRequestRepository exchangeDelegate = Mockito.spy(new ExchangeRequestRepositoryImpl());
+        CachingExchangeRequestRepository exchangeRequestRepository = new CachingExchangeRequestRepository(exchangeDelegate);
+        ExchangeServiceImpl exchangeService = new ExchangeServiceImpl(appointmentRepository,
+                Mockito.mock(NotificationService.class), exchangeRequestRepository);
+
+        assertThat(exchangeService.requestExchange(1, 2, 1)).isTrue();
+        int exchangeId = appointmentRepository.getOne(1).getExchangeRequest().getId();
+        assertThat(exchangeService.acceptExchange(exchangeId, 2)).isTrue();
+
+        verify(delegate, times(2)).getOne(1);
+        verify(delegate, times(1)).getOne(2);
+        verify(exchangeDelegate, times(1)).getOne(exchangeId);
+        assertThat(exchangeRequestRepository.getOne(exchangeId).getRequested().getCustomer()).isSameAs(customer1);
+        exchangeRequestRepository.getOne(exchangeId);
+        verify(exchangeDelegate, times(2)).getOne(exchangeId);
+        assertThat(exchangeRequestRepository.getCache().getHits()).isEqualTo(1);
+    }
+}
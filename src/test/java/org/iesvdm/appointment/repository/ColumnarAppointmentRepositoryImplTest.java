@@ -0,0 +1,118 @@
+package org.iesvdm.appointment.repository;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.entity.TimeSlot;
+import org.iesvdm.appointment.entity.User;
+import org.iesvdm.appointment.repository.impl.AppointmentRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.ColumnarAppointmentRepositoryImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class ColumnarAppointmentRepositoryImplTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 6, 1, 8, 0);
+
+    private ColumnarAppointmentRepositoryImpl appointmentRepository;
+
+    private Customer customer1 = new Customer(1, "paco", "1234", new ArrayList<>());
+    private Customer customer2 = new Customer(2, "pepe", "1111", new ArrayList<>());
+
+    @BeforeEach
+    public void setup() {
+        appointmentRepository = new ColumnarAppointmentRepositoryImpl();
+    }
+
+    private static Appointment appointment(int id, LocalDateTime start, AppointmentStatus status, Customer customer) {
+        Appointment appointment = new Appointment(start, start.plusHours(1), null, null, status, customer, null);
+        appointment.setId(id);
+        return appointment;
+    }
+
+    @Test
+    void saveAndGetTest() {
+        User admin = new User(7, "admin", "admin");
+        Appointment appointment = appointment(1, BASE, AppointmentStatus.CANCELED, customer1);
+        appointment.setCanceler(admin);
+        appointment.setCanceledAt(BASE.minusDays(1));
+        appointmentRepository.save(appointment);
+
+        Appointment read = appointmentRepository.getOne(1);
+        assertThat(read).isSameAs(appointment);
+        assertThat(appointmentRepository.getOne(2)).isNull();
+        assertThat(appointmentRepository.findCanceledByUser(7)).containsExactly(appointment);
+
+        read.setStatus(AppointmentStatus.SCHEDULED);
+        assertThat(appointmentRepository.findScheduledWithEndBeforeDate(BASE.plusDays(1))).isEmpty();
+        appointmentRepository.save(read);
+        assertThat(appointmentRepository.findScheduledWithEndBeforeDate(BASE.plusDays(1))).containsExactly(appointment);
+        assertThat(appointmentRepository.findScheduledWithEndBeforeDate(LocalDateTime.MAX)).hasSize(1);
+        assertThat(appointmentRepository.size()).isEqualTo(1);
+
+        assertThatThrownBy(() -> appointmentRepository.save(new Appointment())).isInstanceOf(IllegalArgumentException.class);
+        appointmentRepository.save(appointment(3, LocalDateTime.of(2300, 1, 1, 0, 0), AppointmentStatus.SCHEDULED, null));
+        assertThat(appointmentRepository.findScheduledWithEndBeforeDate(LocalDateTime.MAX)).hasSize(2);
+    }
+
+    @Test
+    void countTest() {
+        for (int id = 0; id < 100; id++) {
+            appointmentRepository.save(appointment(id, BASE.plusHours(id),
+                    id % 4 == 0 ? AppointmentStatus.CANCELED : AppointmentStatus.SCHEDULED, customer1));
+        }
+        assertThat(appointmentRepository.count(AppointmentStatus.SCHEDULED, BASE, BASE.plusHours(100))).isEqualTo(75);
+        assertThat(appointmentRepository.count(AppointmentStatus.CANCELED, BASE.plusHours(1), BASE.plusHours(9))).isEqualTo(2);
+        assertThat(appointmentRepository.count(AppointmentStatus.FINISHED, LocalDateTime.MIN, LocalDateTime.MAX)).isZero();
+        assertThat(appointmentRepository.findFreeSlots(BASE.plusHours(1), BASE.plusHours(4))).isEmpty();
+        assertThat(appointmentRepository.findFreeSlots(BASE.minusHours(1), BASE.plusHours(6))).containsExactly(
+                new TimeSlot(BASE.minusHours(1), BASE.plusHours(1)), new TimeSlot(BASE.plusHours(4), BASE.plusHours(5)));
+    }
+
+    /**
+     * Con datos aleatorios las búsquedas devuelven lo mismo que AppointmentRepositoryImpl.
+     */
+    @Test
+    void matchesAppointmentRepositoryImplTest() {
+        Random random = new Random(42);
+        List<Customer> customers = List.of(customer1, customer2, new Customer(3, "ana", "2222", new ArrayList<>()));
+        AppointmentStatus[] statuses = AppointmentStatus.values();
+        AppointmentRepository scan = new AppointmentRepositoryImpl(new HashSet<>());
+        for (int id = 1; id <= 500; id++) {
+            Appointment appointment = appointment(id, BASE.plusMinutes(random.nextInt(60 * 24 * 30)),
+                    statuses[random.nextInt(statuses.length)], customers.get(random.nextInt(customers.size())));
+            appointment.setEnd(appointment.getStart().plusMinutes(1 + random.nextInt(240)));
+            appointmentRepository.save(appointment);
+            scan.save(appointment);
+        }
+
+        for (int i = 0; i < 50; i++) {
+            LocalDateTime from = BASE.plusHours(random.nextInt(24 * 30));
+            LocalDateTime to = from.plusHours(1 + random.nextInt(24 * 10));
+            int customerId = customers.get(random.nextInt(customers.size())).getId();
+
+            assertThat(appointmentRepository.findByCustomerIdWithStartInPeroid(customerId, from, to))
+                    .containsExactlyInAnyOrderElementsOf(scan.findByCustomerIdWithStartInPeroid(customerId, from, to));
+            assertThat(appointmentRepository.findScheduledWithEndBeforeDate(from))
+                    .containsExactlyInAnyOrderElementsOf(scan.findScheduledWithEndBeforeDate(from));
+            assertThat(appointmentRepository.findExchangeRequestedWithStartBefore(from))
+                    .containsExactlyInAnyOrderElementsOf(scan.findExchangeRequestedWithStartBefore(from));
+            assertThat(appointmentRepository.getEligibleAppointmentsForExchange(from, customerId))
+                    .containsExactlyInAnyOrderElementsOf(scan.getEligibleAppointmentsForExchange(from, customerId));
+            assertThat(appointmentRepository.findOverlapping(from, to))
+                    .containsExactlyInAnyOrderElementsOf(scan.findOverlapping(from, to));
+            assertThat(appointmentRepository.findByCustomerIdOverlapping(customerId, from, to))
+                    .containsExactlyInAnyOrderElementsOf(scan.findByCustomerIdOverlapping(customerId, from, to));
+            assertThat(appointmentRepository.findAt(from)).containsExactlyInAnyOrderElementsOf(scan.findAt(from));
+            assertThat(appointmentRepository.findFreeSlots(from, to)).isEqualTo(scan.findFreeSlots(from, to));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.iesvdm.appointment.repository;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.repository.impl.AppointmentRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.ConcurrentAppointmentRepositoryImpl;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class ConcurrentAppointmentRepositoryImplTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 6, 1, 8, 0);
+    private static final int PINNED = 200;
+    private static final int MUTABLE_FROM = 1000;
+    private static final int MUTABLE = 1000;
+    private static final int THREADS = 32;
+    private static final int ITERATIONS = 3000;
+
+    private static final Customer PINNED_CUSTOMER = new Customer(100, "fijo", "0000", new ArrayList<>());
+    private static final List<Customer> CUSTOMERS = List.of(
+            new Customer(1, "paco", "1234", new ArrayList<>()),
+            new Customer(2, "pepe", "1111", new ArrayList<>()),
+            new Customer(3, "ana", "2222", new ArrayList<>()));
+
+    private static Appointment appointment(int id, LocalDateTime start, long minutes, AppointmentStatus status, Customer customer) {
+        Appointment appointment = new Appointment(start, start.plusMinutes(minutes), null, null, status, customer, null);
+        appointment.setId(id);
+        return appointment;
+    }
+
+    /**
+     * Cita nueva (nunca se modifica una ya guardada) con valores aleatorios a
+     * partir del segundo día, para no mezclarse con las fijas.
+     */
+    private static Appointment randomAppointment(int id) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        AppointmentStatus[] statuses = AppointmentStatus.values();
+        return appointment(id, BASE.plusDays(2).plusMinutes(random.nextInt(60 * 24 * 20)), 15 + random.nextInt(240),
+                statuses[random.nextInt(statuses.length)], CUSTOMERS.get(random.nextInt(CUSTOMERS.size())));
+    }
+
+    private static void assertConsistent(List<Appointment> result, Predicate<Appointment> matches, int pinnedExpected) {
+        Set<Integer> ids = new HashSet<>();
+        int pinned = 0;
+        for (Appointment appointment : result) {
+            assertThat(ids.add(appointment.getId())).as("duplicated %s", appointment.getId()).isTrue();
+            assertThat(matches.test(appointment)).as("stale %s", appointment.getId()).isTrue();
+            if (appointment.getId() < PINNED) {
+                pinned++;
+            }
+        }
+        assertThat(pinned).isEqualTo(pinnedExpected);
+    }
+
+    /**
+     * Muchos hilos guardan a la vez las mismas citas mientras otros buscan:
+     * las búsquedas no fallan, no repiten citas, no devuelven valores viejos y
+     * siempre incluyen las citas que no cambian; al terminar, todas las
+     * búsquedas coinciden con las de AppointmentRepositoryImpl sobre el estado final.
+     */
+    @Test
+    void concurrentSaveAndQueryStressTest() throws InterruptedException {
+        ConcurrentAppointmentRepositoryImpl repository = new ConcurrentAppointmentRepositoryImpl();
+        for (int id = 0; id < PINNED; id++) {
+            repository.save(appointment(id, BASE.plusMinutes(id), 30, AppointmentStatus.SCHEDULED, PINNED_CUSTOMER));
+        }
+        for (int id = MUTABLE_FROM; id < MUTABLE_FROM + MUTABLE; id++) {
+            repository.save(randomAppointment(id));
+        }
+
+        LocalDateTime pinnedEnd = BASE.plusDays(1);
+        Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            boolean writer = t % 2 == 0;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        if (writer) {
+                            repository.save(randomAppointment(MUTABLE_FROM + random.nextInt(MUTABLE)));
+                            continue;
+                        }
+                        LocalDateTime from = BASE.plusDays(2).plusMinutes(random.nextInt(60 * 24 * 20));
+                        LocalDateTime to = from.plusHours(1 + random.nextInt(48));
+                        int customerId = CUSTOMERS.get(random.nextInt(CUSTOMERS.size())).getId();
+                        switch (i % 5) {
+                            case 0 -> assertConsistent(repository.findScheduledWithEndBeforeDate(to),
+                                    a -> a.getStatus() == AppointmentStatus.SCHEDULED && a.getEnd().isBefore(to), PINNED);
+                            case 1 -> assertConsistent(repository.findExchangeRequestedWithStartBefore(to),
+                                    a -> a.getStatus() == AppointmentStatus.EXCHANGE_REQUESTED && a.getStart().isBefore(to), 0);
+                            case 2 -> assertConsistent(repository.findByCustomerIdWithStartInPeroid(customerId, from, to),
+                                    a -> a.getCustomer().getId() == customerId && a.getStart().isAfter(from) && a.getEnd().isBefore(to), 0);
+                            case 3 -> assertConsistent(repository.findOverlapping(BASE, to),
+                                    a -> a.getStatus() != AppointmentStatus.CANCELED && a.getStart().isBefore(to), PINNED);
+                            default -> assertConsistent(repository.getEligibleAppointmentsForExchange(BASE.minusDays(1), customerId),
+                                    a -> a.getStatus() == AppointmentStatus.SCHEDULED && a.getCustomer().getId() != customerId, PINNED);
+                        }
+                        assertThat(repository.findAt(BASE.plusMinutes(random.nextInt(PINNED)).plusSeconds(1)))
+                                .anyMatch(a -> a.getId() < PINNED);
+                        assertThat(repository.findFreeSlots(BASE, pinnedEnd)).hasSize(1);
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(errors).isEmpty();
+
+        AppointmentRepository scan = new AppointmentRepositoryImpl(new HashSet<>());
+        for (int id = 0; id < MUTABLE_FROM + MUTABLE; id++) {
+            Appointment appointment = repository.getOne(id);
+            if (appointment != null) {
+                scan.save(appointment);
+            }
+        }
+        assertThat(repository.size()).isEqualTo(PINNED + MUTABLE);
+        LocalDateTime end = BASE.plusDays(40);
+        assertThat(repository.findOverlapping(BASE, end)).containsExactlyInAnyOrderElementsOf(scan.findOverlapping(BASE, end));
+        assertThat(repository.findScheduledWithEndBeforeDate(end)).containsExactlyInAnyOrderElementsOf(scan.findScheduledWithEndBeforeDate(end));
+        assertThat(repository.findExchangeRequestedWithStartBefore(end)).containsExactlyInAnyOrderElementsOf(scan.findExchangeRequestedWithStartBefore(end));
+        assertThat(repository.findFreeSlots(BASE, end)).isEqualTo(scan.findFreeSlots(BASE, end));
+        assertThat(repository.streamScheduledWithEndBeforeDate(end, null).toList())
+                .isEqualTo(scan.streamScheduledWithEndBeforeDate(end, null).toList());
+        assertThat(repository.streamExchangeRequestedWithStartBefore(end, null).skip(10).toList())
+                .isEqualTo(scan.streamExchangeRequestedWithStartBefore(end, null).skip(10).toList());
+        for (Customer customer : CUSTOMERS) {
+            int id = customer.getId();
+            assertThat(repository.findByCustomerIdWithStartInPeroid(id, BASE, end))
+                    .containsExactlyInAnyOrderElementsOf(scan.findByCustomerIdWithStartInPeroid(id, BASE, end));
+            assertThat(repository.getEligibleAppointmentsForExchange(BASE, id))
+                    .containsExactlyInAnyOrderElementsOf(scan.getEligibleAppointmentsForExchange(BASE, id));
+            List<Appointment> page = repository.getEligibleAppointmentsForExchange(BASE, id, null, 25);
+            assertThat(page).isEqualTo(scan.getEligibleAppointmentsForExchange(BASE, id, null, 25));
+            assertThat(repository.getEligibleAppointmentsForExchange(BASE, id, AppointmentCursor.after(page), 25))
+                    .isEqualTo(scan.getEligibleAppointmentsForExchange(BASE, id, AppointmentCursor.after(page), 25));
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package org.iesvdm.appointment.repository;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.entity.ExchangeStatus;
+import org.iesvdm.appointment.entity.User;
+import org.iesvdm.appointment.repository.impl.FileAppointmentStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class FileAppointmentStoreTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 6, 1, 8, 0);
+
+    @TempDir
+    Path directory;
+
+    private static Appointment appointment(int id, LocalDateTime start, AppointmentStatus status, Customer customer) {
+        Appointment appointment = new Appointment(start, start.plusHours(1), null, null, status, customer, null);
+        appointment.setId(id);
+        return appointment;
+    }
+
+    private List<String> files() throws IOException {
+        try (Stream<Path> stream = Files.list(directory)) {
+            return stream.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    @Test
+    void recoverTest() throws IOException {
+        Customer customer1 = new Customer(1, "paco", "1234", new ArrayList<>());
+        Customer customer2 = new Customer(2, "pepe", "1111", new ArrayList<>());
+        User admin = new User(9, "admin", null);
+
+        try (FileAppointmentStore store = FileAppointmentStore.open(directory)) {
+            AppointmentRepository appointments = store.getAppointmentRepository();
+            ExchangeRequestRepository exchangeRequests = store.getExchangeRequestRepository();
+            Appointment first = appointment(1, BASE, AppointmentStatus.SCHEDULED, customer1);
+            Appointment second = appointment(2, BASE.plusDays(1), AppointmentStatus.SCHEDULED, customer2);
+            Appointment canceled = appointment(3, BASE.plusDays(2), AppointmentStatus.CANCELED, customer1);
+            canceled.setCanceler(admin);
+            canceled.setCanceledAt(BASE.plusHours(3));
+            appointments.saveAll(List.of(first, second, canceled));
+
+            first.setStatus(AppointmentStatus.EXCHANGE_REQUESTED);
+            appointments.save(first);
+            ExchangeRequest exchangeRequest = new ExchangeRequest(first, second, ExchangeStatus.PENDING);
+            exchangeRequests.save(exchangeRequest);
+            assertThat(exchangeRequest.getId()).isEqualTo(1);
+            customer2.setUserName("pepa");
+            appointments.save(second);
+        }
+
+        for (String file : files()) {
+            assertThat(new String(Files.readAllBytes(directory.resolve(file)), StandardCharsets.ISO_8859_1))
+                    .contains("paco").doesNotContain("1234", "1111");
+        }
+
+        try (FileAppointmentStore store = FileAppointmentStore.open(directory)) {
+            AppointmentRepository appointments = store.getAppointmentRepository();
+            assertThat(store.getRecoveredRecords()).isEqualTo(11);
+            assertThat(store.size()).isEqualTo(3);
+
+            Appointment first = appointments.getOne(1);
+            Appointment second = appointments.getOne(2);
+            assertThat(first.getStart()).isEqualTo(BASE);
+            assertThat(first.getStatus()).isEqualTo(AppointmentStatus.EXCHANGE_REQUESTED);
+            assertThat(first.getCustomer().getUserName()).isEqualTo("paco");
+            assertThat(first.getCustomer()).isSameAs(appointments.getOne(3).getCustomer());
+            assertThat(second.getCustomer().getUserName()).isEqualTo("pepa");
+            assertThat(second.getCustomer().getPassword()).isNull();
+            assertThat(appointments.getOne(3).getCanceler()).isNotInstanceOf(Customer.class);
+            assertThat(appointments.getOne(3).getCanceledAt()).isEqualTo(BASE.plusHours(3));
+            assertThat(appointments.findCanceledByUser(9)).extracting(Appointment::getId).containsExactly(3);
+            assertThat(appointments.findOverlapping(BASE, BASE.plusDays(3))).extracting(Appointment::getId).containsExactly(1, 2);
+
+            ExchangeRequest exchangeRequest = store.getExchangeRequestRepository().getOne(1);
+            assertThat(exchangeRequest.getRequestor()).isSameAs(first);
+            assertThat(exchangeRequest.getRequested()).isSameAs(second);
+            assertThat(first.getExchangeRequest()).isSameAs(exchangeRequest);
+
+            ExchangeRequest another = new ExchangeRequest(second, first, ExchangeStatus.PENDING);
+            store.getExchangeRequestRepository().save(another);
+            assertThat(another.getId()).isEqualTo(2);
+        }
+    }
+
+    /**
+     * Con un log pequeño se hacen instantáneas solas y se borran los ficheros
+     * viejos; un registro a medio escribir al final se descarta.
+     */
+    @Test
+    void snapshotAndTornTailTest() throws IOException {
+        Customer customer = new Customer(1, "paco", "1234", new ArrayList<>());
+        try (FileAppointmentStore store = FileAppointmentStore.open(directory, false, 4096)) {
+            for (int i = 0; i < 500; i++) {
+                store.getAppointmentRepository().save(appointment(i % 100, BASE.plusHours(i), AppointmentStatus.SCHEDULED, customer));
+            }
+            assertThat(store.getGeneration()).isGreaterThan(1);
+        }
+        List<String> files = files();
+        assertThat(files).hasSize(2).allMatch(name -> name.startsWith("wal-") || name.startsWith("snapshot-"));
+
+        Path wal = directory.resolve(files.get(files.get(0).startsWith("wal-") ? 0 : 1));
+        long size = Files.size(wal);
+        Files.write(wal, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (FileAppointmentStore store = FileAppointmentStore.open(directory, false, 4096)) {
+            assertThat(store.size()).isEqualTo(100);
+            for (int id = 0; id < 100; id++) {
+                assertThat(store.getAppointmentRepository().getOne(id).getStart()).isEqualTo(BASE.plusHours(400 + id));
+            }
+        }
+        assertThat(Files.size(wal)).isEqualTo(size);
+    }
+
+    @Test
+    void groupCommitTest() throws InterruptedException {
+        Customer customer = new Customer(1, "paco", "1234", new ArrayList<>());
+        int threads = 8;
+        int saves = 200;
+        try (FileAppointmentStore store = FileAppointmentStore.open(directory, true, 0)) {
+            Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t * saves;
+                writers.add(new Thread(() -> {
+                    try {
+                        for (int id = first; id < first + saves; id++) {
+                            store.getAppointmentRepository().save(appointment(id, BASE.plusMinutes(id), AppointmentStatus.SCHEDULED, customer));
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }));
+            }
+            writers.forEach(Thread::start);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            assertThat(errors).isEmpty();
+            assertThat(store.getCommits()).isPositive().isLessThanOrEqualTo(threads * saves);
+            assertThat(store.getForces()).isEqualTo(store.getCommits());
+        }
+        try (FileAppointmentStore store = FileAppointmentStore.open(directory)) {
+            assertThat(store.size()).isEqualTo(threads * saves);
+            assertThat(store.getAppointmentRepository().findOverlapping(BASE, BASE.plusDays(10))).hasSize(threads * saves);
+        }
+    }
+
+    /**
+     * Si falla el write del log, ese save y los siguientes lanzan excepción,
+     * y al volver a abrir sólo está lo que llegó al disco.
+     */
+    @Test
+    void failedLogWriteTest() throws Exception {
+        Customer customer = new Customer(1, "paco", "1234", new ArrayList<>());
+        try (FileAppointmentStore store = FileAppointmentStore.open(directory)) {
+            AppointmentRepository appointments = store.getAppointmentRepository();
+            appointments.save(appointment(1, BASE, AppointmentStatus.SCHEDULED, customer));
+            store.snapshot();
+            appointments.save(appointment(2, BASE.plusHours(1), AppointmentStatus.SCHEDULED, customer));
+
+            Field log = FileAppointmentStore.class.getDeclaredField("log");
+            log.setAccessible(true);
+            ((FileChannel) log.get(store)).close();
+
+            assertThatThrownBy(() -> appointments.save(appointment(3, BASE.plusHours(2), AppointmentStatus.SCHEDULED, customer)))
+                    .isInstanceOf(UncheckedIOException.class);
+            assertThatThrownBy(() -> appointments.save(appointment(4, BASE.plusHours(3), AppointmentStatus.SCHEDULED, customer)))
+                    .isInstanceOf(IllegalStateException.class);
+            assertThatThrownBy(store::snapshot).isInstanceOf(IllegalStateException.class);
+        }
+        assertThat(files()).containsExactly("snapshot-2.bin", "wal-2.log");
+
+        try (FileAppointmentStore store = FileAppointmentStore.open(directory)) {
+            assertThat(store.size()).isEqualTo(2);
+            assertThat(store.getAppointmentRepository().getOne(3)).isNull();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package org.iesvdm.appointment.repository;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.entity.TimeSlot;
+import org.iesvdm.appointment.entity.User;
+import org.iesvdm.appointment.repository.impl.AppointmentRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.IndexedAppointmentRepositoryImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class IndexedAppointmentRepositoryImplTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 6, 1, 8, 0);
+
+    private IndexedAppointmentRepositoryImpl appointmentRepository;
+
+    private Customer customer1 = new Customer(1, "paco", "1234", new ArrayList<>());
+    private Customer customer2 = new Customer(2, "pepe", "1111", new ArrayList<>());
+
+    @BeforeEach
+    public void setup() {
+        appointmentRepository = new IndexedAppointmentRepositoryImpl();
+    }
+
+    private static Appointment appointment(int id, LocalDateTime start, AppointmentStatus status, Customer customer) {
+        Appointment appointment = new Appointment(start, start.plusHours(1), null, null, status, customer, null);
+        appointment.setId(id);
+        return appointment;
+    }
+
+    @Test
+    void getOneTest() {
+        Appointment appointment1 = appointment(1, BASE, AppointmentStatus.SCHEDULED, customer1);
+        Appointment appointment2 = appointment(2, BASE, AppointmentStatus.SCHEDULED, customer2);
+        appointmentRepository.save(appointment1);
+        appointmentRepository.save(appointment2);
+
+        assertThat(appointmentRepository.getOne(1)).isSameAs(appointment1);
+        assertThat(appointmentRepository.getOne(2)).isSameAs(appointment2);
+        assertThat(appointmentRepository.getOne(3)).isNull();
+        assertThatThrownBy(() -> appointmentRepository.save(new Appointment()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void saveReindexesTest() {
+        Appointment appointment = appointment(1, BASE, AppointmentStatus.SCHEDULED, customer1);
+        appointmentRepository.save(appointment);
+        assertThat(appointmentRepository.findScheduledWithEndBeforeDate(BASE.plusDays(1))).containsExactly(appointment);
+
+        appointment.setStatus(AppointmentStatus.EXCHANGE_REQUESTED);
+        appointment.setCustomer(customer2);
+        appointmentRepository.save(appointment);
+
+        assertThat(appointmentRepository.size()).isEqualTo(1);
+        assertThat(appointmentRepository.findScheduledWithEndBeforeDate(BASE.plusDays(1))).isEmpty();
+        assertThat(appointmentRepository.findExchangeRequestedWithStartBefore(BASE.plusDays(1))).containsExactly(appointment);
+        assertThat(appointmentRepository.findByCustomerIdWithStartInPeroid(1, BASE.minusDays(1), BASE.plusDays(1))).isEmpty();
+        assertThat(appointmentRepository.findByCustomerIdWithStartInPeroid(2, BASE.minusDays(1), BASE.plusDays(1)))
+                .containsExactly(appointment);
+    }
+
+    @Test
+    void findCanceledByUserTest() {
+        User user = new User(7, "admin", "admin");
+        Appointment canceled = appointment(1, BASE, AppointmentStatus.CANCELED, customer1);
+        canceled.setCanceler(user);
+        Appointment rescheduled = appointment(2, BASE, AppointmentStatus.SCHEDULED, customer1);
+        rescheduled.setCanceler(user);
+        appointmentRepository.save(canceled);
+        appointmentRepository.save(rescheduled);
+
+        assertThat(appointmentRepository.findCanceledByUser(7)).containsExactly(canceled);
+        assertThat(appointmentRepository.findCanceledByUser(8)).isEmpty();
+    }
+
+    @Test
+    void overlapAndFreeSlotsTest() {
+        Appointment morning = appointment(1, BASE, AppointmentStatus.SCHEDULED, customer1);
+        Appointment noon = appointment(2, BASE.plusHours(4), AppointmentStatus.SCHEDULED, customer2);
+        Appointment canceled = appointment(3, BASE.plusHours(2), AppointmentStatus.CANCELED, customer1);
+        appointmentRepository.save(morning);
+        appointmentRepository.save(noon);
+        appointmentRepository.save(canceled);
+
+        assertThat(appointmentRepository.findOverlapping(BASE.plusMinutes(30), BASE.plusHours(5))).containsExactly(morning, noon);
+        assertThat(appointmentRepository.findByCustomerIdOverlapping(1, BASE, BASE.plusHours(8))).containsExactly(morning);
+        assertThat(appointmentRepository.findAt(BASE.plusHours(2))).isEmpty();
+        assertThat(appointmentRepository.findFreeSlots(BASE, BASE.plusHours(8))).containsExactly(
+                new TimeSlot(BASE.plusHours(1), BASE.plusHours(4)), new TimeSlot(BASE.plusHours(5), BASE.plusHours(8)));
+
+        morning.setStatus(AppointmentStatus.CANCELED);
+        appointmentRepository.save(morning);
+        assertThat(appointmentRepository.findAt(BASE.plusMinutes(30))).isEmpty();
+    }
+
+    /**
+     * Con datos aleatorios las búsquedas devuelven lo mismo que AppointmentRepositoryImpl.
+     */
+    @Test
+    void matchesAppointmentRepositoryImplTest() {
+        Random random = new Random(42);
+        List<Customer> customers = List.of(customer1, customer2, new Customer(3, "ana", "2222", new ArrayList<>()));
+        AppointmentStatus[] statuses = AppointmentStatus.values();
+        AppointmentRepository scan = new AppointmentRepositoryImpl(new HashSet<>());
+        for (int id = 1; id <= 500; id++) {
+            Appointment appointment = appointment(id, BASE.plusHours(random.nextInt(24 * 30)),
+                    statuses[random.nextInt(statuses.length)], customers.get(random.nextInt(customers.size())));
+            appointmentRepository.save(appointment);
+            scan.save(appointment);
+        }
+
+        for (int i = 0; i < 50; i++) {
+            LocalDateTime from = BASE.plusHours(random.nextInt(24 * 30));
+            LocalDateTime to = from.plusHours(random.nextInt(24 * 10));
+            int customerId = customers.get(random.nextInt(customers.size())).getId();
+
+            assertThat(appointmentRepository.findByCustomerIdWithStartInPeroid(customerId, from, to))
+                    .containsExactlyInAnyOrderElementsOf(scan.findByCustomerIdWithStartInPeroid(customerId, from, to));
+            assertThat(appointmentRepository.findScheduledWithEndBeforeDate(from))
+                    .containsExactlyInAnyOrderElementsOf(scan.findScheduledWithEndBeforeDate(from));
+            assertThat(appointmentRepository.findExchangeRequestedWithStartBefore(from))
+                    .containsExactlyInAnyOrderElementsOf(scan.findExchangeRequestedWithStartBefore(from));
+            assertThat(appointmentRepository.getEligibleAppointmentsForExchange(from, customerId))
+                    .containsExactlyInAnyOrderElementsOf(scan.getEligibleAppointmentsForExchange(from, customerId));
+            assertThat(appointmentRepository.findByCustomerIdOverlapping(customerId, from, to))
+                    .containsExactlyInAnyOrderElementsOf(scan.findByCustomerIdOverlapping(customerId, from, to));
+            assertThat(appointmentRepository.findFreeSlots(from, to)).isEqualTo(scan.findFreeSlots(from, to));
+        }
+    }
+
+    /**
+     * Recorrer las candidatas a intercambio por páginas da las mismas citas
+     * que la lista completa, por orden de start e id, y los save entre páginas
+     * se ven en las siguientes.
+     */
+    @Test
+    void eligibleForExchangePagesTest() {
+        Random random = new Random(7);
+        List<Customer> customers = List.of(customer1, customer2);
+        AppointmentRepository scan = new AppointmentRepositoryImpl(new HashSet<>());
+        for (int id = 1; id <= 300; id++) {
+            Appointment appointment = appointment(id, BASE.plusHours(random.nextInt(48)),
+                    random.nextInt(4) == 0 ? AppointmentStatus.CANCELED : AppointmentStatus.SCHEDULED,
+                    customers.get(random.nextInt(customers.size())));
+            appointmentRepository.save(appointment);
+            scan.save(appointment);
+        }
+        LocalDateTime from = BASE.plusHours(10);
+
+        List<Appointment> pages = new ArrayList<>();
+        AppointmentCursor cursor = null;
+        List<Appointment> page;
+        do {
+            page = appointmentRepository.getEligibleAppointmentsForExchange(from, 1, cursor, 7);
+            assertThat(page).hasSizeLessThanOrEqualTo(7);
+            pages.addAll(page);
+            cursor = AppointmentCursor.after(page);
+        } while (!page.isEmpty());
+        assertThat(pages).isSortedAccordingTo(Comparator.comparing(AppointmentCursor::of))
+                .containsExactlyInAnyOrderElementsOf(scan.getEligibleAppointmentsForExchange(from, 1))
+                .isEqualTo(scan.getEligibleAppointmentsForExchange(from, 1, null, Integer.MAX_VALUE));
+
+        List<Appointment> first = appointmentRepository.getEligibleAppointmentsForExchange(from, 1, null, 2);
+        Appointment next = appointmentRepository.getEligibleAppointmentsForExchange(from, 1, AppointmentCursor.after(first), 1).get(0);
+        next.setStatus(AppointmentStatus.EXCHANGE_REQUESTED);
+        appointmentRepository.save(next);
+        assertThat(appointmentRepository.getEligibleAppointmentsForExchange(from, 1, AppointmentCursor.after(first), 1))
+                .doesNotContain(next);
+        assertThatThrownBy(() -> appointmentRepository.getEligibleAppointmentsForExchange(from, 1, null, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Los streams dan las mismas citas que las listas, por fecha e id, y se
+     * pueden seguir desde el cursor de la última cita leída.
+     */
+    @Test
+    void streamsWithCursorTest() {
+        Random random = new Random(11);
+        AppointmentStatus[] statuses = {AppointmentStatus.SCHEDULED, AppointmentStatus.EXCHANGE_REQUESTED, AppointmentStatus.FINISHED};
+        AppointmentRepository scan = new AppointmentRepositoryImpl(new HashSet<>());
+        for (int id = 1; id <= 400; id++) {
+            Appointment appointment = appointment(id, BASE.plusHours(random.nextInt(72)),
+                    statuses[random.nextInt(statuses.length)], random.nextBoolean() ? customer1 : customer2);
+            appointmentRepository.save(appointment);
+            scan.save(appointment);
+        }
+        LocalDateTime date = BASE.plusHours(50);
+
+        List<Appointment> scheduled = appointmentRepository.streamScheduledWithEndBeforeDate(date, null).toList();
+        assertThat(scheduled).isSortedAccordingTo(Comparator.comparing(AppointmentCursor::ofEnd))
+                .containsExactlyInAnyOrderElementsOf(scan.findScheduledWithEndBeforeDate(date))
+                .isEqualTo(scan.streamScheduledWithEndBeforeDate(date, null).toList());
+        List<Appointment> requested = appointmentRepository.streamExchangeRequestedWithStartBefore(date, null).toList();
+        assertThat(requested).isEqualTo(scan.streamExchangeRequestedWithStartBefore(date, null).toList())
+                .containsExactlyInAnyOrderElementsOf(scan.findExchangeRequestedWithStartBefore(date));
+
+        List<Appointment> resumed = new ArrayList<>();
+        AppointmentCursor cursor = null;
+        while (true) {
+            List<Appointment> page = appointmentRepository.streamScheduledWithEndBeforeDate(date, cursor).limit(9).toList();
+            if (page.isEmpty()) {
+                break;
+            }
+            resumed.addAll(page);
+            cursor = AppointmentCursor.ofEnd(page.get(page.size() - 1));
+        }
+        assertThat(resumed).isEqualTo(scheduled);
+        assertThat(appointmentRepository.streamExchangeRequestedWithStartBefore(date, AppointmentCursor.of(requested.get(10))).toList())
+                .isEqualTo(requested.subList(11, requested.size()));
+        assertThat(appointmentRepository.streamEligibleAppointmentsForExchange(BASE, 1, null).skip(5).findFirst())
+                .isEqualTo(scan.streamEligibleAppointmentsForExchange(BASE, 1, null).skip(5).findFirst());
+    }
+}
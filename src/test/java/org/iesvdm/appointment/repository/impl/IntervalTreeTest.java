@@ -0,0 +1,75 @@
+package org.iesvdm.appointment.repository.impl;
+
+import org.iesvdm.appointment.entity.TimeSlot;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class IntervalTreeTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 6, 1, 0, 0);
+
+    private static LocalDateTime at(int minutes) {
+        return BASE.plusMinutes(minutes);
+    }
+
+    @Test
+    void overlappingAndGapsTest() {
+        IntervalTree<String> tree = new IntervalTree<>();
+        tree.add(at(0), at(60), 1, "a");
+        tree.add(at(30), at(90), 2, "b");
+        tree.add(at(120), at(180), 3, "c");
+        tree.add(at(200), at(200), 4, "empty");
+
+        assertThat(tree.size()).isEqualTo(3);
+        assertThat(tree.overlapping(at(50), at(130))).containsExactly("a", "b", "c");
+        assertThat(tree.overlapping(at(90), at(120))).isEmpty();
+        assertThat(tree.containing(at(60))).containsExactly("b");
+        assertThat(tree.overlaps(at(100), at(121))).isTrue();
+        assertThat(tree.gaps(at(-10), at(240))).containsExactly(
+                new TimeSlot(at(-10), at(0)), new TimeSlot(at(90), at(120)), new TimeSlot(at(180), at(240)));
+
+        assertThat(tree.remove(at(30), at(90), 2)).isTrue();
+        assertThat(tree.remove(at(30), at(90), 2)).isFalse();
+        assertThat(tree.containing(at(60))).isEmpty();
+    }
+
+    /**
+     * Contra una lista recorrida entera, con altas y bajas aleatorias.
+     */
+    @Test
+    void matchesLinearScanTest() {
+        Random random = new Random(42);
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        List<int[]> intervals = new ArrayList<>();
+        for (int id = 0; id < 2000; id++) {
+            int start = random.nextInt(10_000);
+            int[] interval = {start, start + 1 + random.nextInt(200), id};
+            tree.add(at(interval[0]), at(interval[1]), id, id);
+            intervals.add(interval);
+            if (random.nextInt(3) == 0) {
+                int[] removed = intervals.remove(random.nextInt(intervals.size()));
+                assertThat(tree.remove(at(removed[0]), at(removed[1]), removed[2])).isTrue();
+            }
+        }
+        assertThat(tree.size()).isEqualTo(intervals.size());
+
+        for (int i = 0; i < 200; i++) {
+            int from = random.nextInt(10_000);
+            int to = from + random.nextInt(300);
+            List<Integer> expected = new ArrayList<>();
+            for (int[] interval : intervals) {
+                if (interval[0] < to && interval[1] > from) {
+                    expected.add(interval[2]);
+                }
+            }
+            assertThat(tree.overlapping(at(from), at(to))).containsExactlyInAnyOrderElementsOf(expected);
+            assertThat(tree.overlaps(at(from), at(to))).isEqualTo(!expected.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.iesvdm.appointment.service.impl;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.entity.ExchangeStatus;
+import org.iesvdm.appointment.repository.impl.ExchangeRequestRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.IndexedAppointmentRepositoryImpl;
+import org.iesvdm.appointment.service.NotificationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class AppointmentSweeperTest {
+
+    private IndexedAppointmentRepositoryImpl appointmentRepository;
+    private ExchangeRequestRepositoryImpl exchangeRequestRepository;
+    private ExchangeServiceImpl exchangeService;
+    private AppointmentSweeper sweeper;
+
+    private Customer customer1 = new Customer(1, "paco", "1234", new ArrayList<>());
+    private Customer customer2 = new Customer(2, "pepe", "1111", new ArrayList<>());
+
+    @BeforeEach
+    public void setup() {
+        appointmentRepository = new IndexedAppointmentRepositoryImpl();
+        exchangeRequestRepository = new ExchangeRequestRepositoryImpl();
+        exchangeService = new ExchangeServiceImpl(appointmentRepository, Mockito.mock(NotificationService.class), exchangeRequestRepository);
+        sweeper = new AppointmentSweeper(appointmentRepository, exchangeRequestRepository, exchangeService.getLocks(), Clock.systemDefaultZone());
+        exchangeService.setSweeper(sweeper);
+    }
+
+    private Appointment save(int id, LocalDateTime start, LocalDateTime end, AppointmentStatus status, Customer customer) {
+        Appointment appointment = new Appointment(start, end, null, null, status, customer, null);
+        appointment.setId(id);
+        appointmentRepository.save(appointment);
+        return appointment;
+    }
+
+    @Test
+    void finishAndExpireWhenDueTest() {
+        LocalDateTime now = LocalDateTime.now();
+        Appointment first = save(1, now.plusDays(2), now.plusDays(2).plusHours(1), AppointmentStatus.SCHEDULED, customer1);
+        Appointment second = save(2, now.plusDays(3), now.plusDays(3).plusHours(1), AppointmentStatus.SCHEDULED, customer2);
+        save(3, now.minusHours(2), now.minusHours(1), AppointmentStatus.CANCELED, customer2);
+        Appointment moved = save(4, now.plusHours(1), now.plusHours(2), AppointmentStatus.SCHEDULED, customer2);
+
+        sweeper.load();
+        assertThat(sweeper.getPending()).isEqualTo(3);
+        assertThat(exchangeService.requestExchange(1, 2, 1)).isTrue();
+        assertThat(sweeper.getPending()).isEqualTo(4);
+        ExchangeRequest exchangeRequest = first.getExchangeRequest();
+        assertThat(exchangeRequest).isNotNull();
+
+        assertThat(sweeper.sweep(now)).isZero();
+
+        moved.setEnd(now.plusHours(5));
+        appointmentRepository.save(moved);
+        assertThat(sweeper.sweep(now.plusHours(3))).isZero();
+        assertThat(moved.getStatus()).isEqualTo(AppointmentStatus.SCHEDULED);
+        assertThat(sweeper.sweep(now.plusHours(5))).isEqualTo(1);
+        assertThat(moved.getStatus()).isEqualTo(AppointmentStatus.FINISHED);
+
+        assertThat(sweeper.sweep(now.plusDays(1).plusMinutes(1))).isEqualTo(1);
+        assertThat(exchangeRequest.getStatus()).isEqualTo(ExchangeStatus.EXPIRED);
+        assertThat(first.getStatus()).isEqualTo(AppointmentStatus.SCHEDULED);
+        assertThat(appointmentRepository.findExchangeRequestedWithStartBefore(LocalDateTime.MAX)).isEmpty();
+        assertThat(exchangeService.acceptExchange(exchangeRequest.getId(), 2)).isFalse();
+
+        assertThat(sweeper.sweep(now.plusDays(2).plusHours(1))).isEqualTo(1);
+        assertThat(first.getStatus()).isEqualTo(AppointmentStatus.FINISHED);
+        assertThat(second.getStatus()).isEqualTo(AppointmentStatus.SCHEDULED);
+        assertThat(sweeper.sweep(now.plusDays(4))).isEqualTo(1);
+        assertThat(second.getStatus()).isEqualTo(AppointmentStatus.FINISHED);
+
+        assertThat(sweeper.getPending()).isZero();
+        assertThat(sweeper.getFinished()).isEqualTo(3);
+        assertThat(sweeper.getExpired()).isEqualTo(1);
+        assertThat(sweeper.getDiscarded()).isZero();
+    }
+
+    @Test
+    void backgroundSweepTest() throws InterruptedException {
+        LocalDateTime now = LocalDateTime.now();
+        Appointment later = save(1, now.plusDays(1), now.plusDays(1).plusHours(1), AppointmentStatus.SCHEDULED, customer1);
+        sweeper.load();
+        sweeper.start(Thread::new);
+
+        Appointment soon = save(2, now.minusMinutes(30), LocalDateTime.now().plusNanos(200_000_000), AppointmentStatus.SCHEDULED, customer2);
+        sweeper.scheduleFinish(soon);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (soon.getStatus() != AppointmentStatus.FINISHED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        sweeper.close();
+
+        assertThat(soon.getStatus()).isEqualTo(AppointmentStatus.FINISHED);
+        assertThat(later.getStatus()).isEqualTo(AppointmentStatus.SCHEDULED);
+        assertThat(sweeper.getPending()).isEqualTo(1);
+    }
+
+    /**
+     * Interrumpir el hilo lo para en vez de seguir esperando.
+     */
+    @Test
+    void interruptStopsWorkerTest() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        sweeper.start(task -> {
+            Thread thread = new Thread(task);
+            threads.add(thread);
+            return thread;
+        });
+        threads.get(0).interrupt();
+        threads.get(0).join(5000);
+        assertThat(threads.get(0).isAlive()).isFalse();
+        sweeper.close();
+    }
+
+    /**
+     * Las citas que se crean o se cambian después de load() también se
+     * apuntan, y apuntar otra vez lo mismo no añade vencimientos.
+     */
+    @Test
+    void scheduleAfterLoadTest() {
+        LocalDateTime now = LocalDateTime.now();
+        sweeper.load();
+        assertThat(sweeper.getPending()).isZero();
+
+        Appointment created = save(1, now.plusDays(2), now.plusDays(2).plusHours(1), AppointmentStatus.SCHEDULED, customer1);
+        sweeper.schedule(created);
+        sweeper.schedule(created);
+        assertThat(sweeper.getPending()).isEqualTo(1);
+
+        Appointment unseen = save(2, now.plusDays(3), now.plusDays(3).plusHours(1), AppointmentStatus.SCHEDULED, customer1);
+        assertThat(sweeper.getPending()).isEqualTo(1);
+        save(3, now.plusDays(4), now.plusDays(4).plusHours(1), AppointmentStatus.SCHEDULED, customer2);
+        assertThat(exchangeService.requestExchange(2, 3, 1)).isTrue();
+        assertThat(exchangeService.rejectExchange(unseen.getExchangeRequest().getId())).isTrue();
+        assertThat(sweeper.getPending()).isEqualTo(3);
+
+        assertThat(sweeper.sweep(now.plusDays(5))).isEqualTo(2);
+        assertThat(created.getStatus()).isEqualTo(AppointmentStatus.FINISHED);
+        assertThat(unseen.getStatus()).isEqualTo(AppointmentStatus.FINISHED);
+        assertThat(sweeper.getDiscarded()).isEqualTo(1);
+    }
+
+    /**
+     * Un guardado que falla o una cita sin fin no paran el barrido.
+     */
+    @Test
+    void failingDeadlineDoesNotStopSweepTest() {
+        LocalDateTime now = LocalDateTime.now();
+        IndexedAppointmentRepositoryImpl failing = Mockito.spy(appointmentRepository);
+        sweeper = new AppointmentSweeper(failing, exchangeRequestRepository, exchangeService.getLocks(), Clock.systemDefaultZone());
+        Appointment broken = save(1, now.plusHours(1), now.plusHours(2), AppointmentStatus.SCHEDULED, customer1);
+        Appointment endless = save(2, now.plusHours(1), now.plusHours(3), AppointmentStatus.SCHEDULED, customer1);
+        Appointment fine = save(3, now.plusHours(2), now.plusHours(4), AppointmentStatus.SCHEDULED, customer2);
+        sweeper.load();
+        endless.setEnd(null);
+        Mockito.doThrow(new IllegalStateException("disk full")).when(failing).save(broken);
+
+        assertThat(sweeper.sweep(now.plusHours(5))).isEqualTo(1);
+        assertThat(fine.getStatus()).isEqualTo(AppointmentStatus.FINISHED);
+        assertThat(sweeper.getFailures()).isEqualTo(1);
+        assertThat(sweeper.getDiscarded()).isEqualTo(1);
+        assertThat(sweeper.getPending()).isZero();
+    }
+}
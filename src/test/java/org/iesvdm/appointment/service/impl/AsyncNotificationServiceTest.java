@@ -0,0 +1,253 @@
+package org.iesvdm.appointment.service.impl;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.entity.ExchangeStatus;
+import org.iesvdm.appointment.service.NotificationService;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class AsyncNotificationServiceTest {
+
+    /**
+     * Servicio real que apunta cada aviso y, hasta que se abre la puerta,
+     * se queda parado en la primera entrega.
+     */
+    private static class RecordingNotificationService implements NotificationService {
+
+        private final Queue<String> sent = new ConcurrentLinkedQueue<>();
+        private final Queue<Integer> acceptedRecipients = new ConcurrentLinkedQueue<>();
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private final CountDownLatch entered = new CountDownLatch(1);
+
+        private void await() {
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void newExchangeRequestedNotification(Appointment oldAppointment, Appointment newAppointment, boolean sendEmail) {
+            await();
+            sent.add("requested " + oldAppointment.getId() + "->" + newAppointment.getId());
+        }
+
+        @Override
+        public void newExchangeAcceptedNotification(ExchangeRequest exchangeRequest, boolean sendEmail) {
+            await();
+            sent.add("accepted " + exchangeRequest.getId());
+            acceptedRecipients.add(exchangeRequest.getRequested().getCustomer().getId());
+        }
+
+        @Override
+        public void newExchangeRejectedNotification(ExchangeRequest exchangeRequest, boolean sendEmail) {
+            await();
+            if (exchangeRequest.getId() == 13) {
+                throw new RuntimeException("smtp down");
+            }
+            sent.add("rejected " + exchangeRequest.getId());
+        }
+    }
+
+    private static Appointment appointment(int id, Customer customer) {
+        LocalDateTime start = LocalDateTime.now().plusDays(3).plusHours(id);
+        Appointment appointment = new Appointment(start, start.plusHours(1), null, null, AppointmentStatus.SCHEDULED, customer, null);
+        appointment.setId(id);
+        return appointment;
+    }
+
+    private static ExchangeRequest exchangeRequest(int id, Appointment requestor, Appointment requested) {
+        ExchangeRequest exchangeRequest = new ExchangeRequest(requestor, requested, ExchangeStatus.PENDING);
+        exchangeRequest.setId(id);
+        return exchangeRequest;
+    }
+
+    @Test
+    void coalesceAndBackpressureTest() throws InterruptedException {
+        Customer paco = new Customer(1, "paco", "1234", new ArrayList<>());
+        Customer pepe = new Customer(2, "pepe", "1111", new ArrayList<>());
+        Appointment first = appointment(1, paco);
+        Appointment second = appointment(2, pepe);
+        Appointment third = appointment(3, pepe);
+
+        RecordingNotificationService delegate = new RecordingNotificationService();
+        AsyncNotificationService notificationService = new AsyncNotificationService(delegate, 5, 16, Thread::new);
+
+        notificationService.newExchangeRequestedNotification(first, second, true);
+        assertThat(delegate.entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        notificationService.newExchangeRequestedNotification(first, third, true);
+        notificationService.newExchangeRequestedNotification(first, third, true);
+        notificationService.newExchangesRequestedNotification(List.of(exchangeRequest(7, first, third)), true);
+        notificationService.newExchangeAcceptedNotification(exchangeRequest(8, first, second), true);
+        notificationService.newExchangeAcceptedNotification(exchangeRequest(8, first, second), true);
+        notificationService.newExchangesRejectedNotification(
+                List.of(exchangeRequest(9, second, first), exchangeRequest(13, second, first)), true);
+        notificationService.newExchangeRejectedNotification(exchangeRequest(10, third, first), false);
+        assertThat(notificationService.getQueueDepth()).isEqualTo(6);
+
+        Thread blocked = new Thread(() -> notificationService.newExchangeAcceptedNotification(exchangeRequest(11, first, second), true));
+        blocked.start();
+        while (notificationService.getBackpressureWaits() == 0) {
+            Thread.onSpinWait();
+        }
+        assertThat(blocked.isAlive()).isTrue();
+
+        delegate.gate.countDown();
+        blocked.join();
+        assertThat(notificationService.flush(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(delegate.sent).containsExactlyInAnyOrder("requested 1->2", "requested 1->3", "accepted 8",
+                "rejected 9", "rejected 10", "accepted 11");
+        assertThat(notificationService.getQueueDepth()).isZero();
+        assertThat(notificationService.getCoalesced()).isEqualTo(3);
+        assertThat(notificationService.getFailures()).isEqualTo(2);
+        assertThat(notificationService.getDelivered()).isEqualTo(5);
+        assertThat(notificationService.getMaxLatencyNanos()).isPositive();
+
+        notificationService.close();
+        assertThatThrownBy(() -> notificationService.newExchangeAcceptedNotification(exchangeRequest(12, first, second), true))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * El destinatario y la petición se fijan al encolar, y los avisos del
+     * mismo suceso se juntan aunque se entreguen de uno en uno.
+     */
+    @Test
+    void recipientCapturedAtEnqueueTest() throws InterruptedException {
+        Customer paco = new Customer(1, "paco", "1234", new ArrayList<>());
+        Customer pepe = new Customer(2, "pepe", "1111", new ArrayList<>());
+        Appointment first = appointment(1, paco);
+        Appointment second = appointment(2, pepe);
+
+        RecordingNotificationService delegate = new RecordingNotificationService();
+        AsyncNotificationService notificationService = new AsyncNotificationService(delegate, 8, 1, Thread::new);
+
+        notificationService.newExchangeRequestedNotification(first, second, true);
+        assertThat(delegate.entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        ExchangeRequest exchangeRequest = exchangeRequest(8, first, second);
+        notificationService.newExchangeAcceptedNotification(exchangeRequest, true);
+        notificationService.newExchangeAcceptedNotification(exchangeRequest, true);
+        notificationService.newExchangeAcceptedNotification(exchangeRequest, true);
+        second.setCustomer(paco);
+        first.setCustomer(pepe);
+
+        delegate.gate.countDown();
+        assertThat(notificationService.flush(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(delegate.sent).containsExactly("requested 1->2", "accepted 8");
+        assertThat(delegate.acceptedRecipients).containsExactly(2);
+        assertThat(notificationService.getCoalesced()).isEqualTo(2);
+        assertThat(notificationService.getDelivered()).isEqualTo(2);
+        notificationService.close();
+    }
+
+    /**
+     * Todo aviso que se aceptó antes de close() se entrega.
+     */
+    @Test
+    void closeDeliversEveryAcceptedNotificationTest() throws InterruptedException {
+        Customer paco = new Customer(1, "paco", "1234", new ArrayList<>());
+        Customer pepe = new Customer(2, "pepe", "1111", new ArrayList<>());
+        Appointment first = appointment(1, paco);
+        Appointment second = appointment(2, pepe);
+
+        LongAdder received = new LongAdder();
+        NotificationService delegate = new NotificationService() {
+            @Override
+            public void newExchangeRequestedNotification(Appointment oldAppointment, Appointment newAppointment, boolean sendEmail) {
+                received.increment();
+            }
+
+            @Override
+            public void newExchangeAcceptedNotification(ExchangeRequest exchangeRequest, boolean sendEmail) {
+                received.increment();
+            }
+
+            @Override
+            public void newExchangeRejectedNotification(ExchangeRequest exchangeRequest, boolean sendEmail) {
+                received.increment();
+            }
+        };
+        AsyncNotificationService notificationService = new AsyncNotificationService(delegate, 16, 4, Thread::new);
+
+        LongAdder accepted = new LongAdder();
+        List<Thread> senders = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int base = t * 1_000_000;
+            Thread sender = new Thread(() -> {
+                for (int id = base; ; id++) {
+                    try {
+                        notificationService.newExchangeAcceptedNotification(exchangeRequest(id, first, second), true);
+                    } catch (IllegalStateException e) {
+                        return;
+                    }
+                    accepted.increment();
+                }
+            });
+            senders.add(sender);
+            sender.start();
+        }
+        Thread.sleep(50);
+        notificationService.close();
+        for (Thread sender : senders) {
+            sender.join();
+        }
+
+        assertThat(accepted.sum()).isPositive();
+        assertThat(received.sum()).isEqualTo(accepted.sum());
+        assertThat(notificationService.getQueueDepth()).isZero();
+    }
+
+    /**
+     * Interrumpir el hilo de entrega cierra el servicio después de entregar
+     * lo que había en la cola.
+     */
+    @Test
+    void interruptClosesAndDrainsTest() throws InterruptedException {
+        Customer paco = new Customer(1, "paco", "1234", new ArrayList<>());
+        Customer pepe = new Customer(2, "pepe", "1111", new ArrayList<>());
+        Appointment first = appointment(1, paco);
+        Appointment second = appointment(2, pepe);
+
+        RecordingNotificationService delegate = new RecordingNotificationService();
+        List<Thread> workers = new ArrayList<>();
+        AsyncNotificationService notificationService = new AsyncNotificationService(delegate, 8, 1, task -> {
+            Thread worker = new Thread(task);
+            workers.add(worker);
+            return worker;
+        });
+
+        notificationService.newExchangeRequestedNotification(first, second, true);
+        assertThat(delegate.entered.await(5, TimeUnit.SECONDS)).isTrue();
+        notificationService.newExchangeAcceptedNotification(exchangeRequest(8, first, second), true);
+        notificationService.newExchangeRejectedNotification(exchangeRequest(9, second, first), true);
+
+        workers.get(0).interrupt();
+        workers.get(0).join(TimeUnit.SECONDS.toMillis(5));
+
+        assertThat(workers.get(0).isAlive()).isFalse();
+        assertThat(delegate.sent).containsExactly("requested 1->2", "accepted 8", "rejected 9");
+        assertThat(notificationService.getQueueDepth()).isZero();
+        assertThatThrownBy(() -> notificationService.newExchangeAcceptedNotification(exchangeRequest(10, first, second), true))
+                .isInstanceOf(IllegalStateException.class);
+        notificationService.close();
+    }
+}
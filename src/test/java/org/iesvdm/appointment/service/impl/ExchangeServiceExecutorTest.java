@@ -0,0 +1,167 @@
+package org.iesvdm.appointment.service.impl;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.repository.impl.ConcurrentAppointmentRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.ExchangeRequestRepositoryImpl;
+import org.iesvdm.appointment.service.ExchangeService;
+import org.iesvdm.appointment.service.NotificationService;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class ExchangeServiceExecutorTest {
+
+    private static final int USERS = 8;
+    private static final int OPERATIONS = 400;
+
+    /**
+     * Las operaciones de un usuario se ejecutan de una en una y en el orden
+     * en que se enviaron, las de usuarios distintos a la vez, y un fallo no
+     * corta la cola.
+     */
+    @Test
+    void serializesPerUserTest() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        ExchangeServiceExecutor executor = new ExchangeServiceExecutor(Mockito.mock(ExchangeService.class), pool);
+        Map<Integer, AtomicInteger> running = new ConcurrentHashMap<>();
+        Map<Integer, List<Integer>> order = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int n = 0; n < OPERATIONS; n++) {
+            int userId = n % USERS;
+            int sequence = n;
+            futures.add(executor.submit(userId, service -> {
+                if (running.computeIfAbsent(userId, id -> new AtomicInteger()).incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                order.computeIfAbsent(userId, id -> new CopyOnWriteArrayList<>()).add(sequence);
+                concurrent.decrementAndGet();
+                running.get(userId).decrementAndGet();
+                if (sequence % 50 == 7) {
+                    throw new IllegalStateException("boom " + sequence);
+                }
+                return sequence;
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((r, e) -> null).get(30, TimeUnit.SECONDS);
+
+        assertThat(overlaps).hasValue(0);
+        assertThat(maxConcurrent.get()).isGreaterThan(1);
+        for (int userId = 0; userId < USERS; userId++) {
+            assertThat(order.get(userId)).isSorted().hasSize(OPERATIONS / USERS);
+        }
+        assertThat(futures.get(7)).isCompletedExceptionally();
+        assertThat(futures.get(8).get()).isEqualTo(8);
+        assertThat(executor.getFailed()).isEqualTo(OPERATIONS / 50);
+        assertThat(executor.getCompleted()).isEqualTo(OPERATIONS - OPERATIONS / 50);
+        assertThat(executor.getInFlight()).isZero();
+
+        executor.close();
+        assertThat(executor.getActiveUsers()).isZero();
+        assertThat(executor.getAbandoned()).isZero();
+        assertThatThrownBy(() -> executor.submit(0, service -> 0)).isInstanceOf(IllegalStateException.class);
+        pool.shutdown();
+    }
+
+    /**
+     * Toda operación que se aceptó antes de close() ha terminado cuando
+     * close() vuelve; las de después se rechazan.
+     */
+    @Test
+    void closeWaitsForEveryAcceptedOperationTest() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        ExchangeServiceExecutor executor = new ExchangeServiceExecutor(Mockito.mock(ExchangeService.class), pool);
+        Queue<CompletableFuture<Integer>> accepted = new ConcurrentLinkedQueue<>();
+        List<Thread> senders = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread sender = new Thread(() -> {
+                for (int n = 0; ; n++) {
+                    try {
+                        accepted.add(executor.submit(n % USERS, service -> 0));
+                    } catch (IllegalStateException e) {
+                        return;
+                    }
+                }
+            });
+            senders.add(sender);
+            sender.start();
+        }
+        Thread.sleep(50);
+        executor.close();
+        for (Thread sender : senders) {
+            sender.join();
+        }
+
+        assertThat(accepted).isNotEmpty().allMatch(CompletableFuture::isDone);
+        assertThat(executor.getCompleted()).isEqualTo(accepted.size());
+        assertThat(executor.getInFlight()).isZero();
+        assertThat(executor.getActiveUsers()).isZero();
+        assertThat(executor.getAbandoned()).isZero();
+        pool.shutdown();
+    }
+
+    /**
+     * Pedir y aceptar un intercambio a través del executor por defecto: la
+     * aceptación, encolada tras la petición del mismo usuario, ve la petición
+     * ya hecha.
+     */
+    @Test
+    void requestAndAcceptExchangeTest() throws Exception {
+        ConcurrentAppointmentRepositoryImpl appointmentRepository = new ConcurrentAppointmentRepositoryImpl();
+        ExchangeServiceImpl exchangeService = new ExchangeServiceImpl(appointmentRepository,
+                Mockito.mock(NotificationService.class), new ExchangeRequestRepositoryImpl());
+        Customer customer1 = new Customer(1, "paco", "1234", new ArrayList<>());
+        Customer customer2 = new Customer(2, "pepe", "1111", new ArrayList<>());
+        LocalDateTime start = LocalDateTime.now().plusDays(3);
+        Appointment mine = new Appointment(start, start.plusHours(1), null, null, AppointmentStatus.SCHEDULED, customer1, null);
+        mine.setId(1);
+        Appointment other = new Appointment(start.plusHours(2), start.plusHours(3), null, null, AppointmentStatus.SCHEDULED, customer2, null);
+        other.setId(2);
+        appointmentRepository.save(mine);
+        appointmentRepository.save(other);
+
+        try (ExchangeServiceExecutor executor = new ExchangeServiceExecutor(exchangeService)) {
+            CompletableFuture<Boolean> requested = executor.requestExchange(1, 2, 1);
+            CompletableFuture<Boolean> rejectedTwice = executor.submit(1,
+                    service -> service.rejectExchange(mine.getExchangeRequest().getId())
+                            && service.rejectExchange(mine.getExchangeRequest().getId()));
+            CompletableFuture<Boolean> unauthorized = executor.requestExchange(2, 1, 1);
+
+            assertThat(requested.get(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(rejectedTwice.get(10, TimeUnit.SECONDS)).isFalse();
+            assertThat(unauthorized).failsWithin(10, TimeUnit.SECONDS);
+
+            assertThat(executor.requestExchange(1, 2, 1).get(10, TimeUnit.SECONDS)).isTrue();
+            int exchangeId = mine.getExchangeRequest().getId();
+            assertThat(executor.acceptExchange(exchangeId, 2).get(10, TimeUnit.SECONDS)).isTrue();
+        }
+        assertThat(mine.getCustomer()).isSameAs(customer2);
+        assertThat(other.getCustomer()).isSameAs(customer1);
+    }
+}
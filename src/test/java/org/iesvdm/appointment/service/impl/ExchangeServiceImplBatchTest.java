@@ -0,0 +1,143 @@
+package org.iesvdm.appointment.service.impl;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.entity.ExchangeStatus;
+import org.iesvdm.appointment.repository.AppointmentRepository;
+import org.iesvdm.appointment.repository.impl.ExchangeRequestRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.IndexedAppointmentRepositoryImpl;
+import org.iesvdm.appointment.service.ExchangeOutcome;
+import org.iesvdm.appointment.service.ExchangeService;
+import org.iesvdm.appointment.service.NotificationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ExchangeServiceImplBatchTest {
+
+    private AppointmentRepository appointmentRepository;
+    private ExchangeRequestRepositoryImpl exchangeRequestRepository;
+    private NotificationService notificationService;
+    private ExchangeServiceImpl exchangeService;
+
+    private Customer customer1 = new Customer(1, "paco", "1234", new ArrayList<>());
+    private Customer customer2 = new Customer(2, "pepe", "1111", new ArrayList<>());
+    private Customer customer3 = new Customer(3, "ana", "2222", new ArrayList<>());
+
+    @BeforeEach
+    public void setup() {
+        appointmentRepository = Mockito.spy(new IndexedAppointmentRepositoryImpl());
+        exchangeRequestRepository = Mockito.spy(new ExchangeRequestRepositoryImpl());
+        notificationService = Mockito.mock(NotificationService.class);
+        exchangeService = new ExchangeServiceImpl(appointmentRepository, notificationService, exchangeRequestRepository);
+
+        LocalDateTime start = LocalDateTime.now().plusDays(3);
+        Customer[] owners = {customer1, customer2, customer3, customer1};
+        for (int id = 1; id <= 4; id++) {
+            Appointment appointment = new Appointment(start.plusHours(2L * id), start.plusHours(2L * id + 1),
+                    null, null, AppointmentStatus.SCHEDULED, owners[id - 1], null);
+            appointment.setId(id);
+            appointmentRepository.save(appointment);
+        }
+        Appointment soon = new Appointment(LocalDateTime.now().plusHours(2), LocalDateTime.now().plusHours(3),
+                null, null, AppointmentStatus.SCHEDULED, customer2, null);
+        soon.setId(5);
+        appointmentRepository.save(soon);
+        clearInvocations(appointmentRepository, exchangeRequestRepository);
+    }
+
+    @Test
+    void requestExchangesTest() {
+        List<ExchangeOutcome> outcomes = exchangeService.requestExchanges(List.of(
+                new ExchangeService.Request(1, 2, 1),
+                new ExchangeService.Request(1, 3, 1),
+                new ExchangeService.Request(3, 2, 1),
+                new ExchangeService.Request(4, 5, 1),
+                new ExchangeService.Request(4, 99, 1)));
+
+        assertThat(outcomes).containsExactly(ExchangeOutcome.DONE, ExchangeOutcome.STALE, ExchangeOutcome.UNAUTHORIZED,
+                ExchangeOutcome.NOT_POSSIBLE, ExchangeOutcome.NOT_FOUND);
+        assertThat(appointmentRepository.getOne(1).getStatus()).isEqualTo(AppointmentStatus.EXCHANGE_REQUESTED);
+        assertThat(exchangeRequestRepository.size()).isEqualTo(1);
+        verify(appointmentRepository, times(1)).findAllById(anyCollection());
+        verify(appointmentRepository, times(1)).saveAll(anyCollection());
+        verify(notificationService, times(1)).newExchangesRequestedNotification(anyList(), eq(true));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void acceptAndRejectExchangesTest() {
+        exchangeService.requestExchanges(List.of(
+                new ExchangeService.Request(1, 2, 1),
+                new ExchangeService.Request(4, 3, 1)));
+        ExchangeRequest first = exchangeRequestRepository.getOne(1);
+        ExchangeRequest second = exchangeRequestRepository.getOne(2);
+        assertThat(first.getRequestor().getId()).isEqualTo(1);
+        clearInvocations(appointmentRepository, exchangeRequestRepository);
+
+        List<ExchangeOutcome> accepted = exchangeService.acceptExchanges(List.of(
+                new ExchangeService.Acceptance(1, 2),
+                new ExchangeService.Acceptance(1, 2),
+                new ExchangeService.Acceptance(2, 1),
+                new ExchangeService.Acceptance(42, 1)));
+
+        assertThat(accepted).containsExactly(ExchangeOutcome.DONE, ExchangeOutcome.STALE, ExchangeOutcome.STALE,
+                ExchangeOutcome.NOT_FOUND);
+        assertThat(first.getStatus()).isEqualTo(ExchangeStatus.ACCEPTED);
+        assertThat(appointmentRepository.getOne(1).getCustomer()).isEqualTo(customer2);
+        assertThat(appointmentRepository.getOne(2).getCustomer()).isEqualTo(customer1);
+        ArgumentCaptor<Collection<Appointment>> saved = ArgumentCaptor.forClass(Collection.class);
+        verify(appointmentRepository, times(1)).saveAll(saved.capture());
+        assertThat(saved.getValue()).hasSize(2);
+        verify(exchangeRequestRepository, times(1)).findAllById(anyCollection());
+
+        assertThat(exchangeService.rejectExchanges(List.of(2, 1))).containsExactly(ExchangeOutcome.DONE, ExchangeOutcome.STALE);
+        assertThat(second.getStatus()).isEqualTo(ExchangeStatus.REJECTED);
+        assertThat(appointmentRepository.getOne(4).getStatus()).isEqualTo(AppointmentStatus.SCHEDULED);
+        assertThat(exchangeService.getStaleExchanges()).isEqualTo(3);
+    }
+
+    /**
+     * Los saveAll del lote se hacen con las franjas de sus citas cogidas, y
+     * una cita que ya no está programada no se pide.
+     */
+    @Test
+    void batchesSaveUnderLocksTest() throws Exception {
+        List<CompletableFuture<Boolean>> blocked = new ArrayList<>();
+        doAnswer(invocation -> {
+            CompletableFuture<Boolean> other = CompletableFuture.supplyAsync(
+                    () -> exchangeService.getLocks().withLock(1, () -> true));
+            Thread.sleep(50);
+            blocked.add(other);
+            assertThat(other).isNotDone();
+            return invocation.callRealMethod();
+        }).when(appointmentRepository).saveAll(anyCollection());
+        appointmentRepository.getOne(4).setStatus(AppointmentStatus.FINISHED);
+
+        assertThat(exchangeService.requestExchanges(List.of(
+                new ExchangeService.Request(1, 2, 1),
+                new ExchangeService.Request(4, 3, 1)))).containsExactly(ExchangeOutcome.DONE, ExchangeOutcome.STALE);
+        assertThat(exchangeService.acceptExchanges(List.of(new ExchangeService.Acceptance(1, 2))))
+                .containsExactly(ExchangeOutcome.DONE);
+
+        assertThat(blocked).hasSize(2);
+        for (CompletableFuture<Boolean> other : blocked) {
+            assertThat(other.get(5, TimeUnit.SECONDS)).isTrue();
+        }
+        assertThat(appointmentRepository.getOne(4).getStatus()).isEqualTo(AppointmentStatus.FINISHED);
+    }
+}
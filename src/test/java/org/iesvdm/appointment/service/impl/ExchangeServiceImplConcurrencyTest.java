@@ -0,0 +1,189 @@
+package org.iesvdm.appointment.service.impl;
+
+import org.iesvdm.appointment.entity.Appointment;
+import org.iesvdm.appointment.entity.AppointmentStatus;
+import org.iesvdm.appointment.entity.Customer;
+import org.iesvdm.appointment.entity.ExchangeRequest;
+import org.iesvdm.appointment.entity.ExchangeStatus;
+import org.iesvdm.appointment.repository.ExchangeRequestRepository;
+import org.iesvdm.appointment.repository.impl.ConcurrentAppointmentRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.ExchangeRequestRepositoryImpl;
+import org.iesvdm.appointment.repository.impl.IndexedAppointmentRepositoryImpl;
+import org.iesvdm.appointment.service.NotificationService;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class ExchangeServiceImplConcurrencyTest {
+
+    private static final int CUSTOMERS = 20;
+    private static final int APPOINTMENTS = 200;
+    private static final int REQUESTS = 4000;
+    private static final int THREADS = 16;
+
+    /**
+     * Muchas aceptaciones concurrentes sobre pocas citas: cada una es
+     * atómica, así que cada cliente acaba con tantas citas como tenía, cada
+     * petición queda aceptada o pendiente, y las pendientes son justo las que
+     * se descartaron porque otra aceptación se adelantó.
+     */
+    @Test
+    void concurrentAcceptExchangeTest() throws InterruptedException {
+        ConcurrentAppointmentRepositoryImpl appointmentRepository = new ConcurrentAppointmentRepositoryImpl();
+        Map<Integer, ExchangeRequest> exchangeRequests = new ConcurrentHashMap<>();
+        ExchangeRequestRepository exchangeRequestRepository = new ExchangeRequestRepository() {
+            @Override
+            public ExchangeRequest getOne(int exchangeRequestId) {
+                return exchangeRequests.get(exchangeRequestId);
+            }
+
+            @Override
+            public void save(ExchangeRequest exchangeRequest) {
+                exchangeRequests.put(exchangeRequest.getId(), exchangeRequest);
+            }
+        };
+        ExchangeServiceImpl exchangeService = new ExchangeServiceImpl(appointmentRepository,
+                Mockito.mock(NotificationService.class), exchangeRequestRepository);
+
+        List<Customer> customers = new ArrayList<>();
+        for (int id = 0; id < CUSTOMERS; id++) {
+            customers.add(new Customer(id, "customer" + id, "", new ArrayList<>()));
+        }
+        LocalDateTime start = LocalDateTime.now().plusDays(7);
+        for (int id = 0; id < APPOINTMENTS; id++) {
+            Appointment appointment = new Appointment(start.plusHours(id), start.plusHours(id).plusMinutes(30),
+                    null, null, AppointmentStatus.SCHEDULED, customers.get(id % CUSTOMERS), null);
+            appointment.setId(id);
+            appointmentRepository.save(appointment);
+        }
+
+        Random random = new Random(42);
+        int[] acceptors = new int[REQUESTS];
+        for (int id = 0; id < REQUESTS; id++) {
+            Appointment requestor = appointmentRepository.getOne(random.nextInt(APPOINTMENTS));
+            Appointment requested;
+            do {
+                requested = appointmentRepository.getOne(random.nextInt(APPOINTMENTS));
+            } while (requested.getCustomer().equals(requestor.getCustomer()));
+            ExchangeRequest exchangeRequest = new ExchangeRequest(requestor, requested, ExchangeStatus.PENDING);
+            exchangeRequest.setId(id);
+            exchangeRequestRepository.save(exchangeRequest);
+            acceptors[id] = requested.getCustomer().getId();
+        }
+
+        Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int first = t;
+            threads.add(new Thread(() -> {
+                try {
+                    go.await();
+                    for (int id = first; id < REQUESTS; id += THREADS) {
+                        if (exchangeService.acceptExchange(id, acceptors[id])) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(errors).isEmpty();
+
+        Map<Integer, Integer> owned = new HashMap<>();
+        for (int id = 0; id < APPOINTMENTS; id++) {
+            owned.merge(appointmentRepository.getOne(id).getCustomer().getId(), 1, Integer::sum);
+        }
+        assertThat(owned).hasSize(CUSTOMERS).allSatisfy((customer, count) -> assertThat(count).isEqualTo(APPOINTMENTS / CUSTOMERS));
+
+        long pending = exchangeRequests.values().stream().filter(e -> e.getStatus() == ExchangeStatus.PENDING).count();
+        assertThat(accepted.get()).isPositive();
+        assertThat(accepted.get() + pending).isEqualTo(REQUESTS);
+        assertThat(exchangeService.getStaleExchanges()).isEqualTo(pending);
+        assertThat(exchangeService.getLocks().getAcquisitions()).isEqualTo(REQUESTS);
+        assertThat(exchangeService.getLocks().getWaitNanos()).isPositive();
+    }
+
+    /**
+     * Si entre la comprobación sin cerrojo y el cerrojo la cita cambia de
+     * dueño o se finaliza, requestExchange no pide nada.
+     */
+    @Test
+    void requestExchangeRechecksUnderLockTest() {
+        Customer customer1 = new Customer(1, "paco", "1234", new ArrayList<>());
+        Customer customer2 = new Customer(2, "pepe", "1111", new ArrayList<>());
+        for (Consumer<Appointment> change : List.<Consumer<Appointment>>of(
+                appointment -> appointment.setCustomer(customer2),
+                appointment -> appointment.setStatus(AppointmentStatus.FINISHED))) {
+            IndexedAppointmentRepositoryImpl appointmentRepository = Mockito.spy(new IndexedAppointmentRepositoryImpl());
+            ExchangeRequestRepositoryImpl exchangeRequestRepository = new ExchangeRequestRepositoryImpl();
+            ExchangeServiceImpl exchangeService = new ExchangeServiceImpl(appointmentRepository,
+                    Mockito.mock(NotificationService.class), exchangeRequestRepository);
+            LocalDateTime start = LocalDateTime.now().plusDays(3);
+            Appointment mine = new Appointment(start, start.plusHours(1), null, null, AppointmentStatus.SCHEDULED, customer1, null);
+            mine.setId(1);
+            Appointment other = new Appointment(start.plusHours(2), start.plusHours(3), null, null, AppointmentStatus.SCHEDULED, customer2, null);
+            other.setId(2);
+            appointmentRepository.save(mine);
+            appointmentRepository.save(other);
+
+            // La segunda lectura de la cita es la de después de la comprobación.
+            AtomicInteger reads = new AtomicInteger();
+            Mockito.doAnswer(invocation -> {
+                Appointment appointment = (Appointment) invocation.callRealMethod();
+                if (reads.incrementAndGet() == 2) {
+                    change.accept(appointment);
+                }
+                return appointment;
+            }).when(appointmentRepository).getOne(1);
+
+            assertThat(exchangeService.requestExchange(1, 2, 1)).isFalse();
+            assertThat(mine.getStatus()).isNotEqualTo(AppointmentStatus.EXCHANGE_REQUESTED);
+            assertThat(mine.getExchangeRequest()).isNull();
+            assertThat(exchangeRequestRepository.size()).isZero();
+            assertThat(exchangeService.getStaleExchanges()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void lockOrderTest() throws InterruptedException {
+        AppointmentLocks locks = new AppointmentLocks(4, 2);
+        int[] counter = new int[1];
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            boolean reversed = t % 2 == 0;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    locks.withLocks(reversed ? 3 : 1, reversed ? 1 : 3, () -> counter[0]++);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(counter[0]).isEqualTo(80_000);
+        assertThat(locks.getAcquisitions()).isEqualTo(80_000);
+    }
+}
@@ -0,0 +1,78 @@
+package org.iesvdm.sudoku;
+
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchSolverTest {
+
+    private static final String HARD_PUZZLE =
+            "800000000003600000070090200050007000000045700000100030001000068008500010090000400";
+    private static final String UNSOLVABLE_PUZZLE =
+            "012345678" + "0".repeat(18) + "900000000" + "0".repeat(45);
+    private static final String OUT_OF_RANGE_PUZZLE = "a" + "0".repeat(80);
+    private static final String NOT_A_DIGIT_PUZZLE = "0".repeat(40) + "#" + "0".repeat(40);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void solveKeepsInputOrderTest() throws IOException {
+        List<String> puzzles = new ArrayList<>();
+        Sudoku generator = new Sudoku();
+        generator.setNumClues(30);
+        for (int i = 0; i < 50; i++) {
+            generator.fillBoardSolvable();
+            puzzles.add(toLine(generator.getBoard()));
+        }
+        puzzles.add(17, UNSOLVABLE_PUZZLE);
+        puzzles.add(20, OUT_OF_RANGE_PUZZLE);
+        puzzles.add(21, NOT_A_DIGIT_PUZZLE);
+        puzzles.add(HARD_PUZZLE.replace('0', '.'));
+        Path input = tempDir.resolve("puzzles.txt");
+        Path output = tempDir.resolve("solutions.txt");
+        Files.writeString(input, String.join("\r\n", puzzles) + "\n\n");
+
+        BatchSolver.Report report = new BatchSolver(3, 4).solve(input, output);
+
+        List<String> solutions = Files.readAllLines(output);
+        assertThat(report.puzzles()).isEqualTo(54);
+        assertThat(report.unsolvable()).isEqualTo(1);
+        assertThat(report.invalid()).isEqualTo(2);
+        assertThat(report.latencies().getCount()).isEqualTo(52);
+        assertThat(solutions).hasSize(54);
+        assertThat(solutions.get(17)).isEqualTo("unsolvable");
+        assertThat(solutions.get(20)).isEqualTo("invalid");
+        assertThat(solutions.get(21)).isEqualTo("invalid");
+        for (int i = 0; i < puzzles.size(); i++) {
+            if (i == 17 || i == 20 || i == 21) {
+                continue;
+            }
+            String puzzle = puzzles.get(i);
+            String solution = solutions.get(i);
+            for (int cell = 0; cell < 81; cell++) {
+                char c = puzzle.charAt(cell);
+                if (c != '0' && c != '.') {
+                    assertThat(solution.charAt(cell)).isEqualTo(c);
+                }
+            }
+            assertThat(solution).doesNotContain("0");
+        }
+    }
+
+    private static String toLine(int[][] board) {
+        StringBuilder line = new StringBuilder();
+        for (int[] row : board) {
+            for (int number : row) {
+                line.append(number);
+            }
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,130 @@
+package org.iesvdm.sudoku;
+
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class SolutionCacheTest {
+
+    private static final String HARD_PUZZLE =
+            "800000000003600000070090200050007000000045700000100030001000068008500010090000400";
+
+    /**
+     * Gira 90º, cambia las dos primeras bandas, las dos últimas columnas de
+     * la primera pila y renombra cifras (d -> 10 - d).
+     */
+    private static int[][] transform(int[][] board) {
+        int[][] rotated = new int[9][9];
+        for (int r = 0; r < 9; r++) {
+            for (int c = 0; c < 9; c++) {
+                rotated[c][8 - r] = board[r][c];
+            }
+        }
+        int[][] result = new int[9][9];
+        for (int r = 0; r < 9; r++) {
+            int row = r < 3 ? r + 3 : r < 6 ? r - 3 : r;
+            for (int c = 0; c < 9; c++) {
+                int column = c == 1 ? 2 : c == 2 ? 1 : c;
+                int number = rotated[row][column];
+                result[r][c] = number == 0 ? 0 : 10 - number;
+            }
+        }
+        return result;
+    }
+
+    private static int[][] copy(int[][] board) {
+        int[][] copy = new int[board.length][];
+        for (int i = 0; i < board.length; i++) {
+            copy[i] = board[i].clone();
+        }
+        return copy;
+    }
+
+    private static void assertSolves(int[][] solution, int[][] puzzle) {
+        for (int r = 0; r < 9; r++) {
+            for (int c = 0; c < 9; c++) {
+                if (puzzle[r][c] != 0) {
+                    assertThat(solution[r][c]).isEqualTo(puzzle[r][c]);
+                }
+            }
+        }
+        Sudoku check = new Sudoku();
+        check.setBoard(solution);
+        for (int r = 0; r < 9; r++) {
+            for (int c = 0; c < 9; c++) {
+                int number = solution[r][c];
+                solution[r][c] = 0;
+                assertThat(check.isValidPlacement(number, r, c)).isTrue();
+                solution[r][c] = number;
+            }
+        }
+    }
+
+    @Test
+    void equivalentBoardHitsTest() {
+        SolutionCache cache = new SolutionCache(16);
+        Sudoku sudoku = new Sudoku();
+        sudoku.setSolutionCache(cache);
+
+        int[][] puzzle = SudokuTest.parseBoard(HARD_PUZZLE, 9);
+        sudoku.setBoard(SudokuTest.parseBoard(HARD_PUZZLE, 9));
+        assertThat(sudoku.solveBoard()).isTrue();
+        assertThat(cache.getMisses()).isEqualTo(1);
+
+        int[][] equivalent = transform(puzzle);
+        sudoku.setBoard(copy(equivalent));
+        assertThat(sudoku.solveBoard()).isTrue();
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(1);
+        assertSolves(sudoku.getBoard(), equivalent);
+
+        Sudoku uncached = new Sudoku();
+        uncached.setBoard(copy(equivalent));
+        uncached.solveBoard();
+        assertThat(sudoku.getBoard()).isEqualTo(uncached.getBoard());
+    }
+
+    @Test
+    void generatedBoardsTest() {
+        SolutionCache cache = new SolutionCache(64);
+        SudokuWorkspace workspace = new SudokuWorkspace(9, 42);
+        Sudoku sudoku = new Sudoku();
+        sudoku.setSolutionCache(cache);
+        for (int i = 0; i < 20; i++) {
+            int[][] puzzle = new int[9][9];
+            workspace.generate(puzzle, 26);
+            for (int[][] board : new int[][][] {puzzle, transform(puzzle)}) {
+                sudoku.setBoard(copy(board));
+                assertThat(sudoku.solveBoard()).isTrue();
+                assertSolves(sudoku.getBoard(), board);
+            }
+        }
+        assertThat(cache.getHits()).isEqualTo(20);
+        assertThat(cache.getMisses()).isEqualTo(20);
+    }
+
+    @Test
+    void unsolvableAndEvictionTest() {
+        SolutionCache cache = new SolutionCache(2);
+        SudokuWorkspace workspace = new SudokuWorkspace(9, 7);
+        Sudoku sudoku = new Sudoku();
+        sudoku.setSolutionCache(cache);
+
+        int[][] unsolvable = new int[9][9];
+        workspace.generateUnsolvable(unsolvable, 30);
+        for (int i = 0; i < 2; i++) {
+            sudoku.setBoard(copy(unsolvable));
+            assertThat(sudoku.solveBoard()).isFalse();
+            assertThat(sudoku.getBoard()).isEqualTo(unsolvable);
+        }
+        assertThat(cache.getHits()).isEqualTo(1);
+
+        for (int i = 0; i < 3; i++) {
+            int[][] puzzle = new int[9][9];
+            workspace.generate(puzzle, 30);
+            sudoku.setBoard(puzzle);
+            sudoku.solveBoard();
+        }
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getEvictions()).isEqualTo(2);
+    }
+}
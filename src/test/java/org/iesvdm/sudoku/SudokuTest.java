@@ -3,8 +3,25 @@ package org.iesvdm.sudoku;
 //import static org.junit.jupiter.api.Assertions.*;
 import static org.assertj.core.api.Assertions.*;
 import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 public class SudokuTest {
 
+    private static final String HARD_PUZZLE =
+            "800000000003600000070090200050007000000045700000100030001000068008500010090000400";
+
+    static int[][] parseBoard(String puzzle, int gridSize) {
+        int[][] board = new int[gridSize][gridSize];
+        for (int i = 0; i < gridSize * gridSize; i++) {
+            char c = puzzle.charAt(i);
+            board[i / gridSize][i % gridSize] = (c == '.' ? 0 : Character.digit(c, 36));
+        }
+        return board;
+    }
+
     @Test
     void failTest() {
         Sudoku sudoku = new Sudoku();
@@ -13,4 +30,260 @@ public class SudokuTest {
         sudoku.printBoard();
     }
 
+    @Test
+    void solveBoardMatchesBacktrackingTest() {
+        Sudoku bitmask = new Sudoku();
+        bitmask.setBoard(parseBoard(HARD_PUZZLE, 9));
+        Sudoku backtracking = new Sudoku();
+        backtracking.setBoard(parseBoard(HARD_PUZZLE, 9));
+
+        assertThat(bitmask.solveBoard()).isTrue();
+        assertThat(backtracking.solveBoardBacktracking()).isTrue();
+        assertThat(bitmask.getBoard()).isEqualTo(backtracking.getBoard());
+    }
+
+    @Test
+    void solveBoardUnsolvableTest() {
+        int[][] board = new int[9][9];
+        for (int column = 1; column < 9; column++) {
+            board[0][column] = column;
+        }
+        board[3][0] = 9;
+        Sudoku sudoku = new Sudoku();
+        sudoku.setBoard(board);
+
+        assertThat(sudoku.solveBoard()).isFalse();
+        assertThat(sudoku.getBoard()[0][0]).isZero();
+    }
+
+    @Test
+    void dancingLinksSolveBoardTest() {
+        Sudoku dlx = new Sudoku();
+        dlx.setSolverMode(SolverMode.DANCING_LINKS);
+        dlx.setBoard(parseBoard(HARD_PUZZLE, 9));
+        Sudoku bitmask = new Sudoku();
+        bitmask.setBoard(parseBoard(HARD_PUZZLE, 9));
+
+        assertThat(dlx.solveBoard()).isTrue();
+        assertThat(bitmask.solveBoard()).isTrue();
+        assertThat(dlx.getBoard()).isEqualTo(bitmask.getBoard());
+        assertThat(dlx.countSolutions(Long.MAX_VALUE)).isEqualTo(1);
+    }
+
+    @Test
+    void dancingLinksCountSolutionsTest() {
+        int[][] board = parseBoard(HARD_PUZZLE, 9);
+        board[0][0] = 0;
+        Sudoku sudoku = new Sudoku();
+        sudoku.setBoard(board);
+
+        List<int[][]> solutions = new ArrayList<>();
+        long count = sudoku.forEachSolution(Long.MAX_VALUE, solution -> solutions.add(copyOf(solution)));
+
+        assertThat(count).isGreaterThan(1).isEqualTo(sudoku.countSolutions(Long.MAX_VALUE));
+        assertThat(solutions).hasSize((int) count);
+        assertThat(sudoku.countSolutions(2)).isEqualTo(2);
+        assertThat(sudoku.getBoard()[0][0]).isZero();
+    }
+
+    @Test
+    void dancingLinksRandomBoardMatchesBitmaskTest() {
+        for (int i = 0; i < 200; i++) {
+            Sudoku bitmask = new Sudoku();
+            bitmask.setNumClues(40);
+            bitmask.fillBoardBasedInCluesRandomly();
+            Sudoku dlx = new Sudoku();
+            dlx.setSolverMode(SolverMode.DANCING_LINKS);
+            dlx.copyBoard(bitmask.getBoard());
+
+            assertThat(dlx.solveBoard()).isEqualTo(bitmask.solveBoard());
+        }
+    }
+
+    @Test
+    void largerGridSizesTest() {
+        for (int gridSize : new int[] {4, 16, 25}) {
+            for (SolverMode mode : new SolverMode[] {SolverMode.BITMASK, SolverMode.DANCING_LINKS}) {
+                Sudoku sudoku = new Sudoku();
+                sudoku.setGridSize(gridSize);
+                sudoku.setSolverMode(mode);
+                sudoku.setBoard(new int[gridSize][gridSize]);
+
+                assertThat(sudoku.solveBoard()).isTrue();
+                assertThat(isSolved(sudoku)).isTrue();
+            }
+        }
+    }
+
+    @Test
+    void boxGeometryTest() {
+        Sudoku sudoku = new Sudoku();
+        sudoku.setGridSize(4);
+        sudoku.setBoard(new int[4][4]);
+        sudoku.putNumberInBoard(3, 1, 1);
+
+        assertThat(sudoku.getBoxSize()).isEqualTo(2);
+        assertThat(sudoku.isNumberInBox(3, 0, 0)).isTrue();
+        assertThat(sudoku.isNumberInBox(3, 0, 2)).isFalse();
+        assertThatThrownBy(() -> sudoku.setGridSize(10)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void parallelSolveBoardMatchesSequentialTest() {
+        List<int[][]> boards = new ArrayList<>();
+        boards.add(parseBoard(HARD_PUZZLE, 9));
+        boards.add(new int[9][9]);
+        // Tableros con varias soluciones: uno de solución única al que se le
+        // quitan pistas, para que el orden en que se prueban las ramas cuente.
+        Random random = new Random(7);
+        Sudoku generator = new Sudoku();
+        generator.setNumClues(30);
+        while (boards.size() < 60) {
+            generator.fillBoardSolvable();
+            int[][] board = copyOf(generator.getBoard());
+            for (int removed = 0; removed < 10; ) {
+                int row = random.nextInt(9);
+                int column = random.nextInt(9);
+                if (board[row][column] != 0) {
+                    board[row][column] = 0;
+                    removed++;
+                }
+            }
+            Sudoku multiple = new Sudoku();
+            multiple.setBoard(board);
+            if (multiple.countSolutions(2) == 2) {
+                boards.add(board);
+            }
+        }
+
+        for (int parallelism : new int[] {1, 4}) {
+            for (int[][] board : boards) {
+                Sudoku sequential = new Sudoku();
+                sequential.copyBoard(board);
+                Sudoku parallel = new Sudoku();
+                parallel.setSolverMode(SolverMode.PARALLEL);
+                parallel.setParallelism(parallelism);
+                parallel.copyBoard(board);
+
+                assertThat(parallel.solveBoard()).isEqualTo(sequential.solveBoard());
+                assertThat(parallel.getBoard()).isEqualTo(sequential.getBoard());
+            }
+        }
+    }
+
+    @Test
+    void fillBoardSolvableTest() {
+        for (int numClues : new int[] {63, 40, 30}) {
+            Sudoku sudoku = new Sudoku();
+            sudoku.setNumClues(numClues);
+            sudoku.fillBoardSolvable();
+
+            assertThat(countClues(sudoku.getBoard())).isEqualTo(numClues);
+            assertThat(sudoku.countSolutions(2)).isEqualTo(1);
+        }
+    }
+
+    /**
+     * Generar o copiar un tablero no escribe en el que ya tiene quien llamó a
+     * getBoard o setBoard.
+     */
+    @Test
+    void fillBoardDoesNotOverwriteCallerBoardTest() {
+        Sudoku sudoku = new Sudoku();
+        sudoku.setNumClues(30);
+        sudoku.fillBoardSolvable();
+        int[][] first = sudoku.getBoard();
+        int[][] snapshot = copyOf(first);
+
+        sudoku.fillBoardSolvable();
+        sudoku.fillBoardRandomly();
+        assertThat(first).isEqualTo(snapshot);
+
+        int[][] mine = new int[9][9];
+        sudoku.setBoard(mine);
+        sudoku.copyBoard(first);
+        assertThat(mine).isEqualTo(new int[9][9]);
+        assertThat(sudoku.getBoard()).isEqualTo(first).isNotSameAs(first);
+    }
+
+    @Test
+    void fillBoardUnsolvableTest() {
+        for (int numClues : new int[] {63, 40, 30}) {
+            Sudoku sudoku = new Sudoku();
+            sudoku.setNumClues(numClues);
+            sudoku.fillBoardUnsolvable();
+
+            assertThat(countClues(sudoku.getBoard())).isEqualTo(numClues);
+            assertThat(sudoku.solveBoard()).isFalse();
+        }
+    }
+
+    @Test
+    void statisticsTest() {
+        Sudoku sudoku = new Sudoku();
+        sudoku.setBoard(parseBoard(HARD_PUZZLE, 9));
+        assertThat(sudoku.getLastSolveStats()).isNull();
+
+        sudoku.setStatisticsEnabled(true);
+        for (SolverMode mode : new SolverMode[] {SolverMode.BITMASK, SolverMode.DANCING_LINKS, SolverMode.PARALLEL}) {
+            sudoku.setSolverMode(mode);
+            sudoku.setBoard(parseBoard(HARD_PUZZLE, 9));
+            assertThat(sudoku.solveBoard()).isTrue();
+
+            SolveStats stats = sudoku.getLastSolveStats();
+            assertThat(stats.isSolved()).isTrue();
+            assertThat(stats.getNodes()).isGreaterThan(60);
+            assertThat(stats.getBacktracks()).isPositive();
+            assertThat(stats.getMaxDepth()).isBetween(1, 60);
+            assertThat(stats.getCandidateChecks()).isGreaterThanOrEqualTo(stats.getNodes());
+            assertThat(stats.getWallNanos()).isPositive();
+        }
+
+        SolverStatistics statistics = sudoku.getStatistics();
+        assertThat(statistics.getSolves()).isEqualTo(3);
+        assertThat(statistics.getSolved()).isEqualTo(3);
+        assertThat(statistics.getNodes().getCount()).isEqualTo(3);
+
+        sudoku.setStatisticsEnabled(false);
+        sudoku.setBoard(parseBoard(HARD_PUZZLE, 9));
+        assertThat(sudoku.solveBoard()).isTrue();
+        assertThat(sudoku.getLastSolveStats()).isNull();
+    }
+
+    private static int countClues(int[][] board) {
+        int clues = 0;
+        for (int[] row : board) {
+            for (int number : row) {
+                if (number != 0) {
+                    clues++;
+                }
+            }
+        }
+        return clues;
+    }
+
+    private static boolean isSolved(Sudoku sudoku) {
+        int[][] board = sudoku.getBoard();
+        for (int row = 0; row < sudoku.getGridSize(); row++) {
+            for (int column = 0; column < sudoku.getGridSize(); column++) {
+                int number = board[row][column];
+                board[row][column] = 0;
+                boolean valid = number != 0 && sudoku.isValidPlacement(number, row, column);
+                board[row][column] = number;
+                if (!valid) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int[][] copyOf(int[][] board) {
+        int[][] copy = new int[board.length][];
+        for (int i = 0; i < board.length; i++) {
+            copy[i] = board[i].clone();
+        }
+        return copy;
+    }
+
 }
@@ -0,0 +1,47 @@
+package org.iesvdm.sudoku;
+
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+public class SudokuWorkspaceTest {
+
+    @Test
+    void seededWorkspaceIsReproducibleTest() {
+        SudokuWorkspace first = new SudokuWorkspace(9, 42);
+        SudokuWorkspace second = new SudokuWorkspace(9, 42);
+        int[][] firstBoard = new int[9][9];
+        int[][] secondBoard = new int[9][9];
+
+        for (int i = 0; i < 10; i++) {
+            first.generate(firstBoard, 30);
+            second.generate(secondBoard, 30);
+            assertThat(firstBoard).isEqualTo(secondBoard);
+        }
+    }
+
+    @Test
+    void steadyStateGenerateAndSolveDoNotAllocateTest() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        SudokuWorkspace workspace = SudokuWorkspace.current(9);
+        int[][] board = new int[9][9];
+        for (int i = 0; i < 2000; i++) {
+            workspace.generate(board, 30);
+            workspace.solve(board);
+            workspace.generate(board, 30);
+            workspace.dancingLinks().solve(board);
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1000; i++) {
+            workspace.generate(board, 30);
+            workspace.solve(board);
+            workspace.generate(board, 30);
+            workspace.dancingLinks().solve(board);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertThat(allocated).isLessThan(1024);
+    }
+}